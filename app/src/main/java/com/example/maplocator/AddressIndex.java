@@ -0,0 +1,198 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only reverse geocoder, memory-mapped from the {@link #ASSET_NAME} asset that
+ * {@code AddressIndexBuilder} writes. Layout (big-endian):
+ * <pre>
+ *   header     magic, cellE6, cellCount, addressCount, streetCount, stringBytes,
+ *              flags                                                            7 x int
+ *   cells      row, col, firstAddress                                           cellCount x 12 bytes
+ *   addresses  u16 latOffset, u16 lngOffset, u16 street, u16 number             addressCount x 8 bytes
+ *   streets    stringOffset                                                     streetCount x 4 bytes
+ *   strings    u16 length + UTF-8 bytes
+ * </pre>
+ * Addresses are bucketed into square cells of {@code cellE6} millionths of a degree, and each
+ * address stores its position as an offset from the south-west corner of its cell. Cells are
+ * sorted by row and column, so a lookup is nine binary searches for the cells around the point
+ * followed by a scan of their addresses, without allocating. The asset has to be stored
+ * uncompressed for {@code openFd} to work. {@link #FLAG_SURVEYED} marks an index built from
+ * real addresses rather than the synthetic development grid.
+ */
+final class AddressIndex {
+
+    static final String ASSET_NAME = "addresses.idx";
+    static final int MAGIC = 0x41445232;
+    static final int HEADER_BYTES = 28;
+    static final int FLAG_SURVEYED = 1;
+    static final int CELL_BYTES = 12;
+    static final int ADDRESS_BYTES = 8;
+
+    /** Addresses farther than this from the point are not used to describe it. */
+    static final double MAX_DISTANCE_M = 120;
+
+    private static final int CACHE_QUANTUM_E6 = 100;
+    private static final int CACHE_SIZE = 256;
+    private static final double METERS_PER_E6 = GeoMath.EARTH_RADIUS_M * Math.PI / 180 / 1e6;
+    private static final String NO_ADDRESS = "";
+
+    private final ByteBuffer buffer;
+    private final int cellE6;
+    private final int cellCount;
+    private final int addressCount;
+    private final boolean surveyed;
+    private final int cellsAt;
+    private final int addressesAt;
+    private final int streetsAt;
+    private final int stringsAt;
+
+    private final Map<Long, String> labels = new LinkedHashMap<Long, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    AddressIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an address index");
+        }
+        cellE6 = buffer.getInt(4);
+        cellCount = buffer.getInt(8);
+        addressCount = buffer.getInt(12);
+        int streetCount = buffer.getInt(16);
+        surveyed = (buffer.getInt(24) & FLAG_SURVEYED) != 0;
+        cellsAt = HEADER_BYTES;
+        addressesAt = cellsAt + cellCount * CELL_BYTES;
+        streetsAt = addressesAt + addressCount * ADDRESS_BYTES;
+        stringsAt = streetsAt + streetCount * 4;
+        if (cellE6 <= 0 || cellE6 > 0xFFFF || stringsAt + buffer.getInt(20) > buffer.capacity()) {
+            throw new IOException("Truncated address index");
+        }
+    }
+
+    static AddressIndex open(Context context) throws IOException {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(ASSET_NAME);
+             FileInputStream in = descriptor.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            return new AddressIndex(channel.map(FileChannel.MapMode.READ_ONLY,
+                descriptor.getStartOffset(), descriptor.getLength()));
+        }
+    }
+
+    int size() {
+        return addressCount;
+    }
+
+    /** True for an index built from real addresses, false for the synthetic development grid. */
+    boolean isSurveyed() {
+        return surveyed;
+    }
+
+    /**
+     * Returns "number street" for the address nearest to the point, or null when there is none
+     * within {@link #MAX_DISTANCE_M}. Answers are cached per cell of {@link #CACHE_QUANTUM_E6}
+     * millionths of a degree (about 11 m), looked up from the cell centre, so a marker dragged
+     * across the map mostly hits the cache and nearby points always read the same. Safe to
+     * call from any thread.
+     */
+    String label(double lat, double lng) {
+        int qLat = Math.floorDiv((int) Math.round(lat * 1e6), CACHE_QUANTUM_E6);
+        int qLng = Math.floorDiv((int) Math.round(lng * 1e6), CACHE_QUANTUM_E6);
+        Long key = ((long) qLat << 32) | (qLng & 0xFFFFFFFFL);
+        synchronized (labels) {
+            String cached = labels.get(key);
+            if (cached != null) {
+                return cached == NO_ADDRESS ? null : cached;
+            }
+        }
+
+        int address = nearest(qLat * CACHE_QUANTUM_E6 + CACHE_QUANTUM_E6 / 2,
+            qLng * CACHE_QUANTUM_E6 + CACHE_QUANTUM_E6 / 2, MAX_DISTANCE_M);
+        String label = address >= 0 ? number(address) + " " + street(address) : NO_ADDRESS;
+        synchronized (labels) {
+            labels.put(key, label);
+        }
+        return address >= 0 ? label : null;
+    }
+
+    /** Index of the nearest address within {@code maxMeters} (at most one cell), or -1. */
+    int nearest(int latE6, int lngE6, double maxMeters) {
+        double metersPerLngE6 = METERS_PER_E6 * Math.cos(Math.toRadians(latE6 / 1e6));
+        double bestSquared = maxMeters * maxMeters;
+        int best = -1;
+        int row = Math.floorDiv(latE6, cellE6);
+        int col = Math.floorDiv(lngE6, cellE6);
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = col - 1; c <= col + 1; c++) {
+                int cell = findCell(r, c);
+                if (cell < 0) {
+                    continue;
+                }
+                int originLat = r * cellE6;
+                int originLng = c * cellE6;
+                int end = cell + 1 < cellCount ? firstAddress(cell + 1) : addressCount;
+                for (int a = firstAddress(cell); a < end; a++) {
+                    int at = addressesAt + a * ADDRESS_BYTES;
+                    double dy = (originLat + (buffer.getShort(at) & 0xFFFF) - latE6) * METERS_PER_E6;
+                    double dx = (originLng + (buffer.getShort(at + 2) & 0xFFFF) - lngE6) * metersPerLngE6;
+                    double squared = dx * dx + dy * dy;
+                    if (squared < bestSquared) {
+                        bestSquared = squared;
+                        best = a;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    int number(int address) {
+        return buffer.getShort(addressesAt + address * ADDRESS_BYTES + 6) & 0xFFFF;
+    }
+
+    String street(int address) {
+        int street = buffer.getShort(addressesAt + address * ADDRESS_BYTES + 4) & 0xFFFF;
+        int at = stringsAt + buffer.getInt(streetsAt + street * 4);
+        int length = buffer.getShort(at) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(at + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int firstAddress(int cell) {
+        return buffer.getInt(cellsAt + cell * CELL_BYTES + 8);
+    }
+
+    private int findCell(int row, int col) {
+        int low = 0;
+        int high = cellCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = cellsAt + mid * CELL_BYTES;
+            int midRow = buffer.getInt(at);
+            int compare = midRow != row ? Integer.compare(midRow, row) : Integer.compare(buffer.getInt(at + 4), col);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,531 @@
+package com.example.maplocator;
+
+/**
+ * Single-pass decoder for flat JSON responses whose fields may arrive under several names.
+ *
+ * <p>Each {@link Field} lists its aliases in order of preference, like the old
+ * {@code getFirstString}/{@code getFirstDouble} probes: when a response carries more than one
+ * alias for a field, the earliest usable one wins. The alias tables are compiled once into an
+ * open-addressed hash table keyed by the same hash {@link String#hashCode()} uses, so keys are
+ * matched straight out of the response text without allocating. The decoder also remembers
+ * the key order of the last response; when the server keeps sending the same shape, each key
+ * is confirmed with a single region compare instead of a hash lookup.</p>
+ *
+ * <p>Numbers are parsed without exceptions. Malformed input yields {@code null} from
+ * {@link #decode(String)} and unusable values are treated as absent.</p>
+ */
+final class AliasDecoder {
+
+    static final class Field {
+        final boolean numeric;
+        final String[] aliases;
+
+        private Field(boolean numeric, String[] aliases) {
+            this.numeric = numeric;
+            this.aliases = aliases;
+        }
+    }
+
+    static Field text(String... aliases) {
+        return new Field(false, aliases);
+    }
+
+    static Field number(String... aliases) {
+        return new Field(true, aliases);
+    }
+
+    static final class Values {
+        private final String[] strings;
+        private final double[] numbers;
+        private final int[] priorities;
+
+        Values(int slots) {
+            strings = new String[slots];
+            numbers = new double[slots];
+            priorities = new int[slots];
+            for (int i = 0; i < slots; i++) {
+                numbers[i] = Double.NaN;
+                priorities[i] = Integer.MAX_VALUE;
+            }
+        }
+
+        String getString(int slot) {
+            return strings[slot];
+        }
+
+        double getDouble(int slot) {
+            return numbers[slot];
+        }
+
+        boolean has(int slot) {
+            return priorities[slot] != Integer.MAX_VALUE;
+        }
+    }
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_LEARNED_KEYS = 64;
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Field[] fields;
+    private final String[] entryKeys;
+    private final int[] entrySlots;
+    private final int[] entryPriorities;
+    private final int[] table;
+    private final int mask;
+
+    private volatile int[] learnedShape;
+
+    AliasDecoder(Field... fields) {
+        this.fields = fields;
+
+        int count = 0;
+        for (Field field : fields) {
+            count += field.aliases.length;
+        }
+
+        entryKeys = new String[count];
+        entrySlots = new int[count];
+        entryPriorities = new int[count];
+
+        int capacity = Integer.highestOneBit(Math.max(4, count * 4) - 1) << 1;
+        table = new int[capacity];
+        mask = capacity - 1;
+
+        int entry = 0;
+        for (int slot = 0; slot < fields.length; slot++) {
+            String[] aliases = fields[slot].aliases;
+            for (int priority = 0; priority < aliases.length; priority++) {
+                entryKeys[entry] = aliases[priority];
+                entrySlots[entry] = slot;
+                entryPriorities[entry] = priority;
+
+                int index = spread(aliases[priority].hashCode()) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = entry + 1;
+                entry++;
+            }
+        }
+    }
+
+    Values decode(String json) {
+        if (json == null) {
+            return null;
+        }
+
+        int length = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= length || json.charAt(i) != '{') {
+            return null;
+        }
+
+        Values values = new Values(fields.length);
+        int[] learned = learnedShape;
+        int[] observed = null;
+        int ordinal = 0;
+        boolean closed = false;
+
+        i = skipWhitespace(json, i + 1);
+        if (i < length && json.charAt(i) == '}') {
+            return values;
+        }
+
+        while (i < length) {
+            if (json.charAt(i) != '"') {
+                return null;
+            }
+            int keyStart = i + 1;
+            int keyEnd = skipString(json, keyStart);
+            if (keyEnd < 0) {
+                return null;
+            }
+
+            int entry;
+            if (learned != null && ordinal < learned.length && learned[ordinal] != UNKNOWN
+                && keyMatches(learned[ordinal], json, keyStart, keyEnd)) {
+                entry = learned[ordinal];
+            } else {
+                entry = lookup(json, keyStart, keyEnd);
+                if (observed == null && ordinal < MAX_LEARNED_KEYS
+                    && (learned == null || ordinal >= learned.length || learned[ordinal] != entry)) {
+                    observed = new int[MAX_LEARNED_KEYS];
+                    if (learned != null) {
+                        System.arraycopy(learned, 0, observed, 0, Math.min(ordinal, learned.length));
+                    }
+                }
+            }
+            if (observed != null && ordinal < MAX_LEARNED_KEYS) {
+                observed[ordinal] = entry;
+            }
+            ordinal++;
+
+            i = skipWhitespace(json, keyEnd + 1);
+            if (i >= length || json.charAt(i) != ':') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= length) {
+                return null;
+            }
+
+            int valueEnd = entry == UNKNOWN ? skipValue(json, i) : readValue(json, i, entry, values);
+            if (valueEnd < 0) {
+                return null;
+            }
+
+            i = skipWhitespace(json, valueEnd);
+            if (i >= length) {
+                return null;
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                closed = true;
+                break;
+            }
+            if (c != ',') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        if (!closed) {
+            return null;
+        }
+
+        if (observed != null || (learned != null && learned.length != Math.min(ordinal, MAX_LEARNED_KEYS))) {
+            int size = Math.min(ordinal, MAX_LEARNED_KEYS);
+            int[] shape = new int[size];
+            if (observed != null) {
+                System.arraycopy(observed, 0, shape, 0, size);
+            } else {
+                System.arraycopy(learned, 0, shape, 0, Math.min(size, learned.length));
+            }
+            learnedShape = shape;
+        }
+        return values;
+    }
+
+    private int readValue(String json, int start, int entry, Values values) {
+        int slot = entrySlots[entry];
+        int priority = entryPriorities[entry];
+        boolean wanted = priority < values.priorities[slot];
+        char c = json.charAt(start);
+
+        if (c == '"') {
+            int end = skipString(json, start + 1);
+            if (end < 0 || !wanted) {
+                return end < 0 ? -1 : end + 1;
+            }
+            if (fields[slot].numeric) {
+                double number = indexOf(json, '\\', start + 1, end) < 0
+                    ? parseNumber(json, start + 1, end, true)
+                    : parseNumber(unescape(json, start + 1, end), 0, -1, true);
+                if (!Double.isNaN(number)) {
+                    values.numbers[slot] = number;
+                    values.priorities[slot] = priority;
+                }
+            } else {
+                String text = unescape(json, start + 1, end);
+                if (isUsableText(text)) {
+                    values.strings[slot] = text;
+                    values.priorities[slot] = priority;
+                }
+            }
+            return end + 1;
+        }
+
+        if (c == '{' || c == '[') {
+            int end = skipValue(json, start);
+            if (end > 0 && wanted && !fields[slot].numeric) {
+                values.strings[slot] = json.substring(start, end);
+                values.priorities[slot] = priority;
+            }
+            return end;
+        }
+
+        int end = start;
+        while (end < json.length() && ",}] \t\r\n".indexOf(json.charAt(end)) < 0) {
+            end++;
+        }
+        if (end == start) {
+            return -1;
+        }
+        if (wanted && !json.regionMatches(start, "null", 0, 4)) {
+            if (fields[slot].numeric) {
+                double number = parseNumber(json, start, end, false);
+                if (!Double.isNaN(number)) {
+                    values.numbers[slot] = number;
+                    values.priorities[slot] = priority;
+                }
+            } else {
+                values.strings[slot] = json.substring(start, end);
+                values.priorities[slot] = priority;
+            }
+        }
+        return end;
+    }
+
+    private int lookup(String json, int start, int end) {
+        if (indexOf(json, '\\', start, end) >= 0) {
+            String key = unescape(json, start, end);
+            return lookup(key, 0, key.length());
+        }
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + json.charAt(i);
+        }
+
+        int index = spread(hash) & mask;
+        int entry;
+        while ((entry = table[index]) != 0) {
+            if (keyMatches(entry - 1, json, start, end)) {
+                return entry - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return UNKNOWN;
+    }
+
+    private boolean keyMatches(int entry, String json, int start, int end) {
+        String key = entryKeys[entry];
+        return key.length() == end - start && json.regionMatches(start, key, 0, key.length());
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean isUsableText(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end > start && !(end - start == 4 && text.regionMatches(true, start, "null", 0, 4));
+    }
+
+    /**
+     * Parses a JSON number between {@code start} and {@code end} ({@code end < 0} means the
+     * whole string), returning NaN instead of throwing. Quoted values may carry surrounding
+     * whitespace and a leading '+', matching what {@link Double#parseDouble} accepted before.
+     */
+    static double parseNumber(String s, int start, int end, boolean lenient) {
+        if (end < 0) {
+            end = s.length();
+        }
+        if (lenient) {
+            while (start < end && Character.isWhitespace(s.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+                end--;
+            }
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || (lenient && s.charAt(i) == '+'))) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        int unsignedStart = i;
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigit = false;
+
+        while (i < end && isDigit(s.charAt(i))) {
+            anyDigit = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                scale++;
+            }
+            i++;
+        }
+        if (i < end && s.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(s.charAt(i))) {
+                anyDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale--;
+                }
+                i++;
+            }
+        }
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+
+        int exponent = 0;
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExponent = s.charAt(i) == '-';
+                i++;
+            }
+            if (i >= end || !isDigit(s.charAt(i))) {
+                return Double.NaN;
+            }
+            while (i < end && isDigit(s.charAt(i))) {
+                if (exponent < 10000) {
+                    exponent = exponent * 10 + (s.charAt(i) - '0');
+                }
+                i++;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+
+        int power = scale + exponent;
+        double value;
+        if (digits <= 15 && power >= -22 && power <= 22) {
+            value = power >= 0 ? mantissa * POW10[power] : mantissa / POW10[-power];
+        } else {
+            value = Double.parseDouble(s.substring(unsignedStart, end));
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int indexOf(String s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /** Returns the index of the closing quote of a string starting at {@code i}, or -1. */
+    private static int skipString(String json, int i) {
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            i += c == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+
+    private static int skipValue(String json, int i) {
+        char c = json.charAt(i);
+        if (c == '"') {
+            int end = skipString(json, i + 1);
+            return end < 0 ? -1 : end + 1;
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (i < json.length()) {
+                c = json.charAt(i);
+                if (c == '"') {
+                    i = skipString(json, i + 1);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            return -1;
+        }
+
+        int end = i;
+        while (end < json.length() && ",}] \t\r\n".indexOf(json.charAt(end)) < 0) {
+            end++;
+        }
+        return end == i ? -1 : end;
+    }
+
+    private static String unescape(String json, int start, int end) {
+        if (indexOf(json, '\\', start, end) < 0) {
+            return json.substring(start, end);
+        }
+
+        StringBuilder out = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char c = json.charAt(i++);
+            if (c != '\\' || i >= end) {
+                out.append(c);
+                continue;
+            }
+            char escaped = json.charAt(i++);
+            switch (escaped) {
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    int digits = 0;
+                    while (digits < 4 && i < end) {
+                        int hex = Character.digit(json.charAt(i), 16);
+                        if (hex < 0) {
+                            break;
+                        }
+                        code = (code << 4) | hex;
+                        digits++;
+                        i++;
+                    }
+                    out.append((char) code);
+                    break;
+                default:
+                    out.append(escaped);
+                    break;
+            }
+        }
+        return out.toString();
+    }
+}
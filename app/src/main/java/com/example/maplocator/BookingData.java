@@ -1,92 +1,177 @@
 package com.example.maplocator;
 
-public class BookingData {
-    private String requestId;
-    private String bookingId;
-    private double price;
-    private double driverLat;
-    private double driverLng;
-    private String driverName;
-    private String driverVehicle;
-    private String eta;
-    private String status;
+/**
+ * Immutable, versioned booking snapshot. Every {@code with*} method returns {@code this} when
+ * the value is unchanged and otherwise a copy that shares all untouched fields and carries a
+ * higher version, so publishing through {@link BookingStore} is cheap and readers always see
+ * one consistent version.
+ */
+public final class BookingData {
+
+    public static final int FIELD_REQUEST_ID = 1;
+    public static final int FIELD_BOOKING_ID = 1 << 1;
+    public static final int FIELD_PRICE = 1 << 2;
+    public static final int FIELD_DRIVER_POSITION = 1 << 3;
+    public static final int FIELD_DRIVER_NAME = 1 << 4;
+    public static final int FIELD_DRIVER_VEHICLE = 1 << 5;
+    public static final int FIELD_ETA = 1 << 6;
+    public static final int FIELD_STATUS = 1 << 7;
+    public static final int FIELD_ALL = (1 << 8) - 1;
+
+    public static final BookingData EMPTY = new BookingData(0, null, null, 0.0, 0.0, 0.0, null, null, null, null);
+
+    private final long version;
+    private final String requestId;
+    private final String bookingId;
+    private final double price;
+    private final double driverLat;
+    private final double driverLng;
+    private final String driverName;
+    private final String driverVehicle;
+    private final String eta;
+    private final String status;
+
+    private BookingData(long version, String requestId, String bookingId, double price,
+                        double driverLat, double driverLng, String driverName,
+                        String driverVehicle, String eta, String status) {
+        this.version = version;
+        this.requestId = requestId;
+        this.bookingId = bookingId;
+        this.price = price;
+        this.driverLat = driverLat;
+        this.driverLng = driverLng;
+        this.driverName = driverName;
+        this.driverVehicle = driverVehicle;
+        this.eta = eta;
+        this.status = status;
+    }
 
-    public BookingData() {
+    public long getVersion() {
+        return version;
     }
 
     public String getRequestId() {
         return requestId;
     }
 
-    public void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public String getBookingId() {
         return bookingId;
     }
 
-    public void setBookingId(String bookingId) {
-        this.bookingId = bookingId;
-    }
-
     public double getPrice() {
         return price;
     }
 
-    public void setPrice(double price) {
-        this.price = price;
-    }
-
     public double getDriverLat() {
         return driverLat;
     }
 
-    public void setDriverLat(double driverLat) {
-        this.driverLat = driverLat;
-    }
-
     public double getDriverLng() {
         return driverLng;
     }
 
-    public void setDriverLng(double driverLng) {
-        this.driverLng = driverLng;
-    }
-
     public String getDriverName() {
         return driverName;
     }
 
-    public void setDriverName(String driverName) {
-        this.driverName = driverName;
-    }
-
     public String getDriverVehicle() {
         return driverVehicle;
     }
 
-    public void setDriverVehicle(String driverVehicle) {
-        this.driverVehicle = driverVehicle;
-    }
-
     public String getEta() {
         return eta;
     }
 
-    public void setEta(String eta) {
-        this.eta = eta;
-    }
-
     public String getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
-        this.status = status;
-    }
-
     public boolean hasDriverLocation() {
         return driverLat != 0.0 || driverLng != 0.0;
     }
+
+    public String getTrackingId() {
+        if (bookingId != null && !bookingId.trim().isEmpty()) {
+            return bookingId;
+        }
+        return requestId;
+    }
+
+    public BookingData withRequestId(String requestId) {
+        if (equal(this.requestId, requestId)) {
+            return this;
+        }
+        return new BookingData(version + 1, requestId, bookingId, price, driverLat, driverLng,
+            driverName, driverVehicle, eta, status);
+    }
+
+    public BookingData withBookingId(String bookingId) {
+        if (equal(this.bookingId, bookingId)) {
+            return this;
+        }
+        return new BookingData(version + 1, requestId, bookingId, price, driverLat, driverLng,
+            driverName, driverVehicle, eta, status);
+    }
+
+    public BookingData withQuote(String requestId, double price) {
+        if (equal(this.requestId, requestId) && this.price == price) {
+            return this;
+        }
+        return new BookingData(version + 1, requestId, bookingId, price, driverLat, driverLng,
+            driverName, driverVehicle, eta, status);
+    }
+
+    public BookingData withDriver(double driverLat, double driverLng, String driverName,
+                                  String driverVehicle, String eta, String status) {
+        if (this.driverLat == driverLat && this.driverLng == driverLng
+            && equal(this.driverName, driverName) && equal(this.driverVehicle, driverVehicle)
+            && equal(this.eta, eta) && equal(this.status, status)) {
+            return this;
+        }
+        return new BookingData(version + 1, requestId, bookingId, price, driverLat, driverLng,
+            intern(this.driverName, driverName), intern(this.driverVehicle, driverVehicle),
+            intern(this.eta, eta), intern(this.status, status));
+    }
+
+    BookingData withVersion(long version) {
+        return new BookingData(version, requestId, bookingId, price, driverLat, driverLng,
+            driverName, driverVehicle, eta, status);
+    }
+
+    public int diff(BookingData other) {
+        int changed = 0;
+        if (!equal(requestId, other.requestId)) {
+            changed |= FIELD_REQUEST_ID;
+        }
+        if (!equal(bookingId, other.bookingId)) {
+            changed |= FIELD_BOOKING_ID;
+        }
+        if (price != other.price) {
+            changed |= FIELD_PRICE;
+        }
+        if (driverLat != other.driverLat || driverLng != other.driverLng) {
+            changed |= FIELD_DRIVER_POSITION;
+        }
+        if (!equal(driverName, other.driverName)) {
+            changed |= FIELD_DRIVER_NAME;
+        }
+        if (!equal(driverVehicle, other.driverVehicle)) {
+            changed |= FIELD_DRIVER_VEHICLE;
+        }
+        if (!equal(eta, other.eta)) {
+            changed |= FIELD_ETA;
+        }
+        if (!equal(status, other.status)) {
+            changed |= FIELD_STATUS;
+        }
+        return changed;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String intern(String current, String next) {
+        return equal(current, next) ? current : next;
+    }
 }
@@ -0,0 +1,31 @@
+package com.example.maplocator;
+
+/** A price offered for a trip, optionally for one vehicle class. */
+final class BookingQuote {
+    private static final int PRICE = 0;
+    private static final int REQUEST_ID = 1;
+
+    private static final AliasDecoder DECODER = new AliasDecoder(
+        AliasDecoder.number("price", "taxiPrice", "amount", "fare"),
+        AliasDecoder.text("requestId", "bookingId", "id"));
+
+    final double price;
+    final String requestId;
+    final String vehicleClass;
+
+    BookingQuote(double price, String requestId, String vehicleClass) {
+        this.price = price;
+        this.requestId = requestId;
+        this.vehicleClass = vehicleClass;
+    }
+
+    /** Returns null when the response carries no price. */
+    static BookingQuote parse(String response, String vehicleClass) {
+        AliasDecoder.Values values = DECODER.decode(response);
+        if (values == null || Double.isNaN(values.getDouble(PRICE))) {
+            return null;
+        }
+
+        return new BookingQuote(values.getDouble(PRICE), values.getString(REQUEST_ID), vehicleClass);
+    }
+}
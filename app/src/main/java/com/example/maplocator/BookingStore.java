@@ -0,0 +1,111 @@
+package com.example.maplocator;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free publication point for {@link BookingData} snapshots. Writers apply a
+ * {@link Mutation} with a compare-and-set loop and each successful publish raises the
+ * version. Listeners only hear about the fields in their mask that actually changed.
+ *
+ * <p>Listeners run on a publishing thread, one call at a time and in version order: whichever
+ * publisher gets there first delivers snapshots until it has caught up, and concurrent or
+ * nested publishes leave their snapshot to it. A snapshot that is overtaken before delivery
+ * is skipped, and its changes are reported with the next one.</p>
+ */
+public final class BookingStore {
+
+    public interface Mutation {
+        BookingData apply(BookingData current);
+    }
+
+    public interface Listener {
+        void onBookingChanged(BookingData snapshot, int changedFields);
+    }
+
+    private static final class Registration {
+        final int fieldMask;
+        final Listener listener;
+
+        Registration(int fieldMask, Listener listener) {
+            this.fieldMask = fieldMask;
+            this.listener = listener;
+        }
+    }
+
+    private final AtomicReference<BookingData> current = new AtomicReference<>(BookingData.EMPTY);
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pendingDispatches = new AtomicInteger();
+    /** Last snapshot given to listeners; only touched by the thread that is dispatching. */
+    private BookingData dispatched = BookingData.EMPTY;
+
+    public BookingData get() {
+        return current.get();
+    }
+
+    public BookingData update(Mutation mutation) {
+        while (true) {
+            BookingData previous = current.get();
+            BookingData next = mutation.apply(previous);
+            if (next == previous) {
+                return previous;
+            }
+
+            int changed = previous.diff(next);
+            if (changed == 0) {
+                return previous;
+            }
+
+            // with* copies already carry a higher version; only a reset to an older
+            // snapshot such as EMPTY needs one stamped on.
+            BookingData published = next.getVersion() > previous.getVersion()
+                ? next : next.withVersion(previous.getVersion() + 1);
+            if (current.compareAndSet(previous, published)) {
+                dispatch();
+                return published;
+            }
+        }
+    }
+
+    public void addListener(int fieldMask, Listener listener) {
+        registrations.add(new Registration(fieldMask, listener));
+    }
+
+    public void removeListener(Listener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    private void dispatch() {
+        if (pendingDispatches.getAndIncrement() != 0) {
+            return;
+        }
+
+        int pending = 1;
+        try {
+            do {
+                BookingData snapshot = current.get();
+                BookingData previous = dispatched;
+                if (snapshot.getVersion() > previous.getVersion()) {
+                    dispatched = snapshot;
+                    int changed = previous.diff(snapshot);
+                    for (Registration registration : registrations) {
+                        int relevant = changed & registration.fieldMask;
+                        if (relevant != 0) {
+                            registration.listener.onBookingChanged(snapshot, relevant);
+                        }
+                    }
+                }
+                pending = pendingDispatches.addAndGet(-pending);
+            } while (pending != 0);
+        } catch (RuntimeException e) {
+            // A throwing listener must not leave the store unable to dispatch again.
+            pendingDispatches.set(0);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.maplocator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-endpoint circuit breaker. After {@link #FAILURE_THRESHOLD} consecutive failures the
+ * circuit opens and calls are refused without touching the network. Once the cool-down has
+ * passed, a single probe is let through: success closes the circuit, failure re-opens it with
+ * twice the cool-down, up to {@link #MAX_OPEN_MS}. Outages therefore cost the backend one
+ * request per cool-down instead of one per poll.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long MIN_OPEN_MS = 2000;
+    private static final long MAX_OPEN_MS = 60000;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMs = MIN_OPEN_MS;
+    private long openedAtNanos;
+
+    /** Returns whether a call may go out now; in half-open state only the first caller gets through. */
+    synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(openMs)) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMs = MIN_OPEN_MS;
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            openMs = Math.min(MAX_OPEN_MS, openMs * 2);
+            open();
+        } else if (++consecutiveFailures >= FAILURE_THRESHOLD && state == State.CLOSED) {
+            open();
+        }
+    }
+
+    /** A call that was let through ended without an answer either way, e.g. it was canceled. */
+    synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(openMs);
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.maplocator;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a connection to the configured endpoint ready before the user submits. As soon as an
+ * endpoint is known its host is resolved through {@link DnsCache} and a lightweight HEAD
+ * request is sent; because {@link NetworkHelper} leaves fully read connections open, that
+ * request leaves a pooled keep-alive connection (TCP and TLS already done) behind for the
+ * next real call. The check is repeated every {@link #KEEP_WARM_INTERVAL_MS}, well inside
+ * the pool's idle timeout, for {@link #KEEP_WARM_WINDOW_MS} after the last prewarm request,
+ * so an idle app stops touching the network on its own.
+ *
+ * <p>All work runs on one background thread; {@link #prewarm(String)} may be called from
+ * any thread.</p>
+ */
+final class ConnectionWarmer {
+
+    private static final String TAG = "ConnectionWarmer";
+    private static final long KEEP_WARM_INTERVAL_MS = 45_000;
+    private static final long KEEP_WARM_WINDOW_MS = 5 * 60_000;
+    private static final int HEALTH_CHECK_TIMEOUT_MS = 5000;
+
+    private static ConnectionWarmer instance;
+
+    private final ScheduledExecutorService executor;
+
+    private String endpoint;
+    private long warmUntil;
+    private long lastHealthyAt;
+    private ScheduledFuture<?> keepWarm;
+
+    private ConnectionWarmer() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static synchronized ConnectionWarmer getInstance() {
+        if (instance == null) {
+            instance = new ConnectionWarmer();
+        }
+        return instance;
+    }
+
+    void prewarm(String apiUrl) {
+        if (apiUrl == null || !(apiUrl.startsWith("http://") || apiUrl.startsWith("https://"))) {
+            return;
+        }
+
+        executor.execute(() -> {
+            boolean sameEndpoint = apiUrl.equals(endpoint);
+            endpoint = apiUrl;
+            warmUntil = SystemClock.elapsedRealtime() + KEEP_WARM_WINDOW_MS;
+
+            if (!sameEndpoint || SystemClock.elapsedRealtime() - lastHealthyAt > KEEP_WARM_INTERVAL_MS) {
+                lastHealthyAt = 0;
+                check();
+            }
+            if (keepWarm == null) {
+                keepWarm = executor.scheduleWithFixedDelay(this::keepWarm,
+                    KEEP_WARM_INTERVAL_MS, KEEP_WARM_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    void stop() {
+        executor.execute(() -> {
+            endpoint = null;
+            cancelKeepWarm();
+        });
+    }
+
+    private void keepWarm() {
+        if (endpoint == null || SystemClock.elapsedRealtime() > warmUntil) {
+            cancelKeepWarm();
+            return;
+        }
+        check();
+    }
+
+    private void cancelKeepWarm() {
+        if (keepWarm != null) {
+            keepWarm.cancel(false);
+            keepWarm = null;
+        }
+    }
+
+    private void check() {
+        String apiUrl = endpoint;
+        try {
+            String host = new URL(apiUrl).getHost();
+            DnsCache.getInstance().lookup(host);
+
+            int code = NetworkHelper.healthCheck(apiUrl, HEALTH_CHECK_TIMEOUT_MS);
+            if (code > 0) {
+                lastHealthyAt = SystemClock.elapsedRealtime();
+            } else {
+                DnsCache.getInstance().invalidate(host);
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Prewarm failed for " + apiUrl + ": " + e.getMessage());
+        }
+    }
+}
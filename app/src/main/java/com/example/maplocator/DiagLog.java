@@ -0,0 +1,193 @@
+package com.example.maplocator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory diagnostics log for code on hot paths. Recording an entry claims a slot in a fixed
+ * ring with one atomic increment and stores the format string and its arguments; nothing is
+ * formatted and nothing reaches logcat on the calling thread. A background thread drains new
+ * entries to logcat every {@link #FLUSH_INTERVAL_MS}: warnings and errors always, the rest only
+ * when {@code adb shell setprop log.tag.DiagLog DEBUG} is set.
+ *
+ * <p>Each {@link Category} keeps one event in {@code sampleEvery} (see {@link #sample}) and
+ * truncates string arguments beyond {@code maxArgChars} when they are recorded, so a large
+ * response body is never held by the ring. The ring keeps the last {@link #CAPACITY} entries,
+ * which {@link #export} turns into text for bug reports.</p>
+ */
+final class DiagLog {
+
+    interface ExportCallback {
+        void onExport(String text);
+    }
+
+    enum Category {
+        NETWORK(1, 1024),
+        POLL(10, 512);
+
+        final int defaultSampleEvery;
+        final int maxArgChars;
+
+        Category(int defaultSampleEvery, int maxArgChars) {
+            this.defaultSampleEvery = defaultSampleEvery;
+            this.maxArgChars = maxArgChars;
+        }
+    }
+
+    static final int CAPACITY = 2048;
+
+    private static final String TAG = "DiagLog";
+    private static final int MASK = CAPACITY - 1;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final class Entry {
+        final long seq;
+        final long timeMs;
+        final int level;
+        final Category category;
+        final String format;
+        final Object[] args;
+        final Throwable error;
+
+        Entry(long seq, int level, Category category, String format, Object[] args, Throwable error) {
+            this.seq = seq;
+            this.timeMs = System.currentTimeMillis();
+            this.level = level;
+            this.category = category;
+            this.format = format;
+            this.args = args;
+            this.error = error;
+        }
+
+        String message() {
+            String message = args.length == 0 ? format : String.format(Locale.US, format, args);
+            return error != null ? message + '\n' + Log.getStackTraceString(error) : message;
+        }
+    }
+
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLongArray sampleCounters = new AtomicLongArray(Category.values().length);
+    private static final int[] sampleEvery = new int[Category.values().length];
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ScheduledExecutorService flusher = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "diag-log");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static long flushed;
+
+    static {
+        for (Category category : Category.values()) {
+            sampleEvery[category.ordinal()] = category.defaultSampleEvery;
+        }
+        flusher.scheduleWithFixedDelay(DiagLog::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private DiagLog() {
+    }
+
+    /** Keeps one event in {@code every} for the category from now on; 1 keeps them all. */
+    static void setSampling(Category category, int every) {
+        sampleEvery[category.ordinal()] = Math.max(1, every);
+    }
+
+    /**
+     * Decides whether the next event of a category is kept. Call it once per event and use the
+     * answer for all of the event's entries, so a sampled request keeps its response too.
+     */
+    static boolean sample(Category category) {
+        int every = sampleEvery[category.ordinal()];
+        return every <= 1 || sampleCounters.getAndIncrement(category.ordinal()) % every == 0;
+    }
+
+    static void d(Category category, String format, Object... args) {
+        record(Log.DEBUG, category, format, args, null);
+    }
+
+    /** Errors are never sampled. */
+    static void e(Category category, Throwable error, String format, Object... args) {
+        record(Log.ERROR, category, format, args, error);
+    }
+
+    private static void record(int level, Category category, String format, Object[] args, Throwable error) {
+        Object[] captured = args != null ? args : NO_ARGS;
+        for (int i = 0; i < captured.length; i++) {
+            if (captured[i] instanceof String) {
+                String value = (String) captured[i];
+                if (value.length() > category.maxArgChars) {
+                    captured[i] = value.substring(0, category.maxArgChars) + "... (" + value.length() + " chars)";
+                }
+            }
+        }
+        long seq = head.getAndIncrement();
+        ring.set((int) (seq & MASK), new Entry(seq, level, category, format, captured, error));
+    }
+
+    /**
+     * Formats every entry from the last {@code windowMs} that is still in the ring, oldest first,
+     * and hands the text to {@code callback} on the main thread.
+     */
+    static void export(long windowMs, ExportCallback callback) {
+        flusher.execute(() -> {
+            String text = format(System.currentTimeMillis() - windowMs);
+            mainHandler.post(() -> callback.onExport(text));
+        });
+    }
+
+    private static String format(long sinceMs) {
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        StringBuilder text = new StringBuilder();
+        long end = head.get();
+        for (long seq = Math.max(0, end - CAPACITY); seq < end; seq++) {
+            Entry entry = ring.get((int) (seq & MASK));
+            if (entry == null || entry.seq != seq || entry.timeMs < sinceMs) {
+                continue;
+            }
+            text.append(time.format(new Date(entry.timeMs))).append(' ')
+                .append("VDIWE".charAt(entry.level - Log.VERBOSE)).append('/')
+                .append(entry.category).append(": ").append(entry.message()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Runs on the flusher thread only. */
+    private static void flush() {
+        boolean verbose = Log.isLoggable(TAG, Log.DEBUG);
+        long end = head.get();
+        long dropped = 0;
+        if (end - flushed > CAPACITY) {
+            dropped = end - CAPACITY - flushed;
+            flushed = end - CAPACITY;
+        }
+        while (flushed < end) {
+            Entry entry = ring.get((int) (flushed & MASK));
+            if (entry == null || entry.seq < flushed) {
+                // Claimed but not stored yet; pick it up on the next pass.
+                break;
+            }
+            if (entry.seq == flushed && (verbose || entry.level >= Log.WARN)) {
+                Log.println(entry.level, TAG, entry.category + ": " + entry.message());
+            } else if (entry.seq > flushed) {
+                dropped++;
+            }
+            flushed++;
+        }
+        if (dropped > 0 && verbose) {
+            Log.println(Log.WARN, TAG, dropped + " entries overwritten before they were flushed");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.maplocator;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process host name cache. Successful lookups are kept for {@link #TTL_MS}; after that
+ * the next lookup resolves again, but if the resolver fails the stale answer is still served
+ * for up to {@link #STALE_GRACE_MS} so a flaky resolver does not take down a working
+ * endpoint. Failures are cached briefly so callers do not hammer the resolver.
+ */
+final class DnsCache {
+
+    static final long TTL_MS = 60_000;
+    static final long STALE_GRACE_MS = 10 * 60_000;
+    static final long NEGATIVE_TTL_MS = 5_000;
+
+    private static final class Entry {
+        final InetAddress[] addresses;
+        final UnknownHostException error;
+        final long resolvedAtNanos;
+
+        Entry(InetAddress[] addresses, UnknownHostException error) {
+            this.addresses = addresses;
+            this.error = error;
+            this.resolvedAtNanos = System.nanoTime();
+        }
+
+        long ageMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resolvedAtNanos);
+        }
+    }
+
+    private static final DnsCache INSTANCE = new DnsCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private DnsCache() {
+    }
+
+    static DnsCache getInstance() {
+        return INSTANCE;
+    }
+
+    InetAddress[] lookup(String host) throws UnknownHostException {
+        Entry cached = entries.get(host);
+        if (cached != null) {
+            long age = cached.ageMs();
+            if (cached.error == null && age < TTL_MS) {
+                return cached.addresses;
+            }
+            if (cached.error != null && age < NEGATIVE_TTL_MS) {
+                throw cached.error;
+            }
+        }
+
+        try {
+            InetAddress[] addresses = InetAddress.getAllByName(host);
+            entries.put(host, new Entry(addresses, null));
+            return addresses;
+        } catch (UnknownHostException e) {
+            if (cached != null && cached.error == null && cached.ageMs() < STALE_GRACE_MS) {
+                return cached.addresses;
+            }
+            entries.put(host, new Entry(null, e));
+            throw e;
+        }
+    }
+
+    boolean isFresh(String host) {
+        Entry cached = entries.get(host);
+        return cached != null && cached.error == null && cached.ageMs() < TTL_MS;
+    }
+
+    void invalidate(String host) {
+        entries.remove(host);
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.maplocator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cleans up driver positions before they reach the map. Each fix goes through a
+ * constant-velocity Kalman filter, which rejects fixes that are implausibly far from where the
+ * driver should be, and then, when a road graph is set, through an online HMM map matcher that
+ * snaps the filtered position onto the most likely road segment.
+ *
+ * <p>State is a handful of numbers per driver, kept for the {@link #MAX_DRIVERS} most recently
+ * seen drivers, and the work per fix does not grow with the length of the trip. Not
+ * thread-safe; call from the main thread.</p>
+ */
+final class DriverFixPipeline {
+
+    private static final int MAX_DRIVERS = 4;
+
+    private final Map<String, Track> tracks = new LinkedHashMap<String, Track>(MAX_DRIVERS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Track> eldest) {
+            return size() > MAX_DRIVERS;
+        }
+    };
+
+    private RoadGraph roadGraph;
+    private boolean mapMatching = true;
+
+    void setRoadGraph(RoadGraph roadGraph) {
+        this.roadGraph = roadGraph;
+    }
+
+    void setMapMatching(boolean enabled) {
+        mapMatching = enabled;
+        if (!enabled) {
+            for (Track track : tracks.values()) {
+                track.matcher.reset();
+            }
+        }
+    }
+
+    void reset() {
+        tracks.clear();
+    }
+
+    /**
+     * Feeds one fix for {@code driverId} taken at {@code timeMs} (a monotonic clock) and writes
+     * the position to show as latitude and longitude into {@code out}. Returns false when the
+     * fix was rejected as an outlier, in which case {@code out} is left untouched.
+     */
+    boolean process(String driverId, double lat, double lng, long timeMs, double[] out) {
+        String key = driverId != null ? driverId : "";
+        Track track = tracks.get(key);
+        if (track == null) {
+            track = new Track();
+            tracks.put(key, track);
+        }
+
+        if (!track.filter.update(lat, lng, timeMs)) {
+            return false;
+        }
+        track.filter.position(out);
+
+        RoadGraph graph = roadGraph;
+        if (mapMatching && graph != null) {
+            track.matcher.match(graph, out[0], out[1], out);
+        }
+        return true;
+    }
+
+    private static final class Track {
+        final KalmanFilter filter = new KalmanFilter();
+        final MapMatcher matcher = new MapMatcher();
+    }
+
+    /**
+     * Two independent constant-velocity filters, east and north, in metres around the first fix.
+     * A fix whose innovation is beyond the 99.9% gate is dropped; a run of them means the filter
+     * is the one that is wrong (a tunnel, a long gap), so it starts over from the latest fix.
+     */
+    static final class KalmanFilter {
+        private static final double ACCELERATION_NOISE = 2.0;
+        private static final double MEASUREMENT_NOISE_M = 15.0;
+        private static final double INITIAL_SPEED_VARIANCE = 10.0 * 10.0;
+        private static final double GATE = 13.8;
+        private static final int MAX_REJECTIONS = 3;
+        private static final long MAX_GAP_MS = 60000;
+        private static final double METERS_PER_DEGREE = GeoMath.EARTH_RADIUS_M * Math.PI / 180;
+
+        private final Axis east = new Axis();
+        private final Axis north = new Axis();
+        private boolean initialized;
+        private double originLat;
+        private double originLng;
+        private double metersPerLng;
+        private long lastTimeMs;
+        private int rejections;
+
+        boolean update(double lat, double lng, long timeMs) {
+            if (!initialized || timeMs - lastTimeMs > MAX_GAP_MS || timeMs < lastTimeMs) {
+                start(lat, lng, timeMs);
+                return true;
+            }
+
+            double dt = (timeMs - lastTimeMs) / 1000.0;
+            double x = (lng - originLng) * metersPerLng;
+            double y = (lat - originLat) * METERS_PER_DEGREE;
+            east.predict(dt);
+            north.predict(dt);
+
+            if (east.mahalanobis(x) + north.mahalanobis(y) > GATE) {
+                if (++rejections >= MAX_REJECTIONS) {
+                    start(lat, lng, timeMs);
+                    return true;
+                }
+                east.rollback();
+                north.rollback();
+                return false;
+            }
+
+            rejections = 0;
+            lastTimeMs = timeMs;
+            east.correct(x);
+            north.correct(y);
+            return true;
+        }
+
+        void position(double[] out) {
+            out[0] = originLat + north.position / METERS_PER_DEGREE;
+            out[1] = originLng + east.position / metersPerLng;
+        }
+
+        private void start(double lat, double lng, long timeMs) {
+            initialized = true;
+            originLat = lat;
+            originLng = lng;
+            metersPerLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+            lastTimeMs = timeMs;
+            rejections = 0;
+            east.reset();
+            north.reset();
+        }
+
+        /** State [position, velocity] with its covariance; keeps the prior so a rejected fix leaves no trace. */
+        private static final class Axis {
+            double position;
+            double velocity;
+            double p00;
+            double p01;
+            double p11;
+
+            private double savedPosition;
+            private double savedVelocity;
+            private double saved00;
+            private double saved01;
+            private double saved11;
+
+            void reset() {
+                position = 0;
+                velocity = 0;
+                p00 = MEASUREMENT_NOISE_M * MEASUREMENT_NOISE_M;
+                p01 = 0;
+                p11 = INITIAL_SPEED_VARIANCE;
+            }
+
+            void predict(double dt) {
+                savedPosition = position;
+                savedVelocity = velocity;
+                saved00 = p00;
+                saved01 = p01;
+                saved11 = p11;
+
+                double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+                double dt2 = dt * dt;
+                position += velocity * dt;
+                p00 += 2 * dt * p01 + dt2 * p11 + q * dt2 * dt2 / 4;
+                p01 += dt * p11 + q * dt2 * dt / 2;
+                p11 += q * dt2;
+            }
+
+            void rollback() {
+                position = savedPosition;
+                velocity = savedVelocity;
+                p00 = saved00;
+                p01 = saved01;
+                p11 = saved11;
+            }
+
+            double mahalanobis(double measured) {
+                double innovation = measured - position;
+                return innovation * innovation / (p00 + MEASUREMENT_NOISE_M * MEASUREMENT_NOISE_M);
+            }
+
+            void correct(double measured) {
+                double s = p00 + MEASUREMENT_NOISE_M * MEASUREMENT_NOISE_M;
+                double k0 = p00 / s;
+                double k1 = p01 / s;
+                double innovation = measured - position;
+                position += k0 * innovation;
+                velocity += k1 * innovation;
+                p11 -= k1 * p01;
+                p01 -= k0 * p01;
+                p00 -= k0 * p00;
+            }
+        }
+    }
+
+    /**
+     * Online Viterbi over the few road segments near each fix. Emission scores fall off with the
+     * distance to the segment, transition scores with the difference between how far the
+     * projection moved and how far the driver moved, and moving to a segment that does not touch
+     * the previous one costs extra. Only the latest column of scores is kept, so the output is
+     * the best segment given everything so far, without later fixes revising earlier ones.
+     */
+    static final class MapMatcher {
+        private static final int CANDIDATES = 4;
+        private static final double SEARCH_RADIUS_M = 40;
+        private static final double GPS_SIGMA_M = 10;
+        private static final double TRANSITION_BETA_M = 20;
+        private static final double DISCONNECTED_PENALTY = 2;
+
+        private final int[] edges = new int[CANDIDATES];
+        private final double[] scores = new double[CANDIDATES];
+        private final double[] points = new double[CANDIDATES * 2];
+        private int count;
+
+        private final int[] nextEdges = new int[CANDIDATES];
+        private final double[] nextScores = new double[CANDIDATES];
+        private final double[] nextPoints = new double[CANDIDATES * 2];
+        private final double[] distances = new double[CANDIDATES];
+        private final double[] projected = new double[2];
+
+        private double lastLat;
+        private double lastLng;
+
+        void reset() {
+            count = 0;
+        }
+
+        /** Writes the matched position into {@code out}, or leaves it alone when no road is close enough. */
+        void match(RoadGraph graph, double lat, double lng, double[] out) {
+            int found = graph.edgesNear(lat, lng, SEARCH_RADIUS_M, nextEdges, distances);
+            if (found == 0) {
+                count = 0;
+                return;
+            }
+
+            double moved = count > 0 ? GeoMath.equirectangularMeters(lastLat, lastLng, lat, lng) : 0;
+            int best = 0;
+            for (int j = 0; j < found; j++) {
+                graph.projectOntoEdge(nextEdges[j], lat, lng, projected);
+                nextPoints[j * 2] = projected[0];
+                nextPoints[j * 2 + 1] = projected[1];
+
+                double emission = -0.5 * (distances[j] / GPS_SIGMA_M) * (distances[j] / GPS_SIGMA_M);
+                double transition = count > 0 ? -Double.MAX_VALUE : 0;
+                for (int i = 0; i < count; i++) {
+                    double step = GeoMath.equirectangularMeters(points[i * 2], points[i * 2 + 1],
+                        projected[0], projected[1]);
+                    double score = scores[i] - Math.abs(step - moved) / TRANSITION_BETA_M;
+                    if (!connected(graph, edges[i], nextEdges[j])) {
+                        score -= DISCONNECTED_PENALTY;
+                    }
+                    transition = Math.max(transition, score);
+                }
+                nextScores[j] = emission + transition;
+                if (nextScores[j] > nextScores[best]) {
+                    best = j;
+                }
+            }
+
+            double top = nextScores[best];
+            for (int j = 0; j < found; j++) {
+                edges[j] = nextEdges[j];
+                scores[j] = nextScores[j] - top;
+                points[j * 2] = nextPoints[j * 2];
+                points[j * 2 + 1] = nextPoints[j * 2 + 1];
+            }
+            count = found;
+            lastLat = lat;
+            lastLng = lng;
+
+            out[0] = points[best * 2];
+            out[1] = points[best * 2 + 1];
+        }
+
+        private static boolean connected(RoadGraph graph, int a, int b) {
+            int aFrom = graph.edgeSource(a);
+            int aTo = graph.edgeTarget(a);
+            int bFrom = graph.edgeSource(b);
+            int bTo = graph.edgeTarget(b);
+            return aFrom == bFrom || aFrom == bTo || aTo == bFrom || aTo == bTo;
+        }
+    }
+}
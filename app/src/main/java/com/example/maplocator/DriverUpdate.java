@@ -0,0 +1,121 @@
+package com.example.maplocator;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+final class DriverUpdate {
+
+    /** Server-side trip state, classified once when the update is parsed. */
+    enum Stage {
+        UNKNOWN,
+        SEARCHING,
+        EN_ROUTE,
+        ARRIVED,
+        IN_PROGRESS,
+        COMPLETED,
+        CANCELLED
+    }
+
+    private static final int LAT = 0;
+    private static final int LNG = 1;
+    private static final int NAME = 2;
+    private static final int VEHICLE = 3;
+    private static final int ETA = 4;
+    private static final int STATUS = 5;
+
+    private static final Map<String, Stage> STAGES = new HashMap<>();
+
+    static {
+        STAGES.put("searching", Stage.SEARCHING);
+        STAGES.put("pending", Stage.SEARCHING);
+        STAGES.put("en_route", Stage.EN_ROUTE);
+        STAGES.put("enroute", Stage.EN_ROUTE);
+        STAGES.put("accepted", Stage.EN_ROUTE);
+        STAGES.put("arrived", Stage.ARRIVED);
+        STAGES.put("in_progress", Stage.IN_PROGRESS);
+        STAGES.put("riding", Stage.IN_PROGRESS);
+        STAGES.put("completed", Stage.COMPLETED);
+        STAGES.put("finished", Stage.COMPLETED);
+        STAGES.put("cancelled", Stage.CANCELLED);
+        STAGES.put("canceled", Stage.CANCELLED);
+    }
+
+    private static final AliasDecoder DECODER = new AliasDecoder(
+        AliasDecoder.number("driverLat", "lat", "latitude"),
+        AliasDecoder.number("driverLng", "lng", "lon", "longitude"),
+        AliasDecoder.text("driverName", "name", "driverId"),
+        AliasDecoder.text("vehicle", "car", "vehicleInfo"),
+        AliasDecoder.text("eta", "etaMinutes", "etaMins", "etaText"),
+        AliasDecoder.text("status", "message", "state"));
+
+    final double driverLat;
+    final double driverLng;
+    final String driverName;
+    final String vehicle;
+    final String eta;
+    final String status;
+    final Stage stage;
+
+    DriverUpdate(double driverLat, double driverLng, String driverName, String vehicle, String eta, String status) {
+        this.driverLat = driverLat;
+        this.driverLng = driverLng;
+        this.driverName = driverName;
+        this.vehicle = vehicle;
+        this.eta = eta;
+        this.status = status;
+        this.stage = stageOf(status);
+    }
+
+    /**
+     * True once the trip is over, which is when polling stops and the trip goes to history.
+     * Arrival at the pickup is not the end: the ride itself is still tracked.
+     */
+    boolean endsTrip() {
+        return stage == Stage.COMPLETED || stage == Stage.CANCELLED;
+    }
+
+    boolean isArrival() {
+        return stage == Stage.ARRIVED;
+    }
+
+    /**
+     * Matches the status as a whole token first ({@code "en_route"}, {@code "In Progress"}),
+     * then word by word, so free-text messages such as "Driver has arrived" still classify
+     * while words that merely contain a keyword do not.
+     */
+    static Stage stageOf(String status) {
+        if (status == null) {
+            return Stage.UNKNOWN;
+        }
+
+        String normalized = status.trim().toLowerCase(Locale.US).replaceAll("[^a-z]+", "_");
+        Stage stage = STAGES.get(normalized);
+        if (stage != null) {
+            return stage;
+        }
+        for (String word : normalized.split("_")) {
+            stage = STAGES.get(word);
+            if (stage != null) {
+                return stage;
+            }
+        }
+        return Stage.UNKNOWN;
+    }
+
+    static DriverUpdate parse(String response) {
+        AliasDecoder.Values values = DECODER.decode(response);
+        if (values == null) {
+            return null;
+        }
+
+        double lat = values.getDouble(LAT);
+        double lng = values.getDouble(LNG);
+        if (Double.isNaN(lat) || Double.isNaN(lng)) {
+            return null;
+        }
+
+        return new DriverUpdate(lat, lng, values.getString(NAME), values.getString(VEHICLE),
+            values.getString(ETA), values.getString(STATUS));
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.maplocator;
+
+import android.content.Context;
+
+final class Formatters {
+
+    private Formatters() {
+    }
+
+    static String distance(Context context, float meters) {
+        if (meters < 1000) {
+            return context.getString(R.string.distance_m_format, meters);
+        }
+
+        return context.getString(R.string.distance_km_format, meters / 1000f);
+    }
+
+    static String price(double price) {
+        return String.format("$%.2f", price);
+    }
+
+    static String duration(Context context, double seconds) {
+        return context.getString(R.string.duration_min_format, Math.max(1, Math.round(seconds / 60)));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.maplocator;
+
+/**
+ * Allocation-free spherical geometry on primitive degrees. Pure JVM, no Android types,
+ * so it can run on every fix and every animation frame.
+ */
+public final class GeoMath {
+
+    public static final double EARTH_RADIUS_M = 6371008.8;
+
+    private static final double DEG_TO_RAD = Math.PI / 180.0;
+    private static final double RAD_TO_DEG = 180.0 / Math.PI;
+
+    private GeoMath() {
+    }
+
+    public static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = lat1 * DEG_TO_RAD;
+        double phi2 = lat2 * DEG_TO_RAD;
+        double sinDPhi = Math.sin((phi2 - phi1) * 0.5);
+        double sinDLambda = Math.sin((lng2 - lng1) * DEG_TO_RAD * 0.5);
+
+        double a = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2.0 * EARTH_RADIUS_M * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    public static double equirectangularMeters(double lat1, double lng1, double lat2, double lng2) {
+        double x = wrapDegrees(lng2 - lng1) * DEG_TO_RAD * Math.cos((lat1 + lat2) * 0.5 * DEG_TO_RAD);
+        double y = (lat2 - lat1) * DEG_TO_RAD;
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_M;
+    }
+
+    public static double bearingDegrees(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = lat1 * DEG_TO_RAD;
+        double phi2 = lat2 * DEG_TO_RAD;
+        double dLambda = (lng2 - lng1) * DEG_TO_RAD;
+
+        double y = Math.sin(dLambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLambda);
+        double bearing = Math.atan2(y, x) * RAD_TO_DEG;
+        return bearing < 0 ? bearing + 360.0 : bearing;
+    }
+
+    public static boolean isInViewport(double lat, double lng, double north, double east, double south, double west) {
+        if (lat < south || lat > north) {
+            return false;
+        }
+
+        if (west <= east) {
+            return lng >= west && lng <= east;
+        }
+        return lng >= west || lng <= east;
+    }
+
+    public static double wrapDegrees(double degrees) {
+        if (degrees > 180.0) {
+            return degrees - 360.0;
+        }
+        if (degrees < -180.0) {
+            return degrees + 360.0;
+        }
+        return degrees;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.maplocator;
+
+/**
+ * Tracks where the driver is relative to the pickup and the destination from each fix, without
+ * waiting for the server to say so. Each fix costs two flat-earth distance checks against
+ * squared radii, so it can run on every poll.
+ *
+ * <p>The phase only moves forward, except that a driver who wanders back out of an approach
+ * zone, past {@link #EXIT_FACTOR} times its radius, drops back to the previous phase. The
+ * margin keeps GPS noise at the zone edge from producing a stream of transitions. Not
+ * thread-safe.</p>
+ */
+final class GeofenceEngine {
+
+    enum Phase {
+        TO_PICKUP,
+        NEAR_PICKUP,
+        AT_PICKUP,
+        TO_DESTINATION,
+        NEAR_DESTINATION,
+        AT_DESTINATION
+    }
+
+    static final double ARRIVAL_RADIUS_M = 60;
+    static final double APPROACH_RADIUS_M = 600;
+    private static final double EXIT_FACTOR = 1.5;
+    private static final double METERS_PER_DEGREE = GeoMath.EARTH_RADIUS_M * Math.PI / 180;
+
+    private static final double ARRIVAL_SQUARED = ARRIVAL_RADIUS_M * ARRIVAL_RADIUS_M;
+    private static final double APPROACH_SQUARED = APPROACH_RADIUS_M * APPROACH_RADIUS_M;
+    private static final double ARRIVAL_EXIT_SQUARED = ARRIVAL_SQUARED * EXIT_FACTOR * EXIT_FACTOR;
+    private static final double APPROACH_EXIT_SQUARED = APPROACH_SQUARED * EXIT_FACTOR * EXIT_FACTOR;
+
+    private final double pickupLat;
+    private final double pickupLng;
+    private final double destLat;
+    private final double destLng;
+    private final double metersPerLng;
+
+    private Phase phase = Phase.TO_PICKUP;
+
+    /** A NaN destination leaves the engine at {@link Phase#AT_PICKUP} once the driver arrives. */
+    GeofenceEngine(double pickupLat, double pickupLng, double destLat, double destLng) {
+        this.pickupLat = pickupLat;
+        this.pickupLng = pickupLng;
+        this.destLat = destLat;
+        this.destLng = destLng;
+        metersPerLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(pickupLat));
+    }
+
+    Phase getPhase() {
+        return phase;
+    }
+
+    /** Feeds one fix and returns the new phase, or null when the phase did not change. */
+    Phase onFix(double lat, double lng) {
+        Phase next = evaluate(lat, lng);
+        if (next == phase) {
+            return null;
+        }
+        phase = next;
+        return next;
+    }
+
+    private Phase evaluate(double lat, double lng) {
+        switch (phase) {
+            case TO_PICKUP:
+            case NEAR_PICKUP: {
+                double d2 = distanceSquared(lat, lng, pickupLat, pickupLng);
+                if (d2 <= ARRIVAL_SQUARED) {
+                    return Phase.AT_PICKUP;
+                }
+                if (d2 <= APPROACH_SQUARED) {
+                    return Phase.NEAR_PICKUP;
+                }
+                return phase == Phase.NEAR_PICKUP && d2 <= APPROACH_EXIT_SQUARED ? Phase.NEAR_PICKUP : Phase.TO_PICKUP;
+            }
+            case AT_PICKUP:
+                if (Double.isNaN(destLat)
+                    || distanceSquared(lat, lng, pickupLat, pickupLng) <= ARRIVAL_EXIT_SQUARED) {
+                    return Phase.AT_PICKUP;
+                }
+                return destinationPhase(lat, lng, Phase.TO_DESTINATION);
+            case TO_DESTINATION:
+            case NEAR_DESTINATION:
+                return destinationPhase(lat, lng, phase);
+            default:
+                return phase;
+        }
+    }
+
+    private Phase destinationPhase(double lat, double lng, Phase current) {
+        double d2 = distanceSquared(lat, lng, destLat, destLng);
+        if (d2 <= ARRIVAL_SQUARED) {
+            return Phase.AT_DESTINATION;
+        }
+        if (d2 <= APPROACH_SQUARED) {
+            return Phase.NEAR_DESTINATION;
+        }
+        return current == Phase.NEAR_DESTINATION && d2 <= APPROACH_EXIT_SQUARED
+            ? Phase.NEAR_DESTINATION : Phase.TO_DESTINATION;
+    }
+
+    private double distanceSquared(double lat, double lng, double targetLat, double targetLng) {
+        double dy = (lat - targetLat) * METERS_PER_DEGREE;
+        double dx = (lng - targetLng) * metersPerLng;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.maplocator;
+
+import java.io.IOException;
+
+/**
+ * Moves one JSON request/response pair for {@link NetworkHelper}. Implementations must let a
+ * {@link NetworkHelper.RequestCall} abort them (cancellation or deadline) by attaching an
+ * abort hook for the duration of the exchange.
+ */
+interface HttpTransport {
+
+    final class Reply {
+        final int code;
+        final String body;
+        final String protocol;
+
+        Reply(int code, String body, String protocol) {
+            this.code = code;
+            this.body = body;
+            this.protocol = protocol;
+        }
+    }
+
+    Reply execute(String method, String url, String body, RequestPriority priority,
+                  NetworkHelper.RequestCall call, int maxResponseChars, int timeoutMs) throws IOException;
+
+    /**
+     * Sends a HEAD request and leaves the connection pooled for the next call. Returns the
+     * status code, or -1 if the endpoint could not be reached.
+     */
+    int head(String url, int timeoutMs);
+}
@@ -0,0 +1,42 @@
+package com.example.maplocator;
+
+import java.util.Arrays;
+
+/**
+ * Latency of the most recent successful calls to one endpoint, kept in a small ring.
+ * Percentiles are computed on demand by sorting a copy; with {@link #WINDOW} samples that is
+ * cheaper than maintaining a histogram and adapts quickly after a backend change.
+ */
+final class LatencyTracker {
+
+    static final int WINDOW = 64;
+    private static final int MIN_SAMPLES = 16;
+
+    private final long[] samples = new long[WINDOW];
+    private final long[] scratch = new long[WINDOW];
+    private int count;
+    private int next;
+
+    synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) {
+            count++;
+        }
+    }
+
+    synchronized boolean hasEstimate() {
+        return count >= MIN_SAMPLES;
+    }
+
+    /** Returns the given percentile (0..1) of the window, or -1 until enough samples exist. */
+    synchronized long percentile(double fraction) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        System.arraycopy(samples, 0, scratch, 0, count);
+        Arrays.sort(scratch, 0, count);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return scratch[Math.max(0, Math.min(count - 1, index))];
+    }
+}
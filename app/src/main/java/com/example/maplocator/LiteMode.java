@@ -0,0 +1,120 @@
+package com.example.maplocator;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide switch for low-memory devices. Lite mode is on from the start on low-RAM
+ * (Android Go) devices and on devices with a small heap class, and is turned on for the rest
+ * of the process once the system reports {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}
+ * or worse. It never turns itself off again; memory pressure tends to come back.
+ *
+ * <p>The ceilings below are the budget the tracking screen is expected to stay under in each
+ * mode; {@link PerfMonitor} reports the peak heap of a replay against
+ * {@link #getHeapCeilingBytes()}.</p>
+ */
+final class LiteMode implements ComponentCallbacks2 {
+
+    interface Listener {
+        void onLiteModeChanged(boolean enabled);
+    }
+
+    /** In-memory tile cache size, in 256px tiles of {@link #TILE_BYTES} each once decoded. */
+    static final short DEFAULT_TILE_CACHE_TILES = 96;
+    static final short LITE_TILE_CACHE_TILES = 24;
+    static final int TILE_BYTES = 256 * 256 * 4;
+
+    static final long DEFAULT_HEAP_CEILING_BYTES = 64L * 1024 * 1024;
+    static final long LITE_HEAP_CEILING_BYTES = 24L * 1024 * 1024;
+
+    /** Largest response body the client will buffer in lite mode. */
+    static final int LITE_MAX_RESPONSE_CHARS = 64 * 1024;
+
+    private static final String TAG = "LiteMode";
+    private static final int SMALL_HEAP_CLASS_MB = 96;
+
+    private static LiteMode instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled;
+
+    private LiteMode(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            enabled = activityManager.isLowRamDevice() || activityManager.getMemoryClass() <= SMALL_HEAP_CLASS_MB;
+        }
+        applyNetworkLimits();
+        context.registerComponentCallbacks(this);
+    }
+
+    static synchronized LiteMode getInstance(Context context) {
+        if (instance == null) {
+            instance = new LiteMode(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    short getTileCacheTiles() {
+        return enabled ? LITE_TILE_CACHE_TILES : DEFAULT_TILE_CACHE_TILES;
+    }
+
+    long getHeapCeilingBytes() {
+        return enabled ? LITE_HEAP_CEILING_BYTES : DEFAULT_HEAP_CEILING_BYTES;
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if ((level >= TRIM_MEMORY_RUNNING_LOW && level < TRIM_MEMORY_UI_HIDDEN) || level >= TRIM_MEMORY_MODERATE) {
+            enable("onTrimMemory(" + level + ")");
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        enable("onLowMemory");
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void applyNetworkLimits() {
+        NetworkHelper.setBodyLogging(!enabled);
+        NetworkHelper.setMaxResponseChars(enabled ? LITE_MAX_RESPONSE_CHARS : Integer.MAX_VALUE);
+    }
+
+    private void enable(String reason) {
+        if (enabled) {
+            return;
+        }
+
+        enabled = true;
+        applyNetworkLimits();
+        Log.i(TAG, "Lite mode enabled: " + reason);
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onLiteModeChanged(true);
+            }
+        });
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.maplocator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process HTTP/1.1 server bound to the loopback interface. It understands
+ * Content-Length bodies and keep-alive, which is all {@link NetworkHelper} needs, and has no
+ * Android dependencies so the same stand-in endpoint also runs on a plain JVM.
+ */
+public class LocalHttpServer implements Closeable {
+
+    public interface Handler {
+        Response handle(Request request) throws Exception;
+    }
+
+    public static final class Request {
+        public final String method;
+        public final String path;
+        public final Map<String, String> headers;
+        public final String body;
+
+        Request(String method, String path, Map<String, String> headers, String body) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    public static final class Response {
+        final int code;
+        final String body;
+        final long delayMs;
+        final boolean drop;
+
+        private Response(int code, String body, long delayMs, boolean drop) {
+            this.code = code;
+            this.body = body;
+            this.delayMs = delayMs;
+            this.drop = drop;
+        }
+
+        public static Response json(int code, String body) {
+            return new Response(code, body != null ? body : "", 0, false);
+        }
+
+        public static Response drop(long delayMs) {
+            return new Response(0, null, delayMs, true);
+        }
+
+        public Response delayed(long delayMs) {
+            return new Response(code, body, Math.max(0, delayMs), drop);
+        }
+    }
+
+    private static final int MAX_HEADER_LINE = 8192;
+    /** Request bodies are small JSON objects; anything bigger is refused before allocating. */
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final Handler handler;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "local-http-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public LocalHttpServer(Handler handler) {
+        this.handler = handler;
+    }
+
+    public int start(int port) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 128);
+        serverSocket = socket;
+        running = true;
+        workers.execute(this::acceptLoop);
+        return socket.getLocalPort();
+    }
+
+    public String getBaseUrl() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? null : "http://127.0.0.1:" + socket.getLocalPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        workers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                workers.execute(() -> serve(client));
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+
+            while (running) {
+                String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+
+                String[] parts = requestLine.split(" ");
+                if (parts.length < 2) {
+                    writeResponse(out, Response.json(400, "{\"error\":\"bad request\"}"), false, false);
+                    return;
+                }
+
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+                    }
+                }
+
+                if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                    writeResponse(out, Response.json(411, "{\"error\":\"length required\"}"), false, false);
+                    return;
+                }
+
+                int length = contentLength(headers.get("content-length"));
+                if (length < 0) {
+                    writeResponse(out, Response.json(400, "{\"error\":\"bad content length\"}"), false, false);
+                    return;
+                }
+                if (length > MAX_BODY_BYTES) {
+                    writeResponse(out, Response.json(413, "{\"error\":\"payload too large\"}"), false, false);
+                    return;
+                }
+                String body = readBody(in, length);
+                boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+
+                Response response;
+                try {
+                    response = handler.handle(new Request(parts[0], parts[1], headers, body));
+                } catch (Exception e) {
+                    response = Response.json(500, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+                }
+                if (response == null) {
+                    response = Response.json(404, "{\"error\":\"not found\"}");
+                }
+
+                if (response.delayMs > 0) {
+                    Thread.sleep(response.delayMs);
+                }
+                if (response.drop) {
+                    return;
+                }
+
+                writeResponse(out, response, keepAlive, "HEAD".equals(parts[0]));
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** Body length from the header, 0 without one, or -1 when it is negative or unparsable. */
+    private static int contentLength(String header) {
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Math.max(-1, Integer.parseInt(header.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readBody(InputStream in, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return new String(buffer, 0, read, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_HEADER_LINE) {
+                throw new IOException("Header line too long");
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeResponse(OutputStream out, Response response, boolean keepAlive, boolean headOnly)
+        throws IOException {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + response.code + " " + reason(response.code) + "\r\n"
+            + "Content-Type: application/json; charset=utf-8\r\n"
+            + "Content-Length: " + body.length + "\r\n"
+            + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        if (!headOnly) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    private static String reason(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 411:
+                return "Length Required";
+            case 413:
+                return "Payload Too Large";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            default:
+                return code >= 200 && code < 300 ? "OK" : "Error";
+        }
+    }
+}
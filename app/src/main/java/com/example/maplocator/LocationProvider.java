@@ -0,0 +1,204 @@
+package com.example.maplocator;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Device location for pre-filling the pickup. {@link #lastKnown} answers at once from fixes
+ * the system already holds, without waking any radio. {@link #start} then asks for fresh fixes,
+ * cheapest provider first: the network provider straight away, and GPS only when no fix within
+ * {@link #GOOD_ACCURACY_M} has come in after {@link #GPS_DELAY_MS}. Updates stop at the first
+ * good fix, after {@link #TIMEOUT_MS}, or on {@link #stop}. Main thread only.
+ */
+final class LocationProvider implements LocationListener {
+
+    interface Listener {
+        /** Called for each fix that improves on the previous one. */
+        void onLocation(Location location);
+    }
+
+    /** Cached fixes older than this are good enough to centre the map, not to pick up at. */
+    static final long PREFILL_MAX_AGE_MS = 10 * 60 * 1000L;
+
+    private static final String TAG = "LocationProvider";
+    private static final float GOOD_ACCURACY_M = 50f;
+    private static final long GPS_DELAY_MS = 5000;
+    private static final long TIMEOUT_MS = 30000;
+    private static final long NEWER_WINS_MS = 2 * 60 * 1000L;
+    private static final String[] CACHED_PROVIDERS = {
+        LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER, LocationManager.PASSIVE_PROVIDER
+    };
+
+    private final Context context;
+    private final LocationManager manager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable startGps = this::startGps;
+    private final Runnable timeout = this::stop;
+
+    private Listener listener;
+    private Location best;
+    private boolean running;
+    private boolean gpsRequested;
+
+    LocationProvider(Context context) {
+        this.context = context.getApplicationContext();
+        manager = (LocationManager) this.context.getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    static boolean hasPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+            == PackageManager.PERMISSION_GRANTED
+            || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+            == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /** The best fix the system already has, or null without permission or without any fix. */
+    static Location lastKnown(Context context) {
+        if (!hasPermission(context)) {
+            return null;
+        }
+        LocationManager manager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        if (manager == null) {
+            return null;
+        }
+
+        Location best = null;
+        for (String provider : CACHED_PROVIDERS) {
+            try {
+                Location location = manager.getLastKnownLocation(provider);
+                if (location != null && isBetter(location, best)) {
+                    best = location;
+                }
+            } catch (SecurityException | IllegalArgumentException e) {
+                // Provider missing on this device, or only coarse access granted for GPS.
+            }
+        }
+        return best;
+    }
+
+    static long ageMs(Location location) {
+        return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1_000_000L;
+    }
+
+    /**
+     * Starts asking for fresh fixes, seeded with {@code seed} so only better ones are reported.
+     * {@code allowGps} false keeps to the network provider, for example in lite mode.
+     */
+    void start(Location seed, boolean allowGps, Listener listener) {
+        if (running || manager == null || !hasPermission(context)) {
+            return;
+        }
+
+        this.listener = listener;
+        best = seed;
+        running = true;
+        gpsRequested = false;
+        boolean requested = request(LocationManager.NETWORK_PROVIDER);
+        if (allowGps) {
+            if (requested) {
+                mainHandler.postDelayed(startGps, GPS_DELAY_MS);
+            } else {
+                startGps();
+            }
+        } else if (!requested) {
+            stop();
+            return;
+        }
+        mainHandler.postDelayed(timeout, TIMEOUT_MS);
+    }
+
+    void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        mainHandler.removeCallbacks(startGps);
+        mainHandler.removeCallbacks(timeout);
+        manager.removeUpdates(this);
+        listener = null;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void startGps() {
+        if (running && !gpsRequested && !isGood(best)) {
+            gpsRequested = request(LocationManager.GPS_PROVIDER);
+        }
+    }
+
+    private boolean request(String provider) {
+        try {
+            if (!manager.isProviderEnabled(provider)) {
+                return false;
+            }
+            manager.requestLocationUpdates(provider, 0, 0f, this, Looper.getMainLooper());
+            return true;
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "Cannot use provider " + provider, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        if (!running || !isBetter(location, best)) {
+            return;
+        }
+        best = location;
+        Listener current = listener;
+        if (isGood(location)) {
+            stop();
+        }
+        current.onLocation(location);
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+    }
+
+    @Override
+    public void onProviderEnabled(String provider) {
+    }
+
+    @Override
+    public void onProviderDisabled(String provider) {
+    }
+
+    private static boolean isGood(Location location) {
+        return location != null && location.hasAccuracy() && location.getAccuracy() <= GOOD_ACCURACY_M
+            && ageMs(location) < NEWER_WINS_MS;
+    }
+
+    /**
+     * A fix much newer than the current one always wins; otherwise the more accurate one does,
+     * with ties going to the newer fix.
+     */
+    private static boolean isBetter(Location candidate, Location current) {
+        if (current == null) {
+            return true;
+        }
+        long newerBy = (candidate.getElapsedRealtimeNanos() - current.getElapsedRealtimeNanos()) / 1_000_000L;
+        if (newerBy > NEWER_WINS_MS) {
+            return true;
+        }
+        if (newerBy < -NEWER_WINS_MS) {
+            return false;
+        }
+        float candidateAccuracy = candidate.hasAccuracy() ? candidate.getAccuracy() : Float.MAX_VALUE;
+        float currentAccuracy = current.hasAccuracy() ? current.getAccuracy() : Float.MAX_VALUE;
+        return candidateAccuracy < currentAccuracy || (candidateAccuracy == currentAccuracy && newerBy > 0);
+    }
+}
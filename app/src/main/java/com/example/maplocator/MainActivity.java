@@ -1,19 +1,38 @@
 package com.example.maplocator;
 
 import android.Manifest;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.graphics.drawable.Drawable;
 import android.location.Location;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.preference.PreferenceManager;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FrameLayout;
 import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -23,32 +42,57 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
 
-import org.json.JSONObject;
+import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.api.IMapController;
 import org.osmdroid.config.Configuration;
-import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
-import org.osmdroid.util.BoundingBox;
+import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.MapEventsOverlay;
 import org.osmdroid.views.overlay.Marker;
+import org.osmdroid.views.overlay.Polyline;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int PERMISSIONS_REQUEST_CODE = 1;
-    private static final long DRIVER_POLL_INTERVAL_SECONDS = 8;
-
+    private static final String TAG = "MainActivity";
+    private static final String EXTRA_MOCK_SERVER = "mockServer";
+    private static final String EXTRA_TRANSPORT = "transport";
+    private static final String EXTRA_VEHICLE_CLASSES = "vehicleClasses";
+    private static final int MENU_TRIP_HISTORY = 1;
+    private static final int MENU_SHARE_DIAGNOSTICS = 2;
+    private static final int MENU_TILE_MODE = 3;
+    private static final long DIAGNOSTICS_WINDOW_MS = 15 * 60 * 1000L;
+    private static final String PREF_API_ENDPOINT = "apiEndpoint";
+    private static final String PREF_TILE_MODE = "tileMode";
+    private static final long PREWARM_DEBOUNCE_MS = 800;
+
+    private static final AliasDecoder BOOKING_DECODER = new AliasDecoder(
+        AliasDecoder.text("bookingId", "requestId", "id"));
+    private static final double MIN_HEADING_DISTANCE_M = 5.0;
+    private static final double DEFAULT_ZOOM = 13.0;
+    private static final double DEVICE_LOCATION_ZOOM = 16.0;
+
+    private FrameLayout mapContainer;
     private MapView mapView;
+    private TileModes.Mode tileMode = TileModes.Mode.ONLINE;
+    private MbTilesArchive tileArchive;
 
     private LinearLayout selectionPanel;
     private LinearLayout trackingPanel;
 
+    private AutoCompleteTextView actvPlaceSearch;
+    private PlaceSuggestionAdapter placeAdapter;
+    private AddressIndex addressIndex;
     private EditText etApiEndpoint;
     private Button btnSetStart;
     private Button btnSetDestination;
@@ -58,6 +102,7 @@ public class MainActivity extends AppCompatActivity {
     private TextView tvStatus;
     private TextView tvStartCoords;
     private TextView tvDestCoords;
+    private TextView tvRouteSummary;
 
     private TextView tvDriverName;
     private TextView tvVehicle;
@@ -73,6 +118,29 @@ public class MainActivity extends AppCompatActivity {
 
     private GeoPoint startLocation;
     private GeoPoint destinationLocation;
+    private GeoPoint initialCenter;
+    private LocationProvider locationProvider;
+    private boolean startFromDevice;
+    private boolean pickupSelectedLogged;
+
+    private final ExecutorService routeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "route-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private RoadGraph roadGraph;
+    /** Set once opening the graph failed or found the synthetic grid, so it is not retried. */
+    private boolean roadGraphMissing;
+    private RoadGraph.Route routePreview;
+    private Polyline routeLine;
+    private final DriverFixPipeline driverFixes = new DriverFixPipeline();
+    private final double[] driverFix = new double[2];
+
+    private final GeoPoint driverPoint = new GeoPoint(0.0, 0.0);
+    private float driverBearing;
+    private MarkerIconCache markerIcons;
+    private ViewportController viewportController;
+    private LiteMode liteMode;
 
     private enum SelectionMode {
         NONE,
@@ -89,41 +157,307 @@ public class MainActivity extends AppCompatActivity {
     private SelectionMode currentMode = SelectionMode.NONE;
     private BookingState bookingState = BookingState.LOCATION_SELECTION;
 
-    private final BookingData bookingData = new BookingData();
+    private final BookingStore bookingStore = new BookingStore();
+
+    private TrackingService trackingService;
+    private ReplayController replayController;
+    private MockBookingServer mockServer;
+    private NetworkHelper.Call quoteCall;
+    /** From {@code R.array.vehicle_classes}; debug builds can override it with a launch extra. */
+    private String[] vehicleClasses = new String[0];
+    private AlertDialog quoteDialog;
+    private TextView quoteDialogMessage;
+    private ListView quoteDialogList;
+    private ArrayAdapter<String> quoteDialogOptions;
+    private final List<BookingQuote> quoteOptions = new ArrayList<>();
+    private String chosenRequestId;
+    private TripHistoryStore tripHistory;
+    private boolean tripOpen;
+    private long tripStartedAt;
+    private String tripVehicleClass;
+    private String geofenceStatus;
+    private NetworkHelper.Call confirmCall;
 
-    private ScheduledExecutorService pollingExecutor;
-    private ScheduledFuture<?> pollingFuture;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
-
-    private int consecutivePollErrors = 0;
+    private long createdAt;
+    private boolean firstFrameDrawn;
+    private boolean mapConfigLoaded;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        Trace.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
+        createdAt = SystemClock.elapsedRealtime();
 
-        Context ctx = getApplicationContext();
-        Configuration.getInstance().load(ctx, PreferenceManager.getDefaultSharedPreferences(ctx));
+        Intent launch = debugLaunchIntent();
+        String transport = launch.getStringExtra(EXTRA_TRANSPORT);
+        if (transport != null) {
+            NetworkHelper.setTransport(transport);
+        }
+        String classes = launch.getStringExtra(EXTRA_VEHICLE_CLASSES);
+        vehicleClasses = classes != null
+            ? parseVehicleClasses(classes)
+            : getResources().getStringArray(R.array.vehicle_classes);
 
+        liteMode = LiteMode.getInstance(this);
+        tripHistory = TripHistoryStore.getInstance(this);
+        locationProvider = new LocationProvider(this);
+        loadPreferencesAsync();
+
+        Trace.beginSection("MainActivity.inflate");
         setContentView(R.layout.activity_main);
+        Trace.endSection();
 
+        markerIcons = MarkerIconCache.getInstance(this);
         initializeViews();
-        requestPermissions();
-        setupMap();
         setupListeners();
+        loadPlaceIndexAsync();
+        loadAddressIndexAsync();
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos -> mainHandler.post(() -> {
+            firstFrameDrawn = true;
+            logStartupMilestone("first frame");
+            createMapIfReady();
+        }));
+        liteMode.addListener(liteModeListener);
+        bookingStore.addListener(BookingData.FIELD_DRIVER_POSITION | BookingData.FIELD_DRIVER_NAME
+            | BookingData.FIELD_DRIVER_VEHICLE | BookingData.FIELD_ETA | BookingData.FIELD_STATUS, trackingRenderer);
+        bindService(new Intent(this, TrackingService.class), trackingConnection, Context.BIND_AUTO_CREATE);
 
         if (savedInstanceState != null) {
             restoreState(savedInstanceState);
         }
 
         updateUiForState();
+        if (savedInstanceState == null) {
+            useCachedDeviceLocation();
+        }
+
+        if (bookingState == BookingState.TRACKING) {
+            startPollingDriverLocation(false);
+        } else if (savedInstanceState == null) {
+            replayController = ReplayController.fromIntent(this, launch, replayHost);
+            if (replayController != null) {
+                replayController.start();
+            } else if (launch.getBooleanExtra(EXTRA_MOCK_SERVER, false)) {
+                startMockServer();
+            }
+        }
+        Trace.endSection();
+    }
+
+    /**
+     * Reads the default preferences off the main thread: osmdroid's configuration, the saved
+     * API endpoint and the tile mode live there. The endpoint is pre-filled and its connection
+     * warmed while the first frame is drawn; the map waits for the configuration and, outside
+     * online mode, for the tile archive to open.
+     */
+    private void loadPreferencesAsync() {
+        Context ctx = getApplicationContext();
+        new Thread(() -> {
+            Trace.beginSection("MainActivity.loadPreferences");
+            SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(ctx);
+            Configuration.getInstance().load(ctx, preferences);
+            Configuration.getInstance().setCacheMapTileCount(liteMode.getTileCacheTiles());
+            String savedEndpoint = preferences.getString(PREF_API_ENDPOINT, null);
+            TileModes.Mode savedTileMode = TileModes.parse(preferences.getString(PREF_TILE_MODE, null));
+            MbTilesArchive archive = savedTileMode != TileModes.Mode.ONLINE ? openTileArchive(ctx) : null;
+            Trace.endSection();
+
+            if (savedEndpoint != null) {
+                ConnectionWarmer.getInstance().prewarm(savedEndpoint);
+            }
+
+            runOnUiThread(() -> {
+                mapConfigLoaded = true;
+                tileMode = savedTileMode;
+                tileArchive = archive;
+                if (savedEndpoint != null && etApiEndpoint.getText().toString().trim().isEmpty()) {
+                    etApiEndpoint.setText(savedEndpoint);
+                }
+                createMapIfReady();
+            });
+        }, "startup-preferences").start();
+    }
+
+    /** Maps the bundled place index off the main thread and attaches it to the search box. */
+    private void loadPlaceIndexAsync() {
+        Context ctx = getApplicationContext();
+        new Thread(() -> {
+            try {
+                PlaceIndex index = PlaceIndex.open(ctx);
+                runOnUiThread(() -> {
+                    placeAdapter = new PlaceSuggestionAdapter(this, index);
+                    actvPlaceSearch.setAdapter(placeAdapter);
+                });
+            } catch (IOException e) {
+                Log.w(TAG, "Place index unavailable", e);
+            }
+        }, "place-index").start();
+    }
+
+    /**
+     * Maps the bundled address index off the main thread; coordinates are shown until it is
+     * ready, and for good when there is no index of real addresses.
+     */
+    private void loadAddressIndexAsync() {
+        Context ctx = getApplicationContext();
+        new Thread(() -> {
+            try {
+                AddressIndex index = AddressIndex.open(ctx);
+                if (!index.isSurveyed()) {
+                    Log.w(TAG, "Ignoring synthetic address index");
+                    return;
+                }
+                runOnUiThread(() -> {
+                    addressIndex = index;
+                    updateStartCoordinates();
+                    updateDestinationCoordinates();
+                });
+            } catch (IOException e) {
+                Log.i(TAG, "No address index bundled: " + e);
+            }
+        }, "address-index").start();
+    }
+
+    private void createMapIfReady() {
+        if (mapView != null || !firstFrameDrawn || !mapConfigLoaded || isFinishing()) {
+            return;
+        }
+
+        Trace.beginSection("MainActivity.createMap");
+        mapView = new MapView(this, createTileProvider());
+        mapContainer.addView(mapView, new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        setupMap();
+
+        if (startLocation != null) {
+            placeStartMarker();
+        }
+        if (destinationLocation != null) {
+            placeDestinationMarker();
+        }
+        drawRouteLine();
+        BookingData snapshot = bookingStore.get();
+        if (snapshot.hasDriverLocation()) {
+            updateDriverMarker(snapshot.getDriverLat(), snapshot.getDriverLng());
+            autoFitMarkersIfNeeded(snapshot.getDriverLat(), snapshot.getDriverLng());
+        }
+
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+            mapView.onResume();
+        }
+        Trace.endSection();
+
+        logStartupMilestone("map ready");
+        reportFullyDrawn();
+        requestPermissions();
+    }
+
+    /**
+     * Centres the coming map on the fix the system already has and, when it is recent, makes it
+     * the pickup. Runs before the map exists, so the first tiles requested are the right ones.
+     */
+    private void useCachedDeviceLocation() {
+        Location cached = LocationProvider.lastKnown(this);
+        if (cached == null) {
+            return;
+        }
+
+        initialCenter = new GeoPoint(cached.getLatitude(), cached.getLongitude());
+        if (LocationProvider.ageMs(cached) <= LocationProvider.PREFILL_MAX_AGE_MS) {
+            setDeviceStartLocation(cached);
+        }
+    }
+
+    private boolean wantsDeviceLocation() {
+        return bookingState == BookingState.LOCATION_SELECTION && (startLocation == null || startFromDevice);
+    }
+
+    /** Refines the pickup with fresh fixes while it still comes from the device. */
+    private void startLocationUpdates() {
+        if (!wantsDeviceLocation() || locationProvider.isRunning()) {
+            return;
+        }
+        Location seed = LocationProvider.lastKnown(this);
+        locationProvider.start(seed, !liteMode.isEnabled(), location -> {
+            if (!wantsDeviceLocation()) {
+                locationProvider.stop();
+                return;
+            }
+            boolean first = startLocation == null;
+            setDeviceStartLocation(location);
+            if (mapView != null) {
+                if (first) {
+                    mapView.getController().setZoom(DEVICE_LOCATION_ZOOM);
+                }
+                mapView.getController().animateTo(startLocation);
+            }
+        });
+    }
+
+    private void setDeviceStartLocation(Location location) {
+        startLocation = new GeoPoint(location.getLatitude(), location.getLongitude());
+        startFromDevice = true;
+        if (mapView != null) {
+            placeStartMarker();
+        }
+        updateStartCoordinates();
+        updateStatus(getString(R.string.status_start_from_device));
+        onPickupSelected("from device location");
+        updateRoutePreview();
+    }
+
+    /** Time from launch to a pickup is a funnel metric; only the first pickup counts. */
+    private void onPickupSelected(String source) {
+        if (!pickupSelectedLogged) {
+            pickupSelectedLogged = true;
+            logStartupMilestone("pickup selected " + source);
+        }
+    }
+
+    /**
+     * The launch intent in debug builds. The launcher activity is exported, so in release builds
+     * any app could otherwise switch on traffic recording or point bookings at another server;
+     * there the extras are ignored.
+     */
+    private Intent debugLaunchIntent() {
+        return BuildConfig.DEBUG ? getIntent() : new Intent();
+    }
+
+    private void logStartupMilestone(String milestone) {
+        long sinceCreate = SystemClock.elapsedRealtime() - createdAt;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            long sinceProcessStart = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+            Log.i(TAG, "Startup " + milestone + ": " + sinceCreate + " ms after onCreate, "
+                + sinceProcessStart + " ms after process start");
+        } else {
+            Log.i(TAG, "Startup " + milestone + ": " + sinceCreate + " ms after onCreate");
+        }
+    }
+
+    private void startMockServer() {
+        MockBookingServer server = new MockBookingServer(new MockBookingServer.Scenario()
+            .latency(80, 400)
+            .errorRate(0.02)
+            .aliases(MockBookingServer.AliasStyle.ROTATE));
+        mockServer = server;
+        new Thread(() -> {
+            try {
+                String endpoint = server.start(0);
+                runOnUiThread(() -> etApiEndpoint.setText(endpoint));
+            } catch (Exception e) {
+                runOnUiThread(() -> Toast.makeText(this, e.toString(), Toast.LENGTH_LONG).show());
+            }
+        }, "mock-server-start").start();
     }
 
     private void initializeViews() {
-        mapView = findViewById(R.id.mapView);
+        mapContainer = findViewById(R.id.mapContainer);
 
         selectionPanel = findViewById(R.id.selectionPanel);
         trackingPanel = findViewById(R.id.trackingPanel);
 
+        actvPlaceSearch = findViewById(R.id.actvPlaceSearch);
         etApiEndpoint = findViewById(R.id.etApiEndpoint);
         btnSetStart = findViewById(R.id.btnSetStart);
         btnSetDestination = findViewById(R.id.btnSetDestination);
@@ -132,6 +466,7 @@ public class MainActivity extends AppCompatActivity {
         tvStatus = findViewById(R.id.tvStatus);
         tvStartCoords = findViewById(R.id.tvStartCoords);
         tvDestCoords = findViewById(R.id.tvDestCoords);
+        tvRouteSummary = findViewById(R.id.tvRouteSummary);
         progressBar = findViewById(R.id.progressBar);
 
         tvDriverName = findViewById(R.id.tvDriverName);
@@ -144,12 +479,22 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void requestPermissions() {
-        String[] permissions = {
-            Manifest.permission.INTERNET,
-            Manifest.permission.ACCESS_FINE_LOCATION,
-            Manifest.permission.ACCESS_COARSE_LOCATION,
-            Manifest.permission.WRITE_EXTERNAL_STORAGE
-        };
+        String[] permissions;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            permissions = new String[] {
+                Manifest.permission.INTERNET,
+                Manifest.permission.ACCESS_FINE_LOCATION,
+                Manifest.permission.ACCESS_COARSE_LOCATION,
+                Manifest.permission.POST_NOTIFICATIONS
+            };
+        } else {
+            permissions = new String[] {
+                Manifest.permission.INTERNET,
+                Manifest.permission.ACCESS_FINE_LOCATION,
+                Manifest.permission.ACCESS_COARSE_LOCATION,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE
+            };
+        }
 
         boolean allGranted = true;
         for (String permission : permissions) {
@@ -170,6 +515,9 @@ public class MainActivity extends AppCompatActivity {
                                           @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == PERMISSIONS_REQUEST_CODE) {
+            if (LocationProvider.hasPermission(this)) {
+                startLocationUpdates();
+            }
             for (int result : grantResults) {
                 if (result != PackageManager.PERMISSION_GRANTED) {
                     Toast.makeText(this, getString(R.string.permission_denied_warning),
@@ -181,15 +529,22 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupMap() {
-        mapView.setTileSource(TileSourceFactory.MAPNIK);
+        applyTileZoomLimits();
         mapView.setMultiTouchControls(true);
         mapView.setBuiltInZoomControls(true);
 
-        IMapController mapController = mapView.getController();
-        mapController.setZoom(13.0);
+        viewportController = new ViewportController(mapView);
+        applyLiteMode();
 
-        GeoPoint startPoint = new GeoPoint(37.7749, -122.4194);
-        mapController.setCenter(startPoint);
+        IMapController mapController = mapView.getController();
+        GeoPoint center = startLocation != null ? startLocation : initialCenter;
+        if (center != null) {
+            mapController.setZoom(DEVICE_LOCATION_ZOOM);
+            mapController.setCenter(center);
+        } else {
+            mapController.setZoom(DEFAULT_ZOOM);
+            mapController.setCenter(new GeoPoint(37.7749, -122.4194));
+        }
 
         org.osmdroid.events.MapEventsReceiver mapEventsReceiver = new org.osmdroid.events.MapEventsReceiver() {
             @Override
@@ -233,9 +588,70 @@ public class MainActivity extends AppCompatActivity {
 
         btnSubmit.setOnClickListener(v -> submitLocations());
 
+        actvPlaceSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                if (placeAdapter != null && mapView != null) {
+                    IGeoPoint center = mapView.getMapCenter();
+                    placeAdapter.setBias(center.getLatitude(), center.getLongitude());
+                }
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+        actvPlaceSearch.setOnItemClickListener((parent, view, position, id) ->
+            selectPlace((PlaceIndex.Place) parent.getItemAtPosition(position)));
+
+        etApiEndpoint.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mainHandler.removeCallbacks(prewarmEndpoint);
+                mainHandler.postDelayed(prewarmEndpoint, PREWARM_DEBOUNCE_MS);
+            }
+        });
+
         btnCancelBooking.setOnClickListener(v -> confirmCancelBooking());
     }
 
+    private final Runnable prewarmEndpoint = () ->
+        ConnectionWarmer.getInstance().prewarm(etApiEndpoint.getText().toString().trim());
+
+    /**
+     * Uses a place picked from the search box as the start or destination: whichever mode is
+     * active, otherwise the start until one is set.
+     */
+    private void selectPlace(PlaceIndex.Place place) {
+        if (bookingState != BookingState.LOCATION_SELECTION) {
+            return;
+        }
+
+        GeoPoint point = new GeoPoint(place.lat, place.lng);
+        if (currentMode == SelectionMode.DESTINATION
+            || (currentMode == SelectionMode.NONE && startLocation != null)) {
+            setDestinationLocation(point);
+        } else {
+            setStartLocation(point);
+        }
+        actvPlaceSearch.setText("");
+        if (mapView != null) {
+            mapView.getController().animateTo(point);
+        }
+    }
+
     private void handleMapTap(GeoPoint point) {
         if (bookingState != BookingState.LOCATION_SELECTION) {
             return;
@@ -250,36 +666,150 @@ public class MainActivity extends AppCompatActivity {
 
     private void setStartLocation(GeoPoint point) {
         startLocation = point;
-
-        if (startMarker != null) {
-            mapView.getOverlays().remove(startMarker);
+        startFromDevice = false;
+        locationProvider.stop();
+        onPickupSelected("by user");
+        if (mapView != null) {
+            placeStartMarker();
         }
 
-        startMarker = createLocationMarker(point, "Start", getString(R.string.start_label), true);
-        mapView.getOverlays().add(startMarker);
-        mapView.invalidate();
-
         updateStartCoordinates();
         updateStatus(getString(R.string.status_start_set));
         resetModeButtons();
         currentMode = SelectionMode.NONE;
+        updateRoutePreview();
     }
 
     private void setDestinationLocation(GeoPoint point) {
         destinationLocation = point;
+        if (mapView != null) {
+            placeDestinationMarker();
+        }
+
+        updateDestinationCoordinates();
+        updateStatus(getString(R.string.status_destination_set));
+        resetModeButtons();
+        currentMode = SelectionMode.NONE;
+        updateRoutePreview();
+    }
+
+    /**
+     * Routes start to destination over the bundled road graph on a background thread and
+     * shows the result; answers for points that have since moved are dropped. Without a graph
+     * of real roads there is no preview at all.
+     */
+    private void updateRoutePreview() {
+        GeoPoint from = startLocation;
+        GeoPoint to = destinationLocation;
+        if (from == null || to == null) {
+            return;
+        }
+
+        Context ctx = getApplicationContext();
+        routeExecutor.execute(() -> {
+            RoadGraph graph = openRoadGraph(ctx);
+            RoadGraph.Route result = graph != null
+                ? graph.route(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude())
+                : null;
+            runOnUiThread(() -> {
+                driverFixes.setRoadGraph(graph);
+                if (from != startLocation || to != destinationLocation) {
+                    return;
+                }
+                routePreview = result;
+                if (graph != null) {
+                    tvRouteSummary.setText(result != null ? routeSummary(result) : getString(R.string.route_unavailable));
+                    tvRouteSummary.setVisibility(View.VISIBLE);
+                } else {
+                    tvRouteSummary.setVisibility(View.GONE);
+                }
+                drawRouteLine();
+            });
+        });
+    }
+
+    /** Makes the road graph available to the driver fix pipeline for map matching. */
+    private void loadRoadGraphForMatching() {
+        Context ctx = getApplicationContext();
+        routeExecutor.execute(() -> {
+            RoadGraph graph = openRoadGraph(ctx);
+            if (graph != null) {
+                runOnUiThread(() -> driverFixes.setRoadGraph(graph));
+            }
+        });
+    }
+
+    /**
+     * Runs on {@link #routeExecutor}; returns null when there is no graph of real roads. The
+     * synthetic development grid is never used: it would show made-up routes and ETAs next to
+     * a real price, and snap driver fixes up to 40 m onto streets that do not exist.
+     */
+    private RoadGraph openRoadGraph(Context ctx) {
+        if (roadGraph == null && !roadGraphMissing) {
+            try {
+                RoadGraph graph = RoadGraph.open(ctx);
+                if (graph.isSurveyed()) {
+                    roadGraph = graph;
+                } else {
+                    Log.w(TAG, "Ignoring synthetic road graph");
+                    roadGraphMissing = true;
+                }
+            } catch (IOException e) {
+                Log.i(TAG, "No road graph bundled: " + e);
+                roadGraphMissing = true;
+            }
+        }
+        return roadGraph;
+    }
+
+    private String routeSummary(RoadGraph.Route route) {
+        return getString(R.string.route_summary_format,
+            Formatters.distance(this, (float) route.distanceMeters), Formatters.duration(this, route.durationSeconds));
+    }
+
+    private void drawRouteLine() {
+        if (mapView == null) {
+            return;
+        }
+        if (routeLine != null) {
+            mapView.getOverlays().remove(routeLine);
+            routeLine = null;
+        }
+
+        if (routePreview != null) {
+            double[] path = routePreview.path;
+            List<GeoPoint> points = new ArrayList<>(path.length / 2);
+            for (int i = 0; i < path.length; i += 2) {
+                points.add(new GeoPoint(path[i], path[i + 1]));
+            }
+            routeLine = new Polyline(mapView);
+            routeLine.setPoints(points);
+            routeLine.getOutlinePaint().setColor(ContextCompat.getColor(this, R.color.route));
+            routeLine.getOutlinePaint().setStrokeWidth(10f);
+            routeLine.setInfoWindow(null);
+            mapView.getOverlays().add(1, routeLine);
+        }
+        mapView.invalidate();
+    }
+
+    private void placeStartMarker() {
+        if (startMarker != null) {
+            mapView.getOverlays().remove(startMarker);
+        }
+
+        startMarker = createLocationMarker(startLocation, "Start", getString(R.string.start_label), true);
+        mapView.getOverlays().add(startMarker);
+        mapView.invalidate();
+    }
 
+    private void placeDestinationMarker() {
         if (destinationMarker != null) {
             mapView.getOverlays().remove(destinationMarker);
         }
 
-        destinationMarker = createLocationMarker(point, "Destination", getString(R.string.dest_label), false);
+        destinationMarker = createLocationMarker(destinationLocation, "Destination", getString(R.string.dest_label), false);
         mapView.getOverlays().add(destinationMarker);
         mapView.invalidate();
-
-        updateDestinationCoordinates();
-        updateStatus(getString(R.string.status_destination_set));
-        resetModeButtons();
-        currentMode = SelectionMode.NONE;
     }
 
     private Marker createLocationMarker(GeoPoint point, String title, String snippet, boolean isStart) {
@@ -291,25 +821,33 @@ public class MainActivity extends AppCompatActivity {
         marker.setDraggable(true);
 
         if (isStart) {
-            marker.setIcon(getMarkerIcon(Color.GREEN));
+            marker.setIcon(markerIcons.getMarker(Color.GREEN));
         } else {
-            marker.setIcon(getMarkerIcon(Color.RED));
+            marker.setIcon(markerIcons.getMarker(Color.RED));
         }
 
         marker.setOnMarkerDragListener(new Marker.OnMarkerDragListener() {
             @Override
             public void onMarkerDrag(Marker marker) {
+                if (isStart) {
+                    tvStartCoords.setText(getString(R.string.start_label_format, describe(marker.getPosition())));
+                } else {
+                    tvDestCoords.setText(getString(R.string.destination_label_format, describe(marker.getPosition())));
+                }
             }
 
             @Override
             public void onMarkerDragEnd(Marker marker) {
                 if (isStart) {
                     startLocation = marker.getPosition();
+                    startFromDevice = false;
+                    locationProvider.stop();
                     updateStartCoordinates();
                 } else {
                     destinationLocation = marker.getPosition();
                     updateDestinationCoordinates();
                 }
+                updateRoutePreview();
             }
 
             @Override
@@ -324,36 +862,62 @@ public class MainActivity extends AppCompatActivity {
         Marker marker = new Marker(mapView);
         marker.setPosition(point);
         marker.setTitle(getString(R.string.driver_label));
-        marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
         marker.setDraggable(false);
-        marker.setIcon(getMarkerIcon(Color.BLUE));
+        setDriverIcon(marker);
         return marker;
     }
 
-    private Drawable getMarkerIcon(int color) {
-        Drawable icon = ContextCompat.getDrawable(this, org.osmdroid.library.R.drawable.marker_default);
-        if (icon != null) {
-            icon.setTint(color);
+    private void setDriverIcon(Marker marker) {
+        if (liteMode.isEnabled()) {
+            marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
+            marker.setIcon(markerIcons.getMarker(Color.BLUE));
+        } else {
+            marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_CENTER);
+            marker.setIcon(markerIcons.getHeadingIcon(Color.BLUE, driverBearing));
+        }
+    }
+
+    private final LiteMode.Listener liteModeListener = enabled -> applyLiteMode();
+
+    private void applyLiteMode() {
+        driverFixes.setMapMatching(!liteMode.isEnabled());
+        if (!liteMode.isEnabled() || mapView == null) {
+            return;
         }
-        return icon;
+
+        mapView.setTilesScaledToDpi(true);
+        mapView.setHorizontalMapRepetitionEnabled(false);
+        mapView.setVerticalMapRepetitionEnabled(false);
+        mapView.setFlingEnabled(false);
+        Configuration.getInstance().setCacheMapTileCount(LiteMode.LITE_TILE_CACHE_TILES);
+        mapView.getTileProvider().getTileCache().setStressedMemory(true);
+        viewportController.setAnimated(false);
+
+        markerIcons.releaseHeadingIcons();
+        if (driverMarker != null) {
+            setDriverIcon(driverMarker);
+        }
+        mapView.invalidate();
     }
 
     private void updateStartCoordinates() {
         if (startLocation != null) {
-            String coords = String.format("Start: %.6f, %.6f",
-                startLocation.getLatitude(), startLocation.getLongitude());
-            tvStartCoords.setText(coords);
+            tvStartCoords.setText(getString(R.string.start_label_format, describe(startLocation)));
         }
     }
 
     private void updateDestinationCoordinates() {
         if (destinationLocation != null) {
-            String coords = String.format("Dest: %.6f, %.6f",
-                destinationLocation.getLatitude(), destinationLocation.getLongitude());
-            tvDestCoords.setText(coords);
+            tvDestCoords.setText(getString(R.string.destination_label_format, describe(destinationLocation)));
         }
     }
 
+    /** The nearest street address from the bundled index, or the coordinates when there is none. */
+    private String describe(IGeoPoint point) {
+        String address = addressIndex != null ? addressIndex.label(point.getLatitude(), point.getLongitude()) : null;
+        return address != null ? address : formatCoordinates(point);
+    }
+
     private void resetModeButtons() {
         btnSetStart.setBackgroundColor(getResources().getColor(android.R.color.darker_gray));
         btnSetDestination.setBackgroundColor(getResources().getColor(android.R.color.darker_gray));
@@ -387,97 +951,199 @@ public class MainActivity extends AppCompatActivity {
         etApiEndpoint.setEnabled(false);
         updateStatus(getString(R.string.status_submitting));
 
-        NetworkHelper.postLocationData(
+        boolean multiClass = vehicleClasses.length > 1;
+        quoteCall = new QuoteFanOut(vehicleClasses, new QuoteFanOut.Listener() {
+            @Override
+            public void onQuotes(List<BookingQuote> quotes, int outstanding) {
+                if (multiClass) {
+                    progressBar.setVisibility(View.GONE);
+                    showQuoteOptions(quotes, outstanding);
+                }
+            }
+
+            @Override
+            public void onFinished(List<BookingQuote> quotes, String error, boolean unparsable) {
+                progressBar.setVisibility(View.GONE);
+                btnSubmit.setEnabled(true);
+                btnSetStart.setEnabled(true);
+                btnSetDestination.setEnabled(true);
+                etApiEndpoint.setEnabled(true);
+
+                if (quotes.isEmpty()) {
+                    updateStatus(unparsable
+                        ? getString(R.string.error_invalid_price_response)
+                        : getString(R.string.error_network, error));
+                    tvStatus.setTextColor(getResources().getColor(R.color.red));
+                    Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+                    return;
+                }
+
+                saveApiEndpoint(apiUrl);
+                boolean autopilot = replayController != null && replayController.isAutopilot();
+                if (multiClass) {
+                    showQuoteOptions(quotes, 0);
+                    if (autopilot) {
+                        acceptQuote(quotes.get(0));
+                    }
+                    return;
+                }
+
+                BookingQuote quote = quotes.get(0);
+                bookingStore.update(data -> data.withQuote(quote.requestId, quote.price));
+                tripVehicleClass = quote.vehicleClass;
+                if (autopilot) {
+                    confirmPrice();
+                } else {
+                    showPriceConfirmationDialog(quote);
+                }
+            }
+        }).start(
             apiUrl,
             startLocation.getLatitude(),
             startLocation.getLongitude(),
             destinationLocation.getLatitude(),
-            destinationLocation.getLongitude(),
-            new NetworkHelper.NetworkCallback() {
-                @Override
-                public void onSuccess(String response) {
-                    runOnUiThread(() -> {
-                        progressBar.setVisibility(View.GONE);
-                        btnSubmit.setEnabled(true);
-                        btnSetStart.setEnabled(true);
-                        btnSetDestination.setEnabled(true);
-                        etApiEndpoint.setEnabled(true);
-
-                        BookingQuote quote = parseBookingQuote(response);
-                        if (quote == null) {
-                            updateStatus(getString(R.string.error_invalid_price_response));
-                            tvStatus.setTextColor(getResources().getColor(R.color.red));
-                            Toast.makeText(MainActivity.this, response, Toast.LENGTH_LONG).show();
-                            return;
-                        }
-
-                        bookingData.setRequestId(quote.requestId);
-                        bookingData.setPrice(quote.price);
-
-                        showPriceConfirmationDialog(quote);
-                    });
-                }
+            destinationLocation.getLongitude());
+    }
 
-                @Override
-                public void onError(String error) {
-                    runOnUiThread(() -> {
-                        progressBar.setVisibility(View.GONE);
-                        btnSubmit.setEnabled(true);
-                        btnSetStart.setEnabled(true);
-                        btnSetDestination.setEnabled(true);
-                        etApiEndpoint.setEnabled(true);
-                        updateStatus(getString(R.string.error_network, error));
-                        tvStatus.setTextColor(getResources().getColor(R.color.red));
-                        Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
-                    });
-                }
+    private static String[] parseVehicleClasses(String classes) {
+        List<String> parsed = new ArrayList<>();
+        for (String vehicleClass : classes.split(",")) {
+            if (!vehicleClass.trim().isEmpty()) {
+                parsed.add(vehicleClass.trim());
             }
-        );
+        }
+        return parsed.toArray(new String[0]);
     }
 
-    private static class BookingQuote {
-        final double price;
-        final String requestId;
-
-        BookingQuote(double price, String requestId) {
-            this.price = price;
-            this.requestId = requestId;
+    private void saveApiEndpoint(String apiUrl) {
+        if (replayController != null || mockServer != null) {
+            return;
         }
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+            .putString(PREF_API_ENDPOINT, apiUrl)
+            .apply();
     }
 
-    private BookingQuote parseBookingQuote(String response) {
-        try {
-            JSONObject json = new JSONObject(response);
+    /**
+     * Shows the offers received so far in one dialog that stays open while more arrive. The
+     * cheapest offer is selected until the user picks one; their pick survives re-sorting.
+     */
+    private void showQuoteOptions(List<BookingQuote> quotes, int outstanding) {
+        quoteOptions.clear();
+        quoteOptions.addAll(quotes);
+
+        if (quoteDialog == null) {
+            bookingState = BookingState.WAITING_PRICE_CONFIRMATION;
+            chosenRequestId = null;
+
+            LinearLayout content = new LinearLayout(this);
+            content.setOrientation(LinearLayout.VERTICAL);
+            int padding = Math.round(20 * getResources().getDisplayMetrics().density);
+            quoteDialogMessage = new TextView(this);
+            quoteDialogMessage.setPadding(padding, padding / 2, padding, 0);
+            quoteDialogList = new ListView(this);
+            quoteDialogList.setChoiceMode(ListView.CHOICE_MODE_SINGLE);
+            quoteDialogOptions = new ArrayAdapter<>(this, android.R.layout.simple_list_item_single_choice);
+            quoteDialogList.setAdapter(quoteDialogOptions);
+            quoteDialogList.setOnItemClickListener((parent, view, position, id) ->
+                chosenRequestId = quoteOptions.get(position).requestId);
+            content.addView(quoteDialogMessage);
+            content.addView(quoteDialogList);
+
+            quoteDialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.quote_options_title)
+                .setView(content)
+                .setCancelable(false)
+                .setNegativeButton(R.string.cancel, (dialog, which) -> {
+                    if (quoteCall != null) {
+                        quoteCall.cancel();
+                    }
+                    bookingState = BookingState.LOCATION_SELECTION;
+                    updateUiForState();
+                    updateStatus(getString(R.string.status_ready));
+                })
+                .setPositiveButton(R.string.accept, (dialog, which) -> acceptQuote(selectedQuote()))
+                .setOnDismissListener(dialog -> quoteDialog = null)
+                .show();
+        }
 
-            double price = getFirstDouble(json, "price", "taxiPrice", "amount", "fare");
-            String requestId = getFirstString(json, "requestId", "bookingId", "id");
+        quoteDialogOptions.setNotifyOnChange(false);
+        quoteDialogOptions.clear();
+        for (BookingQuote quote : quoteOptions) {
+            String price = Formatters.price(quote.price);
+            quoteDialogOptions.add(quote.vehicleClass != null
+                ? getString(R.string.quote_option_format, quote.vehicleClass, price)
+                : price);
+        }
+        quoteDialogOptions.notifyDataSetChanged();
+        quoteDialogList.setItemChecked(quoteOptions.indexOf(selectedQuote()), true);
 
-            if (Double.isNaN(price)) {
-                return null;
+        String message = tripSummary();
+        if (outstanding > 0) {
+            message += "\n" + getString(R.string.quote_waiting_format, outstanding);
+        }
+        quoteDialogMessage.setText(message);
+    }
+
+    private BookingQuote selectedQuote() {
+        for (BookingQuote quote : quoteOptions) {
+            if (quote.requestId != null && quote.requestId.equals(chosenRequestId)) {
+                return quote;
             }
+        }
+        return quoteOptions.isEmpty() ? null : quoteOptions.get(0);
+    }
+
+    private void acceptQuote(BookingQuote quote) {
+        if (quoteCall != null) {
+            quoteCall.cancel();
+        }
+        if (quoteDialog != null) {
+            quoteDialog.dismiss();
+            quoteDialog = null;
+        }
+        if (quote == null) {
+            bookingState = BookingState.LOCATION_SELECTION;
+            updateUiForState();
+            return;
+        }
 
-            return new BookingQuote(price, requestId);
+        bookingStore.update(data -> data.withQuote(quote.requestId, quote.price));
+        tripVehicleClass = quote.vehicleClass;
+        confirmPrice();
+    }
 
-        } catch (Exception e) {
-            return null;
+    private String tripSummary() {
+        String summary = getString(R.string.trip_summary_format,
+            describeOrNotAvailable(startLocation), describeOrNotAvailable(destinationLocation));
+        if (routePreview != null) {
+            summary += "\n" + routeSummary(routePreview);
         }
+        return summary;
+    }
+
+    private String describeOrNotAvailable(GeoPoint point) {
+        return point != null ? describe(point) : getString(R.string.not_available);
+    }
+
+    private static String formatCoordinates(IGeoPoint point) {
+        return String.format(Locale.US, "%.6f, %.6f", point.getLatitude(), point.getLongitude());
     }
 
     private void showPriceConfirmationDialog(BookingQuote quote) {
-        String startText = startLocation != null
-            ? String.format("%.6f, %.6f", startLocation.getLatitude(), startLocation.getLongitude())
-            : getString(R.string.not_available);
-        String destText = destinationLocation != null
-            ? String.format("%.6f, %.6f", destinationLocation.getLatitude(), destinationLocation.getLongitude())
-            : getString(R.string.not_available);
+        String startText = describeOrNotAvailable(startLocation);
+        String destText = describeOrNotAvailable(destinationLocation);
 
         String message = getString(
             R.string.price_confirm_message,
-            formatPrice(quote.price),
+            Formatters.price(quote.price),
             startText,
             destText
         );
 
+        if (routePreview != null) {
+            message += "\n" + routeSummary(routePreview);
+        }
         if (quote.requestId != null && !quote.requestId.trim().isEmpty()) {
             message += "\n" + getString(R.string.request_id_line, quote.requestId);
         }
@@ -514,19 +1180,19 @@ public class MainActivity extends AppCompatActivity {
 
         updateStatus(getString(R.string.status_confirming_price));
 
-        NetworkHelper.postPriceConfirmation(apiUrl, bookingData.getRequestId(), new NetworkHelper.NetworkCallback() {
+        String requestId = bookingStore.get().getRequestId();
+        confirmCall = NetworkHelper.postPriceConfirmation(apiUrl, requestId, new NetworkHelper.NetworkCallback() {
             @Override
             public void onSuccess(String response) {
                 runOnUiThread(() -> {
                     progressBar.setVisibility(View.GONE);
 
-                    String bookingId = parseBookingId(response);
-                    if (bookingId == null || bookingId.trim().isEmpty()) {
-                        bookingId = bookingData.getRequestId();
-                    }
-                    bookingData.setBookingId(bookingId);
+                    String parsedId = parseBookingId(response);
+                    bookingStore.update(data -> data.withBookingId(
+                        (parsedId == null || parsedId.trim().isEmpty()) ? data.getRequestId() : parsedId));
 
                     bookingState = BookingState.TRACKING;
+                    startTripRecording(System.currentTimeMillis());
                     updateUiForState();
                     updateStatus(getString(R.string.status_tracking));
 
@@ -553,12 +1219,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private String parseBookingId(String response) {
-        try {
-            JSONObject json = new JSONObject(response);
-            return getFirstString(json, "bookingId", "requestId", "id");
-        } catch (Exception e) {
-            return null;
-        }
+        AliasDecoder.Values values = BOOKING_DECODER.decode(response);
+        return values != null ? values.getString(0) : null;
     }
 
     private void confirmCancelBooking() {
@@ -573,6 +1235,10 @@ public class MainActivity extends AppCompatActivity {
 
     private void cancelBooking() {
         stopPollingDriverLocation();
+        if (confirmCall != null) {
+            confirmCall.cancel();
+            confirmCall = null;
+        }
 
         String apiUrl = etApiEndpoint.getText().toString().trim();
         String id = getTrackingId();
@@ -591,22 +1257,26 @@ public class MainActivity extends AppCompatActivity {
             });
         }
 
+        recordTrip(TripHistoryStore.Outcome.CANCELED, getString(R.string.trip_canceled_by_rider));
         resetBooking();
         updateStatus(getString(R.string.status_ready));
     }
 
     private void resetBooking() {
         bookingState = BookingState.LOCATION_SELECTION;
-        bookingData.setBookingId(null);
-        bookingData.setRequestId(null);
+        bookingStore.update(data -> BookingData.EMPTY);
 
         if (driverMarker != null) {
             mapView.getOverlays().remove(driverMarker);
             driverMarker = null;
         }
+        driverBearing = 0f;
+        geofenceStatus = null;
+        driverFixes.reset();
+        if (viewportController != null) {
+            viewportController.reset();
+        }
 
-        consecutivePollErrors = 0;
-        updateTrackingUi(null);
         updateUiForState();
     }
 
@@ -627,182 +1297,272 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void startPollingDriverLocation(boolean immediate) {
-        stopPollingDriverLocation();
+    private final ServiceConnection trackingConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            trackingService = ((TrackingService.LocalBinder) binder).getService();
+            trackingService.attach(MainActivity.this, trackingClient);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            trackingService = null;
+        }
+    };
+
+    private final TrackingService.Client trackingClient = new TrackingService.Client() {
+        @Override
+        public void onDriverUpdate(DriverUpdate update) {
+            handleDriverPollSuccess(update);
+        }
+
+        @Override
+        public void onPollError(String error, int consecutiveErrors) {
+            handleDriverPollError(error, consecutiveErrors);
+        }
 
+        @Override
+        public void onGeofenceTransition(GeofenceEngine.Phase phase) {
+            handleGeofenceTransition(phase);
+        }
+
+        @Override
+        public void onPollingStateChanged(boolean active) {
+            if (active) {
+                tvPollingStatus.setTextColor(getResources().getColor(R.color.green));
+                tvPollingStatus.setText(getString(R.string.polling_active));
+            } else {
+                tvPollingStatus.setTextColor(getResources().getColor(android.R.color.darker_gray));
+                tvPollingStatus.setText(getString(R.string.polling_stopped));
+            }
+        }
+    };
+
+    private final ReplayController.Host replayHost = new ReplayController.Host() {
+        @Override
+        public void onReplayReady(String endpoint, double startLat, double startLng, double destLat, double destLng) {
+            etApiEndpoint.setText(endpoint);
+            setStartLocation(new GeoPoint(startLat, startLng));
+            setDestinationLocation(new GeoPoint(destLat, destLng));
+            submitLocations();
+        }
+
+        @Override
+        public void onReplayFinished(String report, boolean passed) {
+            stopPollingDriverLocation();
+            updateStatus(getString(passed ? R.string.status_replay_finished : R.string.status_replay_failed));
+            Toast.makeText(MainActivity.this, report, Toast.LENGTH_LONG).show();
+        }
+    };
+
+    private void startPollingDriverLocation(boolean immediate) {
         String apiUrl = etApiEndpoint.getText().toString().trim();
         String id = getTrackingId();
         if (apiUrl.isEmpty() || id == null || id.trim().isEmpty()) {
+            stopPollingDriverLocation();
             tvPollingStatus.setTextColor(getResources().getColor(R.color.red));
             tvPollingStatus.setText(getString(R.string.error_api_endpoint));
             return;
         }
 
-        tvPollingStatus.setTextColor(getResources().getColor(R.color.green));
-        tvPollingStatus.setText(getString(R.string.polling_active));
-
-        pollingExecutor = Executors.newSingleThreadScheduledExecutor();
-        long initialDelay = immediate ? 0 : DRIVER_POLL_INTERVAL_SECONDS;
-
-        pollingFuture = pollingExecutor.scheduleAtFixedRate(() -> {
-            if (bookingState != BookingState.TRACKING) {
-                return;
-            }
-
-            NetworkHelper.pollDriverPosition(apiUrl, id, new NetworkHelper.NetworkCallback() {
-                @Override
-                public void onSuccess(String response) {
-                    consecutivePollErrors = 0;
-                    handleDriverPollSuccess(response);
-                }
-
-                @Override
-                public void onError(String error) {
-                    consecutivePollErrors++;
-                    handleDriverPollError(error);
-                }
-            });
+        if (!liteMode.isEnabled()) {
+            loadRoadGraphForMatching();
+        }
 
-        }, initialDelay, DRIVER_POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        double startLat = startLocation != null ? startLocation.getLatitude() : Double.NaN;
+        double startLng = startLocation != null ? startLocation.getLongitude() : Double.NaN;
+        double destLat = destinationLocation != null ? destinationLocation.getLatitude() : Double.NaN;
+        double destLng = destinationLocation != null ? destinationLocation.getLongitude() : Double.NaN;
+        TrackingService.start(this, apiUrl, id, immediate, startLat, startLng, destLat, destLng);
     }
 
     private void stopPollingDriverLocation() {
-        if (pollingFuture != null) {
-            pollingFuture.cancel(true);
-            pollingFuture = null;
-        }
-
-        if (pollingExecutor != null) {
-            pollingExecutor.shutdownNow();
-            pollingExecutor = null;
-        }
-
-        mainHandler.post(() -> {
-            if (tvPollingStatus != null) {
-                tvPollingStatus.setTextColor(getResources().getColor(android.R.color.darker_gray));
-                tvPollingStatus.setText(getString(R.string.polling_stopped));
-            }
-        });
+        TrackingService.stop(this);
     }
 
-    private void handleDriverPollSuccess(String response) {
-        DriverUpdate update = parseDriverUpdate(response);
-        if (update == null) {
-            handleDriverPollError(getString(R.string.error_invalid_driver_location));
+    private void handleDriverPollSuccess(DriverUpdate update) {
+        if (bookingState != BookingState.TRACKING) {
             return;
         }
 
-        bookingData.setDriverLat(update.driverLat);
-        bookingData.setDriverLng(update.driverLng);
-        bookingData.setDriverName(update.driverName);
-        bookingData.setDriverVehicle(update.vehicle);
-        bookingData.setEta(update.eta);
-        bookingData.setStatus(update.status);
+        BookingData current = bookingStore.get();
+        double lat;
+        double lng;
+        if (driverFixes.process(current.getTrackingId(), update.driverLat, update.driverLng,
+            SystemClock.elapsedRealtime(), driverFix)) {
+            lat = driverFix[0];
+            lng = driverFix[1];
+        } else if (current.hasDriverLocation()) {
+            lat = current.getDriverLat();
+            lng = current.getDriverLng();
+        } else {
+            lat = update.driverLat;
+            lng = update.driverLng;
+        }
 
-        mainHandler.post(() -> {
-            GeoPoint point = new GeoPoint(update.driverLat, update.driverLng);
-            updateDriverMarker(point);
-            updateTrackingUi(update);
-            autoFitMarkersIfNeeded(point);
+        bookingStore.update(data -> data.withDriver(lat, lng,
+            update.driverName, update.vehicle, update.eta, update.status));
 
-            if (update.status != null) {
-                String statusLower = update.status.toLowerCase();
-                if (statusLower.contains("arrived") || statusLower.contains("completed") || statusLower.contains("cancelled")) {
-                    stopPollingDriverLocation();
-                }
-            }
-        });
+        if (update.endsTrip()) {
+            recordTrip(update.stage == DriverUpdate.Stage.CANCELLED
+                ? TripHistoryStore.Outcome.CANCELED : TripHistoryStore.Outcome.COMPLETED, update.status);
+        }
     }
 
-    private void handleDriverPollError(String error) {
-        mainHandler.post(() -> {
-            tvPollingStatus.setTextColor(getResources().getColor(R.color.red));
-            tvPollingStatus.setText(getString(R.string.polling_error, consecutivePollErrors));
-
-            if (consecutivePollErrors == 1 || consecutivePollErrors % 3 == 0) {
-                Toast.makeText(MainActivity.this, error, Toast.LENGTH_SHORT).show();
-            }
-        });
+    /** The track itself is collected by {@link TrackingService}, which outlives this activity. */
+    private void startTripRecording(long startedAt) {
+        tripStartedAt = startedAt;
+        tripOpen = true;
     }
 
-    private static class DriverUpdate {
-        final double driverLat;
-        final double driverLng;
-        final String driverName;
-        final String vehicle;
-        final String eta;
-        final String status;
+    /** Queues the trip in progress for the history store; does nothing once it has been recorded. */
+    private void recordTrip(TripHistoryStore.Outcome outcome, String finalStatus) {
+        if (!tripOpen) {
+            return;
+        }
+        tripOpen = false;
+        Trajectory trajectory = trackingService != null ? trackingService.takeTrajectory() : null;
+        if (trajectory == null) {
+            trajectory = new Trajectory();
+        }
 
-        DriverUpdate(double driverLat, double driverLng, String driverName, String vehicle, String eta, String status) {
-            this.driverLat = driverLat;
-            this.driverLng = driverLng;
-            this.driverName = driverName;
-            this.vehicle = vehicle;
-            this.eta = eta;
-            this.status = status;
+        BookingData snapshot = bookingStore.get();
+        TripHistoryStore.Trip trip = new TripHistoryStore.Trip();
+        trip.bookingId = snapshot.getBookingId();
+        trip.requestId = snapshot.getRequestId();
+        trip.startedAt = tripStartedAt;
+        trip.endedAt = System.currentTimeMillis();
+        trip.outcome = outcome;
+        trip.finalStatus = finalStatus;
+        trip.price = snapshot.getPrice();
+        trip.vehicleClass = tripVehicleClass;
+        if (startLocation != null) {
+            trip.startLat = startLocation.getLatitude();
+            trip.startLng = startLocation.getLongitude();
+        }
+        if (destinationLocation != null) {
+            trip.destLat = destinationLocation.getLatitude();
+            trip.destLng = destinationLocation.getLongitude();
         }
+        trip.driverName = snapshot.getDriverName();
+        trip.vehicle = snapshot.getDriverVehicle();
+        trip.trackMeters = trajectory.getLengthMeters();
+        trip.pointCount = trajectory.getPointCount();
+        trip.trajectory = trajectory.toBytes();
+        tripHistory.record(trip);
     }
 
-    private DriverUpdate parseDriverUpdate(String response) {
-        try {
-            JSONObject json = new JSONObject(response);
-
-            double lat = getFirstDouble(json, "driverLat", "lat", "latitude");
-            double lng = getFirstDouble(json, "driverLng", "lng", "lon", "longitude");
-            if (Double.isNaN(lat) || Double.isNaN(lng)) {
-                return null;
-            }
+    private void handleGeofenceTransition(GeofenceEngine.Phase phase) {
+        if (bookingState != BookingState.TRACKING) {
+            return;
+        }
 
-            String name = getFirstString(json, "driverName", "name", "driverId");
-            String vehicle = getFirstString(json, "vehicle", "car", "vehicleInfo");
-            String eta = getFirstString(json, "eta", "etaMinutes", "etaMins", "etaText");
-            String status = getFirstString(json, "status", "message", "state");
+        int message;
+        switch (phase) {
+            case NEAR_PICKUP:
+                message = R.string.geofence_near_pickup;
+                break;
+            case AT_PICKUP:
+                message = R.string.notification_driver_arrived_title;
+                break;
+            case NEAR_DESTINATION:
+                message = R.string.geofence_near_destination;
+                break;
+            case AT_DESTINATION:
+                message = R.string.geofence_at_destination;
+                break;
+            default:
+                geofenceStatus = null;
+                return;
+        }
+        geofenceStatus = getString(message);
+        tvLiveStatus.setText(geofenceStatus);
+        if (phase == GeofenceEngine.Phase.AT_PICKUP || phase == GeofenceEngine.Phase.AT_DESTINATION) {
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        }
+    }
 
-            return new DriverUpdate(lat, lng, name, vehicle, eta, status);
+    private void handleDriverPollError(String error, int consecutiveErrors) {
+        tvPollingStatus.setTextColor(getResources().getColor(R.color.red));
+        tvPollingStatus.setText(getString(R.string.polling_error, consecutiveErrors));
 
-        } catch (Exception e) {
-            return null;
+        if (consecutiveErrors == 1 || consecutiveErrors % 3 == 0) {
+            Toast.makeText(MainActivity.this, error, Toast.LENGTH_SHORT).show();
         }
     }
 
-    private void updateDriverMarker(GeoPoint point) {
+    private void updateDriverMarker(double lat, double lng) {
+        if (mapView == null) {
+            return;
+        }
+
+        driverPoint.setCoords(lat, lng);
         if (driverMarker == null) {
-            driverMarker = createDriverMarker(point);
+            driverMarker = createDriverMarker(driverPoint);
             mapView.getOverlays().add(driverMarker);
         } else {
-            driverMarker.setPosition(point);
+            GeoPoint previous = driverMarker.getPosition();
+            double prevLat = previous.getLatitude();
+            double prevLng = previous.getLongitude();
+            if (!liteMode.isEnabled()
+                && GeoMath.equirectangularMeters(prevLat, prevLng, lat, lng) >= MIN_HEADING_DISTANCE_M) {
+                float bearing = (float) GeoMath.bearingDegrees(prevLat, prevLng, lat, lng);
+                if (MarkerIconCache.bucketFor(bearing) != MarkerIconCache.bucketFor(driverBearing)) {
+                    driverMarker.setIcon(markerIcons.getHeadingIcon(Color.BLUE, bearing));
+                }
+                driverBearing = bearing;
+            }
+            driverMarker.setPosition(driverPoint);
         }
 
         mapView.invalidate();
     }
 
-    private void updateTrackingUi(DriverUpdate update) {
-        if (update == null) {
-            tvDriverName.setText(getString(R.string.not_available));
-            tvVehicle.setText(getString(R.string.not_available));
-            tvDistance.setText(getString(R.string.not_available));
-            tvEta.setText(getString(R.string.not_available));
-            tvLiveStatus.setText(getString(R.string.status_searching_driver));
-            return;
+    private final BookingStore.Listener trackingRenderer = this::renderTracking;
+
+    private void renderTracking(BookingData snapshot, int changed) {
+        if ((changed & BookingData.FIELD_DRIVER_NAME) != 0) {
+            tvDriverName.setText(textOrNotAvailable(snapshot.getDriverName()));
         }
 
-        if (update.driverName != null && !update.driverName.trim().isEmpty()) {
-            tvDriverName.setText(update.driverName);
-        } else {
-            tvDriverName.setText(getString(R.string.not_available));
+        if ((changed & BookingData.FIELD_DRIVER_VEHICLE) != 0) {
+            tvVehicle.setText(textOrNotAvailable(snapshot.getDriverVehicle()));
         }
 
-        if (update.vehicle != null && !update.vehicle.trim().isEmpty()) {
-            tvVehicle.setText(update.vehicle);
-        } else {
-            tvVehicle.setText(getString(R.string.not_available));
+        if ((changed & BookingData.FIELD_ETA) != 0) {
+            tvEta.setText(textOrNotAvailable(snapshot.getEta()));
+        }
+
+        if ((changed & (BookingData.FIELD_STATUS | BookingData.FIELD_DRIVER_POSITION)) != 0) {
+            String status = snapshot.getStatus();
+            DriverUpdate.Stage stage = DriverUpdate.stageOf(status);
+            if (geofenceStatus != null && stage != DriverUpdate.Stage.ARRIVED
+                && stage != DriverUpdate.Stage.COMPLETED && stage != DriverUpdate.Stage.CANCELLED) {
+                tvLiveStatus.setText(geofenceStatus);
+            } else if (status != null && !status.trim().isEmpty()) {
+                tvLiveStatus.setText(status);
+            } else if (snapshot.hasDriverLocation()) {
+                tvLiveStatus.setText(getString(R.string.status_tracking));
+            } else {
+                tvLiveStatus.setText(getString(R.string.status_searching_driver));
+            }
         }
 
-        tvEta.setText((update.eta != null && !update.eta.trim().isEmpty()) ? update.eta : getString(R.string.not_available));
-        tvLiveStatus.setText((update.status != null && !update.status.trim().isEmpty()) ? update.status : getString(R.string.status_tracking));
+        if ((changed & BookingData.FIELD_DRIVER_POSITION) != 0) {
+            if (snapshot.hasDriverLocation()) {
+                double lat = snapshot.getDriverLat();
+                double lng = snapshot.getDriverLng();
+                tvDistance.setText(getDistanceToStartText(lat, lng));
+                updateDriverMarker(lat, lng);
+                autoFitMarkersIfNeeded(lat, lng);
+            } else {
+                tvDistance.setText(getString(R.string.not_available));
+            }
+        }
+    }
 
-        String distanceText = getDistanceToStartText(update.driverLat, update.driverLng);
-        tvDistance.setText(distanceText);
+    private String textOrNotAvailable(String value) {
+        return (value != null && !value.trim().isEmpty()) ? value : getString(R.string.not_available);
     }
 
     private String getDistanceToStartText(double driverLat, double driverLng) {
@@ -810,105 +1570,151 @@ public class MainActivity extends AppCompatActivity {
             return getString(R.string.not_available);
         }
 
-        float[] results = new float[1];
-        Location.distanceBetween(
+        double meters = GeoMath.haversineMeters(
             startLocation.getLatitude(),
             startLocation.getLongitude(),
             driverLat,
-            driverLng,
-            results
+            driverLng
         );
 
-        float meters = results[0];
-        if (meters < 1000) {
-            return getString(R.string.distance_m_format, meters);
-        }
-
-        return getString(R.string.distance_km_format, meters / 1000f);
+        return Formatters.distance(this, (float) meters);
     }
 
-    private void autoFitMarkersIfNeeded(GeoPoint driverPoint) {
-        if (startLocation == null || destinationLocation == null) {
+    private void autoFitMarkersIfNeeded(double driverLat, double driverLng) {
+        if (viewportController == null || startLocation == null || destinationLocation == null) {
             return;
         }
 
-        try {
-            BoundingBox current = mapView.getBoundingBox();
-            if (current != null && current.contains(driverPoint.getLatitude(), driverPoint.getLongitude())) {
-                return;
-            }
+        viewportController.setAnchors(startLocation, destinationLocation);
+        viewportController.onDriverPosition(driverLat, driverLng);
+    }
 
-            BoundingBox box = buildBoundingBox(startLocation, destinationLocation, driverPoint);
-            if (box != null) {
-                mapView.zoomToBoundingBox(box, true);
-            }
-        } catch (Exception ignored) {
-        }
+    private String getTrackingId() {
+        return bookingStore.get().getTrackingId();
     }
 
-    private BoundingBox buildBoundingBox(GeoPoint... points) {
-        double minLat = Double.MAX_VALUE;
-        double minLng = Double.MAX_VALUE;
-        double maxLat = -Double.MAX_VALUE;
-        double maxLng = -Double.MAX_VALUE;
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_TRIP_HISTORY, Menu.NONE, R.string.trip_history_title);
+        menu.add(Menu.NONE, MENU_TILE_MODE, Menu.NONE, R.string.tile_mode_title);
+        menu.add(Menu.NONE, MENU_SHARE_DIAGNOSTICS, Menu.NONE, R.string.share_diagnostics);
+        return true;
+    }
 
-        for (GeoPoint p : points) {
-            if (p == null) {
-                continue;
-            }
-            minLat = Math.min(minLat, p.getLatitude());
-            minLng = Math.min(minLng, p.getLongitude());
-            maxLat = Math.max(maxLat, p.getLatitude());
-            maxLng = Math.max(maxLng, p.getLongitude());
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == MENU_TRIP_HISTORY) {
+            startActivity(new Intent(this, TripHistoryActivity.class));
+            return true;
         }
+        if (item.getItemId() == MENU_TILE_MODE) {
+            showTileModeDialog();
+            return true;
+        }
+        if (item.getItemId() == MENU_SHARE_DIAGNOSTICS) {
+            shareDiagnostics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
 
-        if (minLat == Double.MAX_VALUE) {
-            return null;
+    private void showTileModeDialog() {
+        TileModes.Mode[] modes = TileModes.Mode.values();
+        String[] labels = {
+            getString(R.string.tile_mode_online), getString(R.string.tile_mode_offline), getString(R.string.tile_mode_hybrid)
+        };
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.tile_mode_title)
+            .setSingleChoiceItems(labels, tileMode.ordinal(), (dialog, which) -> {
+                dialog.dismiss();
+                selectTileMode(modes[which]);
+            })
+            .show();
+    }
+
+    /** Switches the map's tiles at runtime, opening the archive first when the mode needs it. */
+    private void selectTileMode(TileModes.Mode mode) {
+        if (mode == TileModes.Mode.ONLINE || tileArchive != null) {
+            applyTileMode(mode);
+            return;
         }
 
-        return new BoundingBox(maxLat, maxLng, minLat, minLng);
+        Context ctx = getApplicationContext();
+        new Thread(() -> {
+            MbTilesArchive archive = openTileArchive(ctx);
+            runOnUiThread(() -> {
+                if (archive == null) {
+                    Toast.makeText(this, getString(R.string.tile_archive_missing, TileModes.archiveFile(ctx).getPath()),
+                        Toast.LENGTH_LONG).show();
+                    return;
+                }
+                if (isDestroyed()) {
+                    archive.release();
+                    return;
+                }
+                if (tileArchive != null) {
+                    tileArchive.release();
+                }
+                tileArchive = archive;
+                applyTileMode(mode);
+            });
+        }, "tile-archive").start();
     }
 
-    private String getTrackingId() {
-        if (bookingData.getBookingId() != null && !bookingData.getBookingId().trim().isEmpty()) {
-            return bookingData.getBookingId();
+    private void applyTileMode(TileModes.Mode mode) {
+        tileMode = mode;
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+            .putString(PREF_TILE_MODE, mode.name())
+            .apply();
+        if (mapView != null) {
+            mapView.setTileProvider(createTileProvider());
+            applyTileZoomLimits();
+            applyLiteMode();
+            mapView.invalidate();
+        }
+    }
+
+    /** Runs off the main thread; returns null when there is no usable archive. */
+    private static MbTilesArchive openTileArchive(Context ctx) {
+        try {
+            return MbTilesArchive.open(TileModes.archiveFile(ctx));
+        } catch (IOException e) {
+            Log.w(TAG, "Offline tiles unavailable", e);
+            return null;
         }
-        return bookingData.getRequestId();
     }
 
-    private String formatPrice(double price) {
-        return String.format("$%.2f", price);
+    /** Without an archive every mode falls back to online tiles. */
+    private MapTileProviderBase createTileProvider() {
+        return TileModes.createProvider(this, tileArchive != null ? tileMode : TileModes.Mode.ONLINE, tileArchive);
     }
 
-    private static String getFirstString(JSONObject json, String... keys) {
-        for (String key : keys) {
-            if (json.has(key) && !json.isNull(key)) {
-                String value = json.optString(key, null);
-                if (value != null && !value.trim().isEmpty() && !"null".equalsIgnoreCase(value.trim())) {
-                    return value;
-                }
-            }
+    /** Offline, the map cannot zoom past what the archive holds. */
+    private void applyTileZoomLimits() {
+        if (tileArchive != null && tileMode == TileModes.Mode.OFFLINE) {
+            mapView.setMinZoomLevel((double) tileArchive.getMinZoom());
+            mapView.setMaxZoomLevel((double) tileArchive.getMaxZoom());
+        } else {
+            mapView.setMinZoomLevel(null);
+            mapView.setMaxZoomLevel(null);
         }
-        return null;
     }
 
-    private static double getFirstDouble(JSONObject json, String... keys) {
-        for (String key : keys) {
-            if (json.has(key) && !json.isNull(key)) {
-                try {
-                    return json.getDouble(key);
-                } catch (Exception ignored) {
-                }
-                try {
-                    String value = json.optString(key, null);
-                    if (value != null) {
-                        return Double.parseDouble(value);
-                    }
-                } catch (Exception ignored) {
-                }
+    private void shareDiagnostics() {
+        DiagLog.export(DIAGNOSTICS_WINDOW_MS, text -> {
+            if (isFinishing()) {
+                return;
             }
-        }
-        return Double.NaN;
+            if (text.isEmpty()) {
+                Toast.makeText(this, R.string.diagnostics_empty, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Intent send = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, getString(R.string.diagnostics_subject))
+                .putExtra(Intent.EXTRA_TEXT, text);
+            startActivity(Intent.createChooser(send, getString(R.string.share_diagnostics)));
+        });
     }
 
     @Override
@@ -917,26 +1723,46 @@ public class MainActivity extends AppCompatActivity {
         if (mapView != null) {
             mapView.onResume();
         }
-
-        if (bookingState == BookingState.TRACKING) {
-            startPollingDriverLocation(false);
+        if (LocationProvider.hasPermission(this)) {
+            startLocationUpdates();
         }
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        tripHistory.flush();
+        locationProvider.stop();
         if (mapView != null) {
             mapView.onPause();
         }
-
-        stopPollingDriverLocation();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        stopPollingDriverLocation();
+        unbindService(trackingConnection);
+        liteMode.removeListener(liteModeListener);
+        mainHandler.removeCallbacks(prewarmEndpoint);
+        if (quoteCall != null) {
+            quoteCall.cancel();
+        }
+        routeExecutor.shutdownNow();
+        if (viewportController != null) {
+            viewportController.reset();
+        }
+        if (replayController != null) {
+            replayController.stop();
+        }
+        if (isFinishing()) {
+            ReplayController.stopRecording();
+        }
+        if (mockServer != null) {
+            mockServer.close();
+        }
+        if (tileArchive != null) {
+            tileArchive.release();
+        }
     }
 
     @Override
@@ -944,13 +1770,18 @@ public class MainActivity extends AppCompatActivity {
         super.onSaveInstanceState(outState);
 
         outState.putString("bookingState", bookingState.name());
-        outState.putString("requestId", bookingData.getRequestId());
-        outState.putString("bookingId", bookingData.getBookingId());
+        BookingData snapshot = bookingStore.get();
+        outState.putString("requestId", snapshot.getRequestId());
+        outState.putString("bookingId", snapshot.getBookingId());
         outState.putString("apiUrl", etApiEndpoint.getText().toString());
+        outState.putLong("tripStartedAt", tripStartedAt);
+        outState.putBoolean("tripOpen", tripOpen);
+        outState.putString("vehicleClass", tripVehicleClass);
 
         if (startLocation != null) {
             outState.putDouble("startLat", startLocation.getLatitude());
             outState.putDouble("startLng", startLocation.getLongitude());
+            outState.putBoolean("startFromDevice", startFromDevice);
         }
 
         if (destinationLocation != null) {
@@ -958,14 +1789,14 @@ public class MainActivity extends AppCompatActivity {
             outState.putDouble("destLng", destinationLocation.getLongitude());
         }
 
-        if (driverMarker != null) {
-            GeoPoint p = driverMarker.getPosition();
-            outState.putDouble("driverLat", p.getLatitude());
-            outState.putDouble("driverLng", p.getLongitude());
+        if (snapshot.hasDriverLocation()) {
+            outState.putDouble("driverLat", snapshot.getDriverLat());
+            outState.putDouble("driverLng", snapshot.getDriverLng());
         }
     }
 
     private void restoreState(Bundle state) {
+        pickupSelectedLogged = true;
         try {
             String bookingStateStr = state.getString("bookingState", BookingState.LOCATION_SELECTION.name());
             bookingState = BookingState.valueOf(bookingStateStr);
@@ -973,17 +1804,23 @@ public class MainActivity extends AppCompatActivity {
             bookingState = BookingState.LOCATION_SELECTION;
         }
 
-        bookingData.setRequestId(state.getString("requestId", null));
-        bookingData.setBookingId(state.getString("bookingId", null));
+        String requestId = state.getString("requestId", null);
+        String bookingId = state.getString("bookingId", null);
+        bookingStore.update(data -> data.withRequestId(requestId).withBookingId(bookingId));
+        tripVehicleClass = state.getString("vehicleClass", null);
+        tripStartedAt = state.getLong("tripStartedAt", System.currentTimeMillis());
+        tripOpen = bookingState == BookingState.TRACKING && state.getBoolean("tripOpen", true);
 
         String apiUrl = state.getString("apiUrl", null);
         if (apiUrl != null) {
             etApiEndpoint.setText(apiUrl);
+            ConnectionWarmer.getInstance().prewarm(apiUrl.trim());
         }
 
         if (state.containsKey("startLat") && state.containsKey("startLng")) {
             startLocation = new GeoPoint(state.getDouble("startLat"), state.getDouble("startLng"));
             setStartLocation(startLocation);
+            startFromDevice = state.getBoolean("startFromDevice", false);
         }
 
         if (state.containsKey("destLat") && state.containsKey("destLng")) {
@@ -992,8 +1829,10 @@ public class MainActivity extends AppCompatActivity {
         }
 
         if (state.containsKey("driverLat") && state.containsKey("driverLng")) {
-            GeoPoint driver = new GeoPoint(state.getDouble("driverLat"), state.getDouble("driverLng"));
-            updateDriverMarker(driver);
+            double driverLat = state.getDouble("driverLat");
+            double driverLng = state.getDouble("driverLng");
+            bookingStore.update(data -> data.withDriver(driverLat, driverLng, data.getDriverName(),
+                data.getDriverVehicle(), data.getEta(), data.getStatus()));
         }
     }
 }
@@ -0,0 +1,115 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Pre-rendered marker bitmaps shared by every marker on the map.
+ *
+ * <p>Each tint is rendered once from the source drawable into its own bitmap. Heading icons
+ * are rendered for all {@link #BEARING_BUCKETS} rotations of a tint in one pass, so moving
+ * the driver only swaps references. Returned drawables are shared and must not be
+ * mutated by callers.</p>
+ */
+public final class MarkerIconCache {
+
+    public static final int BEARING_BUCKETS = 16;
+
+    private static final float BUCKET_DEGREES = 360f / BEARING_BUCKETS;
+
+    private static MarkerIconCache instance;
+
+    private final Context context;
+    private final SparseArray<Drawable> markers = new SparseArray<>();
+    private final SparseArray<Drawable[]> headings = new SparseArray<>();
+
+    private MarkerIconCache(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized MarkerIconCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new MarkerIconCache(context);
+        }
+        return instance;
+    }
+
+    public static int bucketFor(float bearingDegrees) {
+        float normalized = bearingDegrees % 360f;
+        if (normalized < 0) {
+            normalized += 360f;
+        }
+        return Math.round(normalized / BUCKET_DEGREES) % BEARING_BUCKETS;
+    }
+
+    public Drawable getMarker(int color) {
+        Drawable marker = markers.get(color);
+        if (marker == null) {
+            marker = render(org.osmdroid.library.R.drawable.marker_default, color, 0f, false);
+            markers.put(color, marker);
+        }
+        return marker;
+    }
+
+    public Drawable getHeadingIcon(int color, float bearingDegrees) {
+        Drawable[] rotations = headings.get(color);
+        if (rotations == null) {
+            rotations = new Drawable[BEARING_BUCKETS];
+            for (int bucket = 0; bucket < BEARING_BUCKETS; bucket++) {
+                rotations[bucket] = render(R.drawable.ic_driver_heading, color, bucket * BUCKET_DEGREES, true);
+            }
+            headings.put(color, rotations);
+        }
+        return rotations[bucketFor(bearingDegrees)];
+    }
+
+    public void releaseHeadingIcons() {
+        headings.clear();
+    }
+
+    public void clear() {
+        markers.clear();
+        headings.clear();
+    }
+
+    private Drawable render(int drawableRes, int color, float rotation, boolean square) {
+        Drawable source = ContextCompat.getDrawable(context, drawableRes);
+        if (source == null) {
+            return null;
+        }
+
+        Drawable tinted = source.mutate();
+        tinted.setTint(color);
+
+        int width = Math.max(1, tinted.getIntrinsicWidth());
+        int height = Math.max(1, tinted.getIntrinsicHeight());
+        int cellWidth = width;
+        int cellHeight = height;
+        if (square) {
+            int side = (int) Math.ceil(Math.sqrt((double) width * width + (double) height * height));
+            cellWidth = side;
+            cellHeight = side;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(cellWidth, cellHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        if (rotation != 0f) {
+            canvas.rotate(rotation, cellWidth / 2f, cellHeight / 2f);
+        }
+
+        int left = (cellWidth - width) / 2;
+        int top = (cellHeight - height) / 2;
+        tinted.setBounds(left, top, left + width, top + height);
+        tinted.draw(canvas);
+
+        Resources resources = context.getResources();
+        return new BitmapDrawable(resources, bitmap);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.maplocator;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import org.osmdroid.tileprovider.modules.IArchiveFile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Raster tiles from a local MBTiles file, served to the map through osmdroid's archive provider.
+ * The database is opened read-only with {@code PRAGMA mmap_size} covering the whole file, so
+ * tile blobs are read from mapped pages instead of being copied through read calls. Rows follow
+ * the MBTiles TMS convention and are flipped here. Decoded tiles are kept by osmdroid's own
+ * in-memory tile cache, which {@link LiteMode} sizes.
+ *
+ * <p>Providers are rebuilt whenever the tile mode changes but share one archive, so the
+ * {@link #close()} they call on detach is ignored; {@link #release()} closes the database.
+ * Safe to call from osmdroid's tile threads.</p>
+ */
+final class MbTilesArchive implements IArchiveFile {
+
+    static final String FILE_NAME = "service-area.mbtiles";
+
+    private static final String TAG = "MbTilesArchive";
+    private static final long MAX_MMAP_BYTES = 512L * 1024 * 1024;
+    private static final String TILE_QUERY =
+        "SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?";
+
+    private volatile SQLiteDatabase db;
+    private String name = FILE_NAME;
+    private int minZoom = -1;
+    private int maxZoom = -1;
+
+    /** Opens {@code file}; fails for missing files, corrupt databases and vector tile sets. */
+    static MbTilesArchive open(File file) throws IOException {
+        MbTilesArchive archive = new MbTilesArchive();
+        try {
+            archive.init(file);
+        } catch (IOException e) {
+            archive.release();
+            throw e;
+        }
+        return archive;
+    }
+
+    @Override
+    public void init(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("No tile archive at " + file);
+        }
+        try {
+            db = SQLiteDatabase.openDatabase(file.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            try (Cursor cursor = db.rawQuery("PRAGMA mmap_size = " + Math.min(file.length(), MAX_MMAP_BYTES), null)) {
+                cursor.moveToFirst();
+            }
+            readMetadata();
+        } catch (SQLiteException e) {
+            throw new IOException("Cannot open " + file, e);
+        }
+    }
+
+    private void readMetadata() throws IOException {
+        try (Cursor cursor = db.rawQuery("SELECT name, value FROM metadata", null)) {
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(0);
+                String value = cursor.getString(1);
+                if ("format".equals(key) && "pbf".equals(value)) {
+                    throw new IOException("Vector tiles cannot be drawn by the raster map");
+                } else if ("name".equals(key) && value != null) {
+                    name = value;
+                } else if ("minzoom".equals(key)) {
+                    minZoom = parseZoom(value);
+                } else if ("maxzoom".equals(key)) {
+                    maxZoom = parseZoom(value);
+                }
+            }
+        }
+        if (minZoom < 0 || maxZoom < 0) {
+            try (Cursor cursor = db.rawQuery("SELECT MIN(zoom_level), MAX(zoom_level) FROM tiles", null)) {
+                if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                    throw new IOException("Tile archive is empty");
+                }
+                minZoom = cursor.getInt(0);
+                maxZoom = cursor.getInt(1);
+            }
+        }
+    }
+
+    private static int parseZoom(String value) {
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getMinZoom() {
+        return minZoom;
+    }
+
+    int getMaxZoom() {
+        return maxZoom;
+    }
+
+    @Override
+    public InputStream getInputStream(ITileSource tileSource, long mapTileIndex) {
+        SQLiteDatabase current = db;
+        if (current == null) {
+            return null;
+        }
+
+        int zoom = MapTileIndex.getZoom(mapTileIndex);
+        int row = (1 << zoom) - 1 - MapTileIndex.getY(mapTileIndex);
+        try (Cursor cursor = current.rawQuery(TILE_QUERY, new String[] {
+            String.valueOf(zoom), String.valueOf(MapTileIndex.getX(mapTileIndex)), String.valueOf(row)})) {
+            return cursor.moveToFirst() ? new ByteArrayInputStream(cursor.getBlob(0)) : null;
+        } catch (SQLiteException | IllegalStateException e) {
+            Log.w(TAG, "Could not read tile " + zoom + "/" + MapTileIndex.getX(mapTileIndex) + "/" + row, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Set<String> getTileSources() {
+        return Collections.singleton(name);
+    }
+
+    /** Tiles are served for every source; the archive only ever backs the one map. */
+    @Override
+    public void setIgnoreTileSource(boolean ignore) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    void release() {
+        SQLiteDatabase current = db;
+        db = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.example.maplocator;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scriptable stand-in for the booking API, served by {@link LocalHttpServer}. It answers the
+ * four {@link NetworkHelper} calls (quote, confirmation, driver poll, cancel), which all hit the
+ * same URL and are told apart by their body keys. Drivers approach the pickup along an
+ * L-shaped street route at a fixed speed, in time scaled by {@link Scenario#timeScale}.
+ *
+ * <p>Has no Android or org.json dependencies, so it also runs on a plain JVM through the
+ * {@code MockBookingServerMain} launcher in {@code tools/}.</p>
+ */
+public class MockBookingServer implements LocalHttpServer.Handler {
+
+    public enum AliasStyle {
+        PRIMARY,
+        ALTERNATE,
+        ROTATE
+    }
+
+    public static final class Scenario {
+        long minLatencyMs;
+        long maxLatencyMs;
+        double errorRate;
+        double dropRate;
+        AliasStyle aliasStyle = AliasStyle.PRIMARY;
+        double driverSpeedMps = 10.0;
+        double approachDistanceM = 1500.0;
+        double timeScale = 1.0;
+        boolean rideToDestination;
+
+        public Scenario latency(long minMs, long maxMs) {
+            minLatencyMs = Math.max(0, minMs);
+            maxLatencyMs = Math.max(minLatencyMs, maxMs);
+            return this;
+        }
+
+        public Scenario errorRate(double rate) {
+            errorRate = rate;
+            return this;
+        }
+
+        public Scenario dropRate(double rate) {
+            dropRate = rate;
+            return this;
+        }
+
+        public Scenario aliases(AliasStyle style) {
+            aliasStyle = style;
+            return this;
+        }
+
+        public Scenario driverSpeed(double metersPerSecond) {
+            driverSpeedMps = metersPerSecond;
+            return this;
+        }
+
+        public Scenario approachDistance(double meters) {
+            approachDistanceM = meters;
+            return this;
+        }
+
+        public Scenario timeScale(double scale) {
+            timeScale = scale > 0 ? scale : 1.0;
+            return this;
+        }
+
+        public Scenario rideToDestination(boolean ride) {
+            rideToDestination = ride;
+            return this;
+        }
+    }
+
+    private static final String[] PRICE_KEYS = {"price", "taxiPrice", "amount", "fare"};
+    private static final String[] REQUEST_ID_KEYS = {"requestId", "bookingId", "id"};
+    private static final String[] BOOKING_ID_KEYS = {"bookingId", "requestId", "id"};
+    private static final String[] LAT_KEYS = {"driverLat", "lat", "latitude"};
+    private static final String[] LNG_KEYS = {"driverLng", "lng", "lon", "longitude"};
+    private static final String[] NAME_KEYS = {"driverName", "name", "driverId"};
+    private static final String[] VEHICLE_KEYS = {"vehicle", "car", "vehicleInfo"};
+    private static final String[] ETA_KEYS = {"eta", "etaMinutes", "etaMins", "etaText"};
+    private static final String[] STATUS_KEYS = {"status", "message", "state"};
+
+    private static final String[] DRIVER_NAMES = {"Alex", "Sam", "Jordan", "Robin", "Kim", "Taylor"};
+    private static final String[] VEHICLES = {"Toyota Prius", "Skoda Octavia", "Hyundai Ioniq", "Kia Niro"};
+
+    private static final int MAX_TRIPS = 10000;
+    private static final double BASE_FARE = 3.5;
+    private static final double FARE_PER_KM = 1.2;
+    private static final String[] VEHICLE_CLASSES = {"economy", "comfort", "xl", "premium"};
+    private static final double[] CLASS_FARE_FACTORS = {1.0, 1.3, 1.6, 2.1};
+
+    private static final class Trip {
+        final String requestId;
+        final double startLat;
+        final double startLng;
+        final double destLat;
+        final double destLng;
+        final double price;
+        final String driverName;
+        final String vehicle;
+        final double[] route;
+        final double[] legEnds;
+
+        volatile long confirmedAtMs;
+        volatile boolean cancelled;
+
+        Trip(String requestId, double startLat, double startLng, double destLat, double destLng,
+             double price, int seed, double approachDistanceM, boolean rideToDestination) {
+            this.requestId = requestId;
+            this.startLat = startLat;
+            this.startLng = startLng;
+            this.destLat = destLat;
+            this.destLng = destLng;
+            this.price = price;
+            this.driverName = DRIVER_NAMES[Math.floorMod(seed, DRIVER_NAMES.length)];
+            this.vehicle = VEHICLES[Math.floorMod(seed >> 4, VEHICLES.length)];
+
+            double angle = Math.floorMod(seed, 360) * Math.PI / 180.0;
+            double dLat = Math.toDegrees(approachDistanceM * Math.cos(angle) / GeoMath.EARTH_RADIUS_M);
+            double dLng = Math.toDegrees(approachDistanceM * Math.sin(angle)
+                / (GeoMath.EARTH_RADIUS_M * Math.cos(Math.toRadians(startLat))));
+            double driverLat = startLat + dLat;
+            double driverLng = startLng + dLng;
+
+            if (rideToDestination) {
+                route = new double[] {driverLat, driverLng, driverLat, startLng, startLat, startLng,
+                    startLat, destLng, destLat, destLng};
+            } else {
+                route = new double[] {driverLat, driverLng, driverLat, startLng, startLat, startLng};
+            }
+
+            legEnds = new double[route.length / 2];
+            for (int i = 1; i < legEnds.length; i++) {
+                legEnds[i] = legEnds[i - 1] + GeoMath.haversineMeters(
+                    route[2 * i - 2], route[2 * i - 1], route[2 * i], route[2 * i + 1]);
+            }
+        }
+
+        double pickupDistance() {
+            return legEnds[2];
+        }
+
+        double totalDistance() {
+            return legEnds[legEnds.length - 1];
+        }
+
+        void positionAt(double travelled, double[] out) {
+            for (int i = 1; i < legEnds.length; i++) {
+                if (travelled <= legEnds[i]) {
+                    double legLength = legEnds[i] - legEnds[i - 1];
+                    double f = legLength > 0 ? (travelled - legEnds[i - 1]) / legLength : 1.0;
+                    out[0] = route[2 * i - 2] + (route[2 * i] - route[2 * i - 2]) * f;
+                    out[1] = route[2 * i - 1] + (route[2 * i + 1] - route[2 * i - 1]) * f;
+                    return;
+                }
+            }
+            out[0] = route[route.length - 2];
+            out[1] = route[route.length - 1];
+        }
+    }
+
+    private final Scenario scenario;
+    private final Map<String, Trip> trips = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1000);
+
+    private final AtomicLong quotes = new AtomicLong();
+    private final AtomicLong confirmations = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong cancellations = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    private LocalHttpServer server;
+
+    public MockBookingServer(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    public synchronized String start(int port) throws IOException {
+        if (server == null) {
+            server = new LocalHttpServer(this);
+            server.start(port);
+        }
+        return server.getBaseUrl();
+    }
+
+    public synchronized void close() {
+        if (server != null) {
+            server.close();
+            server = null;
+        }
+    }
+
+    public String getStats() {
+        return String.format(Locale.US, "quotes=%d confirmations=%d polls=%d cancellations=%d injectedFailures=%d",
+            quotes.get(), confirmations.get(), polls.get(), cancellations.get(), injectedFailures.get());
+    }
+
+    @Override
+    public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+        long delayMs = scenario.maxLatencyMs > scenario.minLatencyMs
+            ? ThreadLocalRandom.current().nextLong(scenario.minLatencyMs, scenario.maxLatencyMs + 1)
+            : scenario.minLatencyMs;
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < scenario.dropRate) {
+            injectedFailures.incrementAndGet();
+            return LocalHttpServer.Response.drop(delayMs);
+        }
+        if (roll < scenario.dropRate + scenario.errorRate) {
+            injectedFailures.incrementAndGet();
+            return LocalHttpServer.Response.json(503, "{\"error\":\"injected failure\"}").delayed(delayMs);
+        }
+
+        Map<String, String> body = parseFlatObject(request.body);
+        if (body == null) {
+            return LocalHttpServer.Response.json(400, "{\"error\":\"malformed JSON\"}").delayed(delayMs);
+        }
+
+        LocalHttpServer.Response response;
+        if (body.containsKey("startLat")) {
+            response = quote(body);
+        } else if (body.containsKey("confirmation")) {
+            response = confirm(body);
+        } else if (body.containsKey("cancel")) {
+            response = cancel(body);
+        } else if (body.containsKey("bookingId")) {
+            response = poll(body);
+        } else {
+            response = LocalHttpServer.Response.json(400, "{\"error\":\"unknown request\"}");
+        }
+        return response.delayed(delayMs);
+    }
+
+    private LocalHttpServer.Response quote(Map<String, String> body) {
+        long n = quotes.incrementAndGet();
+        double startLat = parseDouble(body.get("startLat"));
+        double startLng = parseDouble(body.get("startLng"));
+        double destLat = parseDouble(body.get("destLat"));
+        double destLng = parseDouble(body.get("destLng"));
+        if (Double.isNaN(startLat) || Double.isNaN(startLng) || Double.isNaN(destLat) || Double.isNaN(destLng)) {
+            return LocalHttpServer.Response.json(400, "{\"error\":\"missing coordinates\"}");
+        }
+
+        String requestId = "req-" + nextId.incrementAndGet();
+        double km = GeoMath.haversineMeters(startLat, startLng, destLat, destLng) / 1000.0;
+        double price = Math.round((BASE_FARE + km * FARE_PER_KM) * fareFactor(body.get("vehicleClass")) * 100.0) / 100.0;
+
+        evictIfFull();
+        trips.put(requestId, new Trip(requestId, startLat, startLng, destLat, destLng, price,
+            requestId.hashCode(), scenario.approachDistanceM, scenario.rideToDestination));
+
+        int variant = variant(n);
+        StringBuilder json = new StringBuilder(96).append('{');
+        appendNumber(json, alias(PRICE_KEYS, variant), price);
+        appendString(json, alias(REQUEST_ID_KEYS, variant), requestId);
+        return LocalHttpServer.Response.json(200, json.append('}').toString());
+    }
+
+    private static double fareFactor(String vehicleClass) {
+        for (int i = 0; i < VEHICLE_CLASSES.length; i++) {
+            if (VEHICLE_CLASSES[i].equalsIgnoreCase(vehicleClass)) {
+                return CLASS_FARE_FACTORS[i];
+            }
+        }
+        return 1.0;
+    }
+
+    private LocalHttpServer.Response confirm(Map<String, String> body) {
+        long n = confirmations.incrementAndGet();
+        Trip trip = trips.get(String.valueOf(body.get("requestId")));
+        if (trip == null) {
+            return LocalHttpServer.Response.json(404, "{\"error\":\"unknown requestId\"}");
+        }
+
+        String bookingId = "bk-" + trip.requestId.substring(4);
+        trip.confirmedAtMs = System.currentTimeMillis();
+        trips.put(bookingId, trip);
+
+        StringBuilder json = new StringBuilder(64).append('{');
+        appendString(json, alias(BOOKING_ID_KEYS, variant(n)), bookingId);
+        appendString(json, "status", "confirmed");
+        return LocalHttpServer.Response.json(200, json.append('}').toString());
+    }
+
+    private LocalHttpServer.Response cancel(Map<String, String> body) {
+        cancellations.incrementAndGet();
+        Trip trip = trips.get(String.valueOf(body.get("bookingId")));
+        if (trip == null) {
+            return LocalHttpServer.Response.json(404, "{\"error\":\"unknown bookingId\"}");
+        }
+        trip.cancelled = true;
+        return LocalHttpServer.Response.json(200, "{\"status\":\"cancelled\"}");
+    }
+
+    private LocalHttpServer.Response poll(Map<String, String> body) {
+        long n = polls.incrementAndGet();
+        Trip trip = trips.get(body.get("bookingId"));
+        if (trip == null) {
+            return LocalHttpServer.Response.json(404, "{\"error\":\"unknown bookingId\"}");
+        }
+
+        long confirmedAt = trip.confirmedAtMs;
+        double elapsedS = confirmedAt == 0 ? 0
+            : (System.currentTimeMillis() - confirmedAt) / 1000.0 * scenario.timeScale;
+        double travelled = Math.min(trip.totalDistance(), elapsedS * scenario.driverSpeedMps);
+
+        double[] position = new double[2];
+        trip.positionAt(travelled, position);
+
+        String status;
+        double remaining;
+        if (trip.cancelled) {
+            status = "cancelled";
+            remaining = 0;
+        } else if (travelled < trip.pickupDistance()) {
+            status = confirmedAt == 0 ? "searching" : "en_route";
+            remaining = trip.pickupDistance() - travelled;
+        } else if (!scenario.rideToDestination) {
+            status = "arrived";
+            remaining = 0;
+        } else if (travelled < trip.totalDistance()) {
+            status = "in_progress";
+            remaining = trip.totalDistance() - travelled;
+        } else {
+            status = "completed";
+            remaining = 0;
+        }
+        int etaMinutes = (int) Math.ceil(remaining / scenario.driverSpeedMps / 60.0);
+
+        int variant = variant(n);
+        StringBuilder json = new StringBuilder(224).append('{');
+        appendNumber(json, alias(LAT_KEYS, variant), position[0]);
+        appendNumber(json, alias(LNG_KEYS, variant), position[1]);
+        appendString(json, alias(NAME_KEYS, variant), trip.driverName);
+        appendString(json, alias(VEHICLE_KEYS, variant), trip.vehicle);
+        String etaKey = alias(ETA_KEYS, variant);
+        if (etaKey.equals("etaMinutes") || etaKey.equals("etaMins")) {
+            appendNumber(json, etaKey, etaMinutes);
+        } else {
+            appendString(json, etaKey, etaMinutes + " min");
+        }
+        appendString(json, alias(STATUS_KEYS, variant), status);
+        return LocalHttpServer.Response.json(200, json.append('}').toString());
+    }
+
+    private void evictIfFull() {
+        if (trips.size() < MAX_TRIPS) {
+            return;
+        }
+        Iterator<String> keys = trips.keySet().iterator();
+        for (int i = 0; i < MAX_TRIPS / 10 && keys.hasNext(); i++) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private int variant(long requestNumber) {
+        switch (scenario.aliasStyle) {
+            case ALTERNATE:
+                return 1;
+            case ROTATE:
+                return (int) (requestNumber & Integer.MAX_VALUE);
+            default:
+                return 0;
+        }
+    }
+
+    private static String alias(String[] keys, int variant) {
+        return keys[variant % keys.length];
+    }
+
+    private static void appendString(StringBuilder json, String key, String value) {
+        if (json.length() > 1) {
+            json.append(',');
+        }
+        json.append('"').append(key).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c);
+        }
+        json.append('"');
+    }
+
+    private static void appendNumber(StringBuilder json, String key, double value) {
+        if (json.length() > 1) {
+            json.append(',');
+        }
+        json.append('"').append(key).append("\":");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            json.append((long) value);
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static double parseDouble(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parses the flat objects {@link NetworkHelper} sends. Values are returned as raw text
+     * (strings unquoted); nested objects and arrays are rejected.
+     */
+    static Map<String, String> parseFlatObject(String text) {
+        Map<String, String> fields = new HashMap<>();
+        int length = text.length();
+        int i = skipWhitespace(text, 0);
+        if (i >= length || text.charAt(i) != '{') {
+            return null;
+        }
+        i = skipWhitespace(text, i + 1);
+        if (i < length && text.charAt(i) == '}') {
+            return fields;
+        }
+
+        StringBuilder token = new StringBuilder();
+        while (i < length) {
+            if (text.charAt(i) != '"') {
+                return null;
+            }
+            i = readString(text, i + 1, token);
+            if (i < 0) {
+                return null;
+            }
+            String key = token.toString();
+
+            i = skipWhitespace(text, i);
+            if (i >= length || text.charAt(i) != ':') {
+                return null;
+            }
+            i = skipWhitespace(text, i + 1);
+            if (i >= length) {
+                return null;
+            }
+
+            if (text.charAt(i) == '"') {
+                i = readString(text, i + 1, token);
+                if (i < 0) {
+                    return null;
+                }
+                fields.put(key, token.toString());
+            } else {
+                int start = i;
+                while (i < length && ",} \t\r\n".indexOf(text.charAt(i)) < 0) {
+                    char c = text.charAt(i);
+                    if (c == '{' || c == '[') {
+                        return null;
+                    }
+                    i++;
+                }
+                fields.put(key, text.substring(start, i));
+            }
+
+            i = skipWhitespace(text, i);
+            if (i >= length) {
+                return null;
+            }
+            if (text.charAt(i) == '}') {
+                return fields;
+            }
+            if (text.charAt(i) != ',') {
+                return null;
+            }
+            i = skipWhitespace(text, i + 1);
+        }
+        return null;
+    }
+
+    private static int readString(String text, int i, StringBuilder out) {
+        out.setLength(0);
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i < text.length()) {
+                char escaped = text.charAt(i++);
+                switch (escaped) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 > text.length()) {
+                            return -1;
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                        } catch (NumberFormatException e) {
+                            return -1;
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        out.append(escaped);
+                        break;
+                }
+            } else {
+                out.append(c);
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.maplocator;
+
+/**
+ * Reusable lat/lng bounding box. Meant to be kept in a field and {@link #reset()} instead of
+ * being reallocated per update.
+ */
+public final class MutableBounds {
+
+    private double north;
+    private double south;
+    private double east;
+    private double west;
+    private boolean empty = true;
+
+    public MutableBounds reset() {
+        north = -Double.MAX_VALUE;
+        south = Double.MAX_VALUE;
+        east = -Double.MAX_VALUE;
+        west = Double.MAX_VALUE;
+        empty = true;
+        return this;
+    }
+
+    public MutableBounds set(double north, double east, double south, double west) {
+        this.north = north;
+        this.east = east;
+        this.south = south;
+        this.west = west;
+        empty = false;
+        return this;
+    }
+
+    public MutableBounds include(double lat, double lng) {
+        if (empty) {
+            return set(lat, lng, lat, lng);
+        }
+
+        north = Math.max(north, lat);
+        south = Math.min(south, lat);
+        east = Math.max(east, lng);
+        west = Math.min(west, lng);
+        return this;
+    }
+
+    public MutableBounds union(MutableBounds other) {
+        if (other.empty) {
+            return this;
+        }
+
+        include(other.north, other.east);
+        return include(other.south, other.west);
+    }
+
+    public MutableBounds expandByFraction(double fraction) {
+        if (empty) {
+            return this;
+        }
+
+        double latPad = (north - south) * fraction;
+        double lngPad = (east - west) * fraction;
+        north = Math.min(90.0, north + latPad);
+        south = Math.max(-90.0, south - latPad);
+        east += lngPad;
+        west -= lngPad;
+        return this;
+    }
+
+    public boolean contains(double lat, double lng) {
+        return !empty && lat <= north && lat >= south && lng <= east && lng >= west;
+    }
+
+    public boolean contains(MutableBounds other) {
+        return !empty && !other.empty
+            && other.north <= north && other.south >= south
+            && other.east <= east && other.west >= west;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public double getNorth() {
+        return north;
+    }
+
+    public double getSouth() {
+        return south;
+    }
+
+    public double getEast() {
+        return east;
+    }
+
+    public double getWest() {
+        return west;
+    }
+
+    public double getCenterLat() {
+        return (north + south) * 0.5;
+    }
+
+    public double getCenterLng() {
+        return (east + west) * 0.5;
+    }
+}
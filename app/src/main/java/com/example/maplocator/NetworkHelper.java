@@ -1,23 +1,19 @@
 package com.example.maplocator;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class NetworkHelper {
 
     private static final String TAG = "NetworkHelper";
-    private static final int TIMEOUT_MS = 15000;
+    static final int TIMEOUT_MS = 15000;
 
     public interface NetworkCallback {
         void onSuccess(String response);
@@ -25,186 +21,322 @@ public class NetworkHelper {
         void onError(String error);
     }
 
+    public interface ExchangeRecorder {
+        void onExchange(String method, String url, String requestBody, int responseCode,
+                        String responseBody, String error, long startedAtMs, long durationMs);
+    }
+
+    private static volatile ExchangeRecorder recorder;
+    private static volatile boolean logBodies = true;
+    private static volatile int maxResponseChars = Integer.MAX_VALUE;
+    private static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    private static volatile HttpTransport transport =
+        new ResilientTransport(new OkHttpTransport(false, new UrlConnectionTransport()));
+
     private static class NetworkResult {
         final boolean success;
         final String message;
+        final int code;
+        final String body;
 
         NetworkResult(boolean success, String message) {
+            this(success, message, -1, null);
+        }
+
+        NetworkResult(boolean success, String message, int code, String body) {
             this.success = success;
             this.message = message;
+            this.code = code;
+            this.body = body;
         }
     }
 
-    private static class JsonRequestTask extends AsyncTask<Void, Void, NetworkResult> {
+    public static void setRecorder(ExchangeRecorder exchangeRecorder) {
+        recorder = exchangeRecorder;
+    }
+
+    static void setBodyLogging(boolean enabled) {
+        logBodies = enabled;
+    }
 
-        private final String apiUrl;
-        private final String method;
-        private final JSONObject jsonBody;
-        private final NetworkCallback callback;
+    static void setMaxResponseChars(int maxChars) {
+        maxResponseChars = maxChars;
+    }
 
-        JsonRequestTask(String apiUrl, String method, JSONObject jsonBody, NetworkCallback callback) {
-            this.apiUrl = apiUrl;
-            this.method = method;
-            this.jsonBody = jsonBody;
-            this.callback = callback;
+    /**
+     * Selects how requests reach the booking API: {@code "h2"} (the default) multiplexes all
+     * calls over one HTTP/2 connection where the server negotiates it via ALPN, {@code "h2c"}
+     * additionally speaks HTTP/2 without TLS to {@code http://} endpoints, and
+     * {@code "urlconnection"} uses one {@link java.net.HttpURLConnection} per request.
+     */
+    static void setTransport(String name) {
+        String mode = name != null ? name.trim().toLowerCase(Locale.US) : "h2";
+        if ("urlconnection".equals(mode) || "http1".equals(mode)) {
+            transport = new ResilientTransport(new UrlConnectionTransport());
+        } else {
+            transport = new ResilientTransport(new OkHttpTransport("h2c".equals(mode), new UrlConnectionTransport()));
         }
+        Log.i(TAG, "Transport: " + mode);
+    }
+
+    public interface Call {
+        void cancel();
+
+        boolean isCanceled();
+    }
+
+    /**
+     * Handle for one scheduled request. {@link #cancel()} comes from the caller and suppresses
+     * the callback; {@link #expire()} comes from the request's deadline and reports an error.
+     * Either one aborts the exchange through the hook the transport attached.
+     */
+    static final class RequestCall implements Call {
+
+        private volatile boolean canceled;
+        private volatile boolean expired;
+        private volatile long deadlineNanos = Long.MAX_VALUE;
+        private volatile Runnable abort;
 
         @Override
-        protected NetworkResult doInBackground(Void... voids) {
-            HttpURLConnection connection = null;
-            BufferedReader reader = null;
-
-            try {
-                String jsonString = jsonBody != null ? jsonBody.toString() : "";
-                Log.d(TAG, "Request URL: " + apiUrl);
-                Log.d(TAG, "Request Method: " + method);
-                if (jsonBody != null) {
-                    Log.d(TAG, "Request Body: " + jsonString);
-                }
+        public void cancel() {
+            canceled = true;
+            abortActive();
+        }
 
-                URL url = new URL(apiUrl);
-                connection = (HttpURLConnection) url.openConnection();
-
-                connection.setRequestMethod(method);
-                connection.setRequestProperty("Accept", "application/json");
-                connection.setConnectTimeout(TIMEOUT_MS);
-                connection.setReadTimeout(TIMEOUT_MS);
-
-                if (jsonBody != null) {
-                    connection.setRequestProperty("Content-Type", "application/json");
-                    connection.setDoOutput(true);
-                    connection.setDoInput(true);
-
-                    OutputStream outputStream = connection.getOutputStream();
-                    BufferedWriter writer = new BufferedWriter(
-                        new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)
-                    );
-                    writer.write(jsonString);
-                    writer.flush();
-                    writer.close();
-                    outputStream.close();
-                }
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
 
-                int responseCode = connection.getResponseCode();
-                Log.d(TAG, "Response Code: " + responseCode);
-
-                if (responseCode >= 200 && responseCode < 300) {
-                    reader = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)
-                    );
-                } else {
-                    reader = new BufferedReader(
-                        new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8)
-                    );
-                }
+        void expire() {
+            expired = true;
+            abortActive();
+        }
 
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
+        boolean isExpired() {
+            return expired;
+        }
 
-                String responseBody = response.toString();
-                Log.d(TAG, "Response Body: " + responseBody);
+        boolean isAborted() {
+            return canceled || expired;
+        }
 
-                if (responseCode >= 200 && responseCode < 300) {
-                    return new NetworkResult(true, responseBody);
-                }
+        void setDeadline(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        long remainingMs() {
+            long deadline = deadlineNanos;
+            return deadline == Long.MAX_VALUE
+                ? Long.MAX_VALUE
+                : TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+
+        void attach(Runnable abort) {
+            this.abort = abort;
+            if (isAborted()) {
+                abort.run();
+            }
+        }
+
+        void detach() {
+            abort = null;
+        }
+
+        private void abortActive() {
+            Runnable active = abort;
+            if (active != null) {
+                active.run();
+            }
+        }
+    }
+
+    private static NetworkResult performRequest(String apiUrl, String method, JSONObject jsonBody,
+                                                RequestPriority priority, RequestCall call) {
+        ExchangeRecorder activeRecorder = recorder;
+        if (activeRecorder == null) {
+            return executeRequest(apiUrl, method, jsonBody, priority, call);
+        }
+
+        long startedAt = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        NetworkResult result = executeRequest(apiUrl, method, jsonBody, priority, call);
+        long durationMs = (System.nanoTime() - startNanos) / 1_000_000L;
 
-                return new NetworkResult(false, "HTTP " + responseCode + ": " + responseBody);
-
-            } catch (Exception e) {
-                Log.e(TAG, "Network error", e);
-                return new NetworkResult(false, "Error: " + e.getMessage());
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error closing reader", e);
-                    }
+        activeRecorder.onExchange(method, apiUrl, jsonBody != null ? jsonBody.toString() : null,
+            result.code, result.body, result.body == null ? result.message : null, startedAt, durationMs);
+        return result;
+    }
+
+    private static NetworkResult executeRequest(String apiUrl, String method, JSONObject jsonBody,
+                                                RequestPriority priority, RequestCall call) {
+        if (call != null && call.isAborted()) {
+            return aborted(call);
+        }
+
+        try {
+            String jsonString = jsonBody != null ? jsonBody.toString() : null;
+            DiagLog.Category category = priority.background ? DiagLog.Category.POLL : DiagLog.Category.NETWORK;
+            boolean logged = DiagLog.sample(category);
+            if (logged) {
+                DiagLog.d(category, "%s %s (%s)", method, apiUrl, priority);
+                if (jsonString != null && logBodies) {
+                    DiagLog.d(category, "Request Body: %s", jsonString);
                 }
-                if (connection != null) {
-                    connection.disconnect();
+            }
+
+            int timeoutMs = call != null ? (int) Math.max(1, Math.min(TIMEOUT_MS, call.remainingMs())) : TIMEOUT_MS;
+            HttpTransport.Reply reply = transport.execute(method, apiUrl, jsonString, priority, call,
+                maxResponseChars, timeoutMs);
+
+            String responseBody = reply.body;
+            if (logged) {
+                DiagLog.d(category, "Response Code: %d via %s", reply.code, reply.protocol);
+                if (logBodies) {
+                    DiagLog.d(category, "Response Body: %s", responseBody);
                 }
             }
-        }
 
-        @Override
-        protected void onPostExecute(NetworkResult result) {
-            if (callback == null) {
-                return;
+            if (reply.code >= 200 && reply.code < 300) {
+                return new NetworkResult(true, responseBody, reply.code, responseBody);
             }
 
-            if (result.success) {
-                callback.onSuccess(result.message);
-            } else {
-                callback.onError(result.message);
+            return new NetworkResult(false, "HTTP " + reply.code + ": " + responseBody, reply.code, responseBody);
+
+        } catch (Exception e) {
+            if (call != null && call.isAborted()) {
+                return aborted(call);
             }
+            DiagLog.e(DiagLog.Category.NETWORK, e, "Network error: %s %s", method, apiUrl);
+            return new NetworkResult(false, "Error: " + e.getMessage());
+        }
+    }
+
+    private static NetworkResult aborted(RequestCall call) {
+        return new NetworkResult(false, call.isCanceled() ? "Canceled" : "Error: deadline exceeded");
+    }
+
+    /**
+     * Sends a HEAD request and drains the response without closing the connection, so it
+     * stays pooled for the next call. Any HTTP status counts as reachable. Blocks; returns
+     * the status code, or -1 if the endpoint could not be reached.
+     */
+    static int healthCheck(String apiUrl, int timeoutMs) {
+        return transport.head(apiUrl, timeoutMs);
+    }
+
+    private static void deliver(NetworkResult result, NetworkCallback callback) {
+        if (callback == null) {
+            return;
         }
+
+        if (result.success) {
+            callback.onSuccess(result.message);
+        } else {
+            callback.onError(result.message);
+        }
+    }
+
+    /**
+     * Queues a request on {@link RequestScheduler} and delivers the result on
+     * {@code callbackExecutor}. A canceled call never reaches its callback; one that misses its
+     * deadline gets {@link NetworkCallback#onError(String)}.
+     */
+    private static Call submit(String apiUrl, JSONObject jsonBody, RequestPriority priority,
+                               Executor callbackExecutor, NetworkCallback callback) {
+        RequestCall call = new RequestCall();
+        RequestScheduler.getInstance().submit(priority, call, () -> {
+            if (call.isCanceled()) {
+                return;
+            }
+            NetworkResult result = performRequest(apiUrl, "POST", jsonBody, priority, call);
+            callbackExecutor.execute(() -> {
+                if (!call.isCanceled()) {
+                    deliver(result, callback);
+                }
+            });
+        });
+        return call;
     }
 
-    private static void postJson(String apiUrl, JSONObject jsonBody, NetworkCallback callback) {
-        new JsonRequestTask(apiUrl, "POST", jsonBody, callback).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    /** Reports a request that could not be built, on the same executor a result would use. */
+    private static Call failed(String error, Executor callbackExecutor, NetworkCallback callback) {
+        RequestCall call = new RequestCall();
+        if (callback != null) {
+            callbackExecutor.execute(() -> callback.onError(error));
+        }
+        return call;
     }
 
-    public static void postLocationData(String apiUrl, double startLat, double startLng,
+    public static Call postLocationData(String apiUrl, double startLat, double startLng,
                                         double destLat, double destLng, NetworkCallback callback) {
+        return postLocationData(apiUrl, startLat, startLng, destLat, destLng, null, callback);
+    }
+
+    /** Asks for a price for one vehicle class; a null class leaves the choice to the server. */
+    public static Call postLocationData(String apiUrl, double startLat, double startLng,
+                                        double destLat, double destLng, String vehicleClass,
+                                        NetworkCallback callback) {
         try {
             JSONObject jsonBody = new JSONObject();
             jsonBody.put("startLat", startLat);
             jsonBody.put("startLng", startLng);
             jsonBody.put("destLat", destLat);
             jsonBody.put("destLng", destLng);
-            postJson(apiUrl, jsonBody, callback);
-        } catch (Exception e) {
-            if (callback != null) {
-                callback.onError("Error: " + e.getMessage());
+            if (vehicleClass != null) {
+                jsonBody.put("vehicleClass", vehicleClass);
             }
+            return submit(apiUrl, jsonBody, RequestPriority.QUOTE, MAIN_THREAD, callback);
+        } catch (Exception e) {
+            return failed("Error: " + e.getMessage(), MAIN_THREAD, callback);
         }
     }
 
-    public static void postPriceConfirmation(String apiUrl, String requestId, NetworkCallback callback) {
+    public static Call postPriceConfirmation(String apiUrl, String requestId, NetworkCallback callback) {
         try {
             JSONObject jsonBody = new JSONObject();
             if (requestId != null && !requestId.trim().isEmpty()) {
                 jsonBody.put("requestId", requestId);
             }
             jsonBody.put("confirmation", "yes");
-            postJson(apiUrl, jsonBody, callback);
+            return submit(apiUrl, jsonBody, RequestPriority.CONFIRM, MAIN_THREAD, callback);
         } catch (Exception e) {
-            if (callback != null) {
-                callback.onError("Error: " + e.getMessage());
-            }
+            return failed("Error: " + e.getMessage(), MAIN_THREAD, callback);
         }
     }
 
-    public static void pollDriverPosition(String apiUrl, String bookingId, NetworkCallback callback) {
+    /** Like the other calls, but delivers the result on {@code callbackExecutor}. */
+    public static Call pollDriverPosition(String apiUrl, String bookingId, Executor callbackExecutor,
+                                          NetworkCallback callback) {
         try {
             JSONObject jsonBody = new JSONObject();
             if (bookingId != null && !bookingId.trim().isEmpty()) {
                 jsonBody.put("bookingId", bookingId);
             }
-            postJson(apiUrl, jsonBody, callback);
+            return submit(apiUrl, jsonBody, RequestPriority.POLL, callbackExecutor, callback);
         } catch (Exception e) {
-            if (callback != null) {
-                callback.onError("Error: " + e.getMessage());
-            }
+            return failed("Error: " + e.getMessage(), callbackExecutor, callback);
         }
     }
 
-    public static void cancelBooking(String apiUrl, String bookingId, NetworkCallback callback) {
+    public static Call cancelBooking(String apiUrl, String bookingId, NetworkCallback callback) {
         try {
             JSONObject jsonBody = new JSONObject();
             if (bookingId != null && !bookingId.trim().isEmpty()) {
                 jsonBody.put("bookingId", bookingId);
             }
             jsonBody.put("cancel", true);
-            postJson(apiUrl, jsonBody, callback);
+            return submit(apiUrl, jsonBody, RequestPriority.CANCEL, MAIN_THREAD, callback);
         } catch (Exception e) {
-            if (callback != null) {
-                callback.onError("Error: " + e.getMessage());
-            }
+            return failed("Error: " + e.getMessage(), MAIN_THREAD, callback);
         }
     }
 }
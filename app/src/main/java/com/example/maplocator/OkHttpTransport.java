@@ -0,0 +1,162 @@
+package com.example.maplocator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.net.UnknownServiceException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link HttpTransport} over OkHttp. Every call to a host shares one connection, which is
+ * HTTP/2 when the server negotiates it via ALPN (or, with {@code cleartextH2}, always for
+ * {@code http://} URLs), so polls for several bookings, quote prefetches and a cancel run as
+ * concurrent streams instead of queueing for sockets.
+ *
+ * <p>OkHttp does not send HTTP/2 PRIORITY frames, so priority is applied when streams are
+ * opened: a {@link PriorityGate} caps in-flight streams and always admits the most urgent
+ * waiting call next, and cancellations skip the gate. If the server cannot speak the
+ * negotiated protocol the transport hands calls to {@code fallback} for a while; the call
+ * that failed is only repeated there if it cannot have been sent yet or is a read.</p>
+ */
+final class OkHttpTransport implements HttpTransport {
+
+    private static final int MAX_STREAMS = 6;
+    private static final long FALLBACK_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final OkHttpClient tlsClient;
+    private final OkHttpClient cleartextClient;
+    private final HttpTransport fallback;
+    private final PriorityGate gate = new PriorityGate(MAX_STREAMS);
+    private volatile long fallbackUntilNanos;
+    private volatile boolean fallingBack;
+
+    OkHttpTransport(boolean cleartextH2, HttpTransport fallback) {
+        this.fallback = fallback;
+        tlsClient = new OkHttpClient.Builder()
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectionPool(new ConnectionPool(2, 5, TimeUnit.MINUTES))
+            .dns(hostname -> Arrays.asList(DnsCache.getInstance().lookup(hostname)))
+            .pingInterval(30, TimeUnit.SECONDS)
+            .build();
+        cleartextClient = cleartextH2
+            ? tlsClient.newBuilder().protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)).build()
+            : tlsClient;
+    }
+
+    @Override
+    public Reply execute(String method, String url, String body, RequestPriority priority,
+                         NetworkHelper.RequestCall call, int maxResponseChars, int timeoutMs) throws IOException {
+        if (useFallback()) {
+            return fallback.execute(method, url, body, priority, call, maxResponseChars, timeoutMs);
+        }
+
+        Request.Builder request = new Request.Builder()
+            .url(url)
+            .header("Accept", "application/json");
+        if ("HEAD".equals(method)) {
+            request.head();
+        } else if (body != null) {
+            request.post(RequestBody.create(body, JSON));
+        }
+
+        try {
+            return exchange(request.build(), priority, call, maxResponseChars, timeoutMs);
+        } catch (IOException e) {
+            boolean beforeSend = isNegotiationFailure(e);
+            if ((call != null && call.isAborted()) || !(beforeSend || e instanceof ProtocolException)) {
+                throw e;
+            }
+            fallbackUntilNanos = System.nanoTime() + FALLBACK_NANOS;
+            fallingBack = true;
+            // A ProtocolException can come after the request was written (a malformed status
+            // line, a reset stream), so only calls that are safe to repeat go out again now.
+            if (!beforeSend && !isSafeToResend(priority)) {
+                throw e;
+            }
+            return fallback.execute(method, url, body, priority, call, maxResponseChars, timeoutMs);
+        }
+    }
+
+    @Override
+    public int head(String url, int timeoutMs) {
+        try {
+            return execute("HEAD", url, null, RequestPriority.PREFETCH, null, Integer.MAX_VALUE, timeoutMs).code;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private Reply exchange(Request request, RequestPriority priority, NetworkHelper.RequestCall call,
+                           int maxResponseChars, int timeoutMs) throws IOException {
+        try {
+            gate.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a stream");
+        }
+
+        try {
+            if (call != null && call.isAborted()) {
+                throw new InterruptedIOException("Aborted waiting for a stream");
+            }
+            OkHttpClient client = request.isHttps() ? tlsClient : cleartextClient;
+            okhttp3.Call okCall = client.newBuilder()
+                .callTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .build()
+                .newCall(request);
+            if (call != null) {
+                call.attach(okCall::cancel);
+            }
+
+            try (Response response = okCall.execute()) {
+                ResponseBody responseBody = response.body();
+                String text = responseBody != null
+                    ? UrlConnectionTransport.readBody(responseBody.charStream(), maxResponseChars)
+                    : "";
+                return new Reply(response.code(), text, response.protocol().toString());
+            } finally {
+                if (call != null) {
+                    call.detach();
+                }
+            }
+        } finally {
+            gate.release();
+        }
+    }
+
+    private boolean useFallback() {
+        if (!fallingBack) {
+            return false;
+        }
+        if (System.nanoTime() - fallbackUntilNanos < 0) {
+            return true;
+        }
+        fallingBack = false;
+        return false;
+    }
+
+    /** Failures that mean this client and the server do not agree on a protocol, before any request was sent. */
+    private static boolean isNegotiationFailure(IOException e) {
+        return e instanceof SSLHandshakeException || e instanceof UnknownServiceException;
+    }
+
+    /** Quotes, polls and prefetches only read; a confirm or cancel sent twice could act twice. */
+    private static boolean isSafeToResend(RequestPriority priority) {
+        return priority == RequestPriority.QUOTE || priority == RequestPriority.POLL
+            || priority == RequestPriority.PREFETCH;
+    }
+}
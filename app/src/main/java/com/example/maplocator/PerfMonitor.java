@@ -0,0 +1,122 @@
+package com.example.maplocator;
+
+import android.os.Build;
+import android.os.Debug;
+import android.view.Choreographer;
+
+import org.json.JSONObject;
+
+/**
+ * Frame and allocation counters for a replay run. Frame timings come from
+ * {@link Choreographer} callbacks; allocation and GC counts come from ART runtime stats
+ * where available (API 23+), with the Java heap delta as a fallback.
+ */
+final class PerfMonitor implements Choreographer.FrameCallback {
+
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L;
+    private static final long JANK_THRESHOLD_NANOS = FRAME_BUDGET_NANOS * 3 / 2;
+    private static final int HEAP_SAMPLE_FRAMES = 30;
+
+    private final LiteMode liteMode;
+
+    private boolean running;
+    private long startNanos;
+    private long lastFrameNanos;
+    private int frames;
+    private int jankyFrames;
+    private long worstFrameNanos;
+
+    private long heapAtStart;
+    private long peakHeap;
+    private long bytesAllocatedAtStart;
+    private long gcCountAtStart;
+
+    PerfMonitor(LiteMode liteMode) {
+        this.liteMode = liteMode;
+    }
+
+    void start() {
+        running = true;
+        startNanos = System.nanoTime();
+        lastFrameNanos = 0;
+        frames = 0;
+        jankyFrames = 0;
+        worstFrameNanos = 0;
+
+        heapAtStart = usedHeap();
+        peakHeap = heapAtStart;
+        bytesAllocatedAtStart = runtimeStat("art.gc.bytes-allocated");
+        gcCountAtStart = runtimeStat("art.gc.gc-count");
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    JSONObject stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        peakHeap = Math.max(peakHeap, usedHeap());
+
+        JSONObject report = new JSONObject();
+        try {
+            report.put("durationMs", (System.nanoTime() - startNanos) / 1_000_000L);
+            report.put("frames", frames);
+            report.put("jankyFrames", jankyFrames);
+            report.put("worstFrameMs", worstFrameNanos / 1_000_000.0);
+            report.put("heapDeltaBytes", usedHeap() - heapAtStart);
+            report.put("peakHeapBytes", peakHeap);
+            report.put("liteMode", liteMode.isEnabled());
+            report.put("heapCeilingBytes", liteMode.getHeapCeilingBytes());
+            report.put("withinHeapCeiling", peakHeap <= liteMode.getHeapCeilingBytes());
+
+            long bytesAllocated = runtimeStat("art.gc.bytes-allocated");
+            if (bytesAllocated >= 0 && bytesAllocatedAtStart >= 0) {
+                report.put("allocatedBytes", bytesAllocated - bytesAllocatedAtStart);
+            }
+            long gcCount = runtimeStat("art.gc.gc-count");
+            if (gcCount >= 0 && gcCountAtStart >= 0) {
+                report.put("gcCount", gcCount - gcCountAtStart);
+            }
+        } catch (Exception ignored) {
+        }
+        return report;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+
+        if (lastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - lastFrameNanos;
+            frames++;
+            if (frameNanos > JANK_THRESHOLD_NANOS) {
+                jankyFrames++;
+            }
+            worstFrameNanos = Math.max(worstFrameNanos, frameNanos);
+            if (frames % HEAP_SAMPLE_FRAMES == 0) {
+                peakHeap = Math.max(peakHeap, usedHeap());
+            }
+        }
+        lastFrameNanos = frameTimeNanos;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long runtimeStat(String name) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        try {
+            String value = Debug.getRuntimeStat(name);
+            return value != null ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Read-only place name index, memory-mapped from the {@link #ASSET_NAME} asset that
+ * {@code PlaceIndexBuilder} writes. Layout (big-endian):
+ * <pre>
+ *   header   magic, placeCount, keyCount, stringBytes             4 x int
+ *   places   latE6, lngE6, nameOffset, weight                      placeCount x 16 bytes
+ *   keys     keyOffset, place | FULL_NAME                          keyCount x 8 bytes
+ *   strings  u16 length + UTF-8 bytes, shared by names and keys
+ * </pre>
+ * Places are ordered by geohash, so neighbours share pages. There is one key per word start
+ * of each normalised name ("golden gate park", "gate park", "park"), sorted bytewise; a
+ * prefix query is a binary search to the first key at or after the query followed by a scan
+ * while keys still start with it, comparing bytes in the mapped buffer without allocating.
+ * The asset has to be stored uncompressed for {@code openFd} to work.
+ */
+final class PlaceIndex {
+
+    static final String ASSET_NAME = "places.idx";
+    static final int MAGIC = 0x504C4331;
+    static final int HEADER_BYTES = 16;
+    static final int PLACE_BYTES = 16;
+    static final int KEY_BYTES = 8;
+    static final int FULL_NAME = 0x80000000;
+
+    private static final int MAX_SCAN = 512;
+    private static final double FULL_NAME_BONUS = 25;
+    private static final double PENALTY_PER_KM = 1.5;
+    private static final double MAX_DISTANCE_PENALTY = 40;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    static final class Place {
+        final String name;
+        final double lat;
+        final double lng;
+
+        Place(String name, double lat, double lng) {
+            this.name = name;
+            this.lat = lat;
+            this.lng = lng;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int placeCount;
+    private final int keyCount;
+    private final int placesAt;
+    private final int keysAt;
+    private final int stringsAt;
+
+    PlaceIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a place index");
+        }
+        placeCount = buffer.getInt(4);
+        keyCount = buffer.getInt(8);
+        placesAt = HEADER_BYTES;
+        keysAt = placesAt + placeCount * PLACE_BYTES;
+        stringsAt = keysAt + keyCount * KEY_BYTES;
+        if (stringsAt + buffer.getInt(12) > buffer.capacity()) {
+            throw new IOException("Truncated place index");
+        }
+    }
+
+    static PlaceIndex open(Context context) throws IOException {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(ASSET_NAME);
+             FileInputStream in = descriptor.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            return new PlaceIndex(channel.map(FileChannel.MapMode.READ_ONLY,
+                descriptor.getStartOffset(), descriptor.getLength()));
+        }
+    }
+
+    int size() {
+        return placeCount;
+    }
+
+    /**
+     * Returns up to {@code limit} places with a word starting with {@code query}, best first:
+     * matches on the start of the name, then by weight, less a penalty for distance from the
+     * bias point (pass NaN for no bias). Safe to call from any thread.
+     */
+    List<Place> search(String query, double biasLat, double biasLng, int limit) {
+        byte[] prefix = normalize(query).getBytes(StandardCharsets.UTF_8);
+        if (prefix.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        int[] places = new int[limit];
+        double[] scores = new double[limit];
+        int found = 0;
+        int start = lowerBound(prefix);
+        int end = Math.min(keyCount, start + MAX_SCAN);
+        for (int key = start; key < end && startsWith(key, prefix); key++) {
+            int ref = buffer.getInt(keysAt + key * KEY_BYTES + 4);
+            int place = ref & ~FULL_NAME;
+            double score = score(place, (ref & FULL_NAME) != 0, biasLat, biasLng);
+
+            int slot = indexOf(places, found, place);
+            if (slot >= 0) {
+                if (score <= scores[slot]) {
+                    continue;
+                }
+                remove(places, scores, found--, slot);
+            } else if (found == limit) {
+                if (score <= scores[limit - 1]) {
+                    continue;
+                }
+                found--;
+            }
+
+            int at = found++;
+            while (at > 0 && scores[at - 1] < score) {
+                places[at] = places[at - 1];
+                scores[at] = scores[at - 1];
+                at--;
+            }
+            places[at] = place;
+            scores[at] = score;
+        }
+
+        List<Place> results = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            results.add(place(places[i]));
+        }
+        return results;
+    }
+
+    Place place(int index) {
+        int at = placesAt + index * PLACE_BYTES;
+        return new Place(string(buffer.getInt(at + 8)), buffer.getInt(at) / 1e6, buffer.getInt(at + 4) / 1e6);
+    }
+
+    /** Lower-cases, strips accents and collapses everything but letters and digits to single spaces. */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return NON_WORD.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private double score(int place, boolean fullName, double biasLat, double biasLng) {
+        int at = placesAt + place * PLACE_BYTES;
+        double score = buffer.getInt(at + 12) + (fullName ? FULL_NAME_BONUS : 0);
+        if (!Double.isNaN(biasLat) && !Double.isNaN(biasLng)) {
+            double km = GeoMath.haversineMeters(biasLat, biasLng, buffer.getInt(at) / 1e6, buffer.getInt(at + 4) / 1e6) / 1000.0;
+            score -= Math.min(MAX_DISTANCE_PENALTY, km * PENALTY_PER_KM);
+        }
+        return score;
+    }
+
+    private int lowerBound(byte[] prefix) {
+        int lo = 0;
+        int hi = keyCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKey(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compareKey(int key, byte[] prefix) {
+        int at = stringsAt + buffer.getInt(keysAt + key * KEY_BYTES);
+        int length = buffer.getShort(at) & 0xFFFF;
+        int n = Math.min(length, prefix.length);
+        for (int i = 0; i < n; i++) {
+            int diff = (buffer.get(at + 2 + i) & 0xFF) - (prefix[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - prefix.length;
+    }
+
+    private boolean startsWith(int key, byte[] prefix) {
+        int at = stringsAt + buffer.getInt(keysAt + key * KEY_BYTES);
+        if ((buffer.getShort(at) & 0xFFFF) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(at + 2 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(int offset) {
+        int at = stringsAt + offset;
+        byte[] bytes = new byte[buffer.getShort(at) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(at + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(int[] places, int count, int place) {
+        for (int i = 0; i < count; i++) {
+            if (places[i] == place) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void remove(int[] places, double[] scores, int count, int slot) {
+        System.arraycopy(places, slot + 1, places, slot, count - slot - 1);
+        System.arraycopy(scores, slot + 1, scores, slot, count - slot - 1);
+    }
+}
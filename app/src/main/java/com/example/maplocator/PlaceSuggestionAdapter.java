@@ -0,0 +1,68 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Drop-down suggestions for the place search box. Lookups run on the {@link Filter}'s worker
+ * thread against the memory-mapped {@link PlaceIndex}; results are biased towards the point
+ * last passed to {@link #setBias(double, double)}, normally the map centre.
+ */
+final class PlaceSuggestionAdapter extends ArrayAdapter<PlaceIndex.Place> {
+
+    private static final int MAX_SUGGESTIONS = 6;
+
+    private final PlaceIndex index;
+    private volatile double biasLat = Double.NaN;
+    private volatile double biasLng = Double.NaN;
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<PlaceIndex.Place> places = constraint == null
+                ? Collections.<PlaceIndex.Place>emptyList()
+                : index.search(constraint.toString(), biasLat, biasLng, MAX_SUGGESTIONS);
+            FilterResults results = new FilterResults();
+            results.values = places;
+            results.count = places.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            if (results != null && results.count > 0) {
+                addAll((List<PlaceIndex.Place>) results.values);
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+
+        @Override
+        public CharSequence convertResultToString(Object resultValue) {
+            return ((PlaceIndex.Place) resultValue).name;
+        }
+    };
+
+    PlaceSuggestionAdapter(Context context, PlaceIndex index) {
+        super(context, android.R.layout.simple_dropdown_item_1line);
+        this.index = index;
+    }
+
+    void setBias(double lat, double lng) {
+        biasLat = lat;
+        biasLng = lng;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.maplocator;
+
+/**
+ * Admits at most {@code maxConcurrent} calls at a time, most urgent waiting call first.
+ * {@link RequestPriority#CANCEL} is always admitted immediately, even over the limit, so a
+ * cancellation never queues behind the calls it is trying to stop.
+ */
+final class PriorityGate {
+
+    private final int maxConcurrent;
+    private final int[] waiting = new int[RequestPriority.values().length];
+    private int active;
+
+    PriorityGate(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /** Blocks until the call may start. Callers must {@link #release()} only after this returns. */
+    synchronized void acquire(RequestPriority priority) throws InterruptedException {
+        if (priority != RequestPriority.CANCEL) {
+            int level = priority.ordinal();
+            waiting[level]++;
+            try {
+                while (active >= maxConcurrent || hasMoreUrgentWaiting(level)) {
+                    wait();
+                }
+            } finally {
+                waiting[level]--;
+            }
+        }
+        active++;
+    }
+
+    synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    private boolean hasMoreUrgentWaiting(int level) {
+        for (int i = 0; i < level; i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
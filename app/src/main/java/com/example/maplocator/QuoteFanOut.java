@@ -0,0 +1,136 @@
+package com.example.maplocator;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Requests a price for every vehicle class at once and reports the offers, cheapest first, each
+ * time another one arrives. Once {@link #DEADLINE_MS} has passed and at least one offer is in,
+ * the requests still outstanding are cancelled, so a slow pricing backend for one class holds up
+ * neither the others nor the dialog. If nothing has arrived by then, the first offer to arrive
+ * ends the wait. Main thread only.
+ */
+final class QuoteFanOut implements NetworkHelper.Call {
+
+    interface Listener {
+        /** {@code quotes} is sorted by price and only valid during the call. */
+        void onQuotes(List<BookingQuote> quotes, int outstanding);
+
+        /**
+         * Called once, after the last answer or the cut-off. {@code error} is the last failure
+         * seen; when {@code unparsable} it is a response body that carried no price.
+         */
+        void onFinished(List<BookingQuote> quotes, String error, boolean unparsable);
+    }
+
+    static final long DEADLINE_MS = 4000;
+    /** Classes beyond this are not quoted; {@link RequestScheduler} runs this many quotes at once. */
+    static final int MAX_CLASSES = 4;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final String[] vehicleClasses;
+    private final Listener listener;
+    private final List<NetworkHelper.Call> calls = new ArrayList<>();
+    private final List<BookingQuote> quotes = new ArrayList<>();
+    private final List<BookingQuote> view = Collections.unmodifiableList(quotes);
+    private final Runnable deadline = this::onDeadline;
+
+    private int outstanding;
+    private boolean deadlinePassed;
+    private boolean finished;
+    private String lastError;
+    private boolean lastErrorUnparsable;
+
+    /** A single null class sends one plain request, the way quotes worked before classes. */
+    QuoteFanOut(String[] vehicleClasses, Listener listener) {
+        this.vehicleClasses = vehicleClasses.length > 0
+            ? Arrays.copyOf(vehicleClasses, Math.min(vehicleClasses.length, MAX_CLASSES))
+            : new String[] {null};
+        this.listener = listener;
+    }
+
+    QuoteFanOut start(String apiUrl, double startLat, double startLng, double destLat, double destLng) {
+        outstanding = vehicleClasses.length;
+        for (String vehicleClass : vehicleClasses) {
+            calls.add(NetworkHelper.postLocationData(apiUrl, startLat, startLng, destLat, destLng, vehicleClass,
+                new NetworkHelper.NetworkCallback() {
+                    @Override
+                    public void onSuccess(String response) {
+                        BookingQuote quote = BookingQuote.parse(response, vehicleClass);
+                        onAnswer(quote, quote == null ? response : null, true);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        onAnswer(null, error, false);
+                    }
+                }));
+        }
+        mainHandler.postDelayed(deadline, DEADLINE_MS);
+        return this;
+    }
+
+    @Override
+    public void cancel() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        mainHandler.removeCallbacks(deadline);
+        cancelCalls();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return finished;
+    }
+
+    private void onAnswer(BookingQuote quote, String error, boolean unparsable) {
+        if (finished) {
+            return;
+        }
+
+        outstanding--;
+        if (quote != null) {
+            int at = 0;
+            while (at < quotes.size() && quotes.get(at).price <= quote.price) {
+                at++;
+            }
+            quotes.add(at, quote);
+            listener.onQuotes(view, outstanding);
+        } else {
+            lastError = error;
+            lastErrorUnparsable = unparsable;
+        }
+
+        if (outstanding == 0 || (deadlinePassed && !quotes.isEmpty())) {
+            finish();
+        }
+    }
+
+    private void onDeadline() {
+        deadlinePassed = true;
+        if (!finished && !quotes.isEmpty()) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        finished = true;
+        mainHandler.removeCallbacks(deadline);
+        cancelCalls();
+        listener.onFinished(view, lastError, lastErrorUnparsable);
+    }
+
+    private void cancelCalls() {
+        for (NetworkHelper.Call call : calls) {
+            call.cancel();
+        }
+        calls.clear();
+    }
+}
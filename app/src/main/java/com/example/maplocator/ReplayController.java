@@ -0,0 +1,193 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wires traffic recording and trip replay into the tracking screen from launch extras, in debug
+ * builds only:
+ *
+ * <pre>
+ * adb shell am start -n com.example.maplocator/.MainActivity --ez recordTraffic true
+ * adb shell am start -n com.example.maplocator/.MainActivity --es replaySession session-123.jsonl --ef replaySpeed 4
+ * </pre>
+ *
+ * Sessions are read from and written to {@code files/replays}. A replay serves the session
+ * from a loopback {@link LocalHttpServer}, drives the booking flow through the normal UI code
+ * paths and writes a {@link PerfMonitor} report next to the session when it finishes. A replay
+ * whose peak heap exceeds the {@link LiteMode} ceiling fails: the report says so and the failure
+ * is logged as an error, so scripted runs can check for it.
+ */
+final class ReplayController implements ReplayServer.Listener {
+
+    interface Host {
+        void onReplayReady(String endpoint, double startLat, double startLng, double destLat, double destLng);
+
+        /** {@code passed} is false when the peak heap went over the lite mode ceiling. */
+        void onReplayFinished(String report, boolean passed);
+    }
+
+    static final String EXTRA_RECORD_TRAFFIC = "recordTraffic";
+    static final String EXTRA_REPLAY_SESSION = "replaySession";
+    static final String EXTRA_REPLAY_SPEED = "replaySpeed";
+
+    private static final String TAG = "ReplayController";
+    private static final String REPLAY_DIR = "replays";
+
+    private static TrafficRecorder recorder;
+
+    private final File directory;
+    private final ReplaySession session;
+    private final float speed;
+    private final Host host;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PerfMonitor perfMonitor;
+
+    private LocalHttpServer server;
+
+    private ReplayController(File directory, ReplaySession session, float speed, Host host, LiteMode liteMode) {
+        this.directory = directory;
+        this.perfMonitor = new PerfMonitor(liteMode);
+        this.session = session;
+        this.speed = speed;
+        this.host = host;
+    }
+
+    static ReplayController fromIntent(Context context, Intent intent, Host host) {
+        if (intent == null || !BuildConfig.DEBUG) {
+            return null;
+        }
+
+        File directory = new File(context.getFilesDir(), REPLAY_DIR);
+
+        if (intent.getBooleanExtra(EXTRA_RECORD_TRAFFIC, false)) {
+            startRecording(directory);
+        }
+
+        String sessionName = intent.getStringExtra(EXTRA_REPLAY_SESSION);
+        if (sessionName == null) {
+            return null;
+        }
+
+        try {
+            ReplaySession session = ReplaySession.load(new File(directory, sessionName));
+            return new ReplayController(directory, session, intent.getFloatExtra(EXTRA_REPLAY_SPEED, 1f), host,
+                LiteMode.getInstance(context));
+        } catch (Exception e) {
+            Log.e(TAG, "Could not load replay " + sessionName, e);
+            return null;
+        }
+    }
+
+    private static synchronized void startRecording(File directory) {
+        if (recorder != null) {
+            return;
+        }
+        try {
+            recorder = TrafficRecorder.open(directory);
+            NetworkHelper.setRecorder(recorder);
+            Log.i(TAG, "Recording traffic to " + recorder.getFile());
+        } catch (Exception e) {
+            Log.e(TAG, "Could not start recording", e);
+        }
+    }
+
+    /** Stops recording and closes the session file; recording does not survive the activity. */
+    static synchronized void stopRecording() {
+        if (recorder == null) {
+            return;
+        }
+        NetworkHelper.setRecorder(null);
+        recorder.close();
+        Log.i(TAG, "Recorded traffic to " + recorder.getFile());
+        recorder = null;
+    }
+
+    void start() {
+        double[] route = session.findRoute();
+        if (route == null) {
+            Log.e(TAG, "Replay " + session.getName() + " has no quote request");
+            return;
+        }
+
+        new Thread(() -> {
+            try {
+                LocalHttpServer localServer = new LocalHttpServer(new ReplayServer(session, speed, this));
+                localServer.start(0);
+                mainHandler.post(() -> {
+                    server = localServer;
+                    TrackingService.setTimeScale(speed);
+                    perfMonitor.start();
+                    host.onReplayReady(localServer.getBaseUrl(), route[0], route[1], route[2], route[3]);
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Could not start replay server", e);
+            }
+        }, "replay-start").start();
+    }
+
+    boolean isAutopilot() {
+        return server != null;
+    }
+
+    @Override
+    public void onReplayFinished() {
+        mainHandler.post(this::finish);
+    }
+
+    void stop() {
+        if (server != null) {
+            server.close();
+            server = null;
+            TrackingService.setTimeScale(1f);
+        }
+    }
+
+    private void finish() {
+        if (server == null) {
+            return;
+        }
+
+        JSONObject report = perfMonitor.stop();
+        try {
+            report.put("session", session.getName());
+            report.put("speed", speed);
+        } catch (Exception ignored) {
+        }
+
+        boolean passed = report.optBoolean("withinHeapCeiling", true);
+        try {
+            report.put("passed", passed);
+        } catch (Exception ignored) {
+        }
+
+        String reportText = report.toString();
+        if (passed) {
+            Log.i(TAG, "Replay finished: " + reportText);
+        } else {
+            Log.e(TAG, "Replay failed, heap ceiling exceeded: " + reportText);
+        }
+
+        File reportFile = new File(directory, session.getName() + ".report.json");
+        new Thread(() -> {
+            try (OutputStream out = new FileOutputStream(reportFile)) {
+                out.write(reportText.getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                Log.e(TAG, "Could not write " + reportFile, e);
+            }
+        }, "replay-report").start();
+
+        stop();
+        host.onReplayFinished(reportText, passed);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.maplocator;
+
+/**
+ * {@link LocalHttpServer.Handler} that answers requests from a {@link ReplaySession} with the
+ * recorded status, body and latency, scaled by the playback speed. Answers are also held back
+ * until their recorded offset from the first request, so the gaps between polls are reproduced
+ * even when the client asks early. Recorded transport errors
+ * are replayed as dropped connections. When a kind of request runs out of recordings (for
+ * example extra polls at the end of a trip) the last answer for that kind is repeated.
+ */
+final class ReplayServer implements LocalHttpServer.Handler {
+
+    interface Listener {
+        void onReplayFinished();
+    }
+
+    private final ReplaySession session;
+    private final float speed;
+    private final Listener listener;
+    private boolean finishedReported;
+    private long anchorNanos = -1;
+    private long anchorOffsetMs;
+
+    ReplayServer(ReplaySession session, float speed, Listener listener) {
+        this.session = session;
+        this.speed = speed <= 0f ? 1f : speed;
+        this.listener = listener;
+    }
+
+    @Override
+    public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+        String fingerprint = ReplaySession.fingerprint(request.body);
+        ReplaySession.Exchange exchange = session.next(fingerprint);
+        long delayMs;
+        if (exchange != null) {
+            delayMs = delayFor(exchange);
+        } else {
+            exchange = session.last(fingerprint);
+            if (exchange == null) {
+                return LocalHttpServer.Response.json(404, "{\"error\":\"no recording for " + fingerprint + "\"}");
+            }
+            delayMs = (long) (exchange.durationMs / speed);
+        }
+        reportIfFinished();
+
+        if (exchange.responseBody == null) {
+            return LocalHttpServer.Response.drop(delayMs);
+        }
+        return LocalHttpServer.Response.json(exchange.code > 0 ? exchange.code : 200, exchange.responseBody)
+            .delayed(delayMs);
+    }
+
+    /**
+     * Time until the recorded response completed, measured on the replay clock that starts at the
+     * first request. Never less than the recorded latency, so a client running late is not
+     * answered instantly.
+     */
+    private synchronized long delayFor(ReplaySession.Exchange exchange) {
+        long now = System.nanoTime();
+        if (anchorNanos < 0) {
+            anchorNanos = now;
+            anchorOffsetMs = exchange.offsetMs;
+        }
+        long dueMs = (long) ((exchange.offsetMs - anchorOffsetMs + exchange.durationMs) / speed);
+        long untilDueMs = dueMs - (now - anchorNanos) / 1_000_000L;
+        return Math.max((long) (exchange.durationMs / speed), untilDueMs);
+    }
+
+    private void reportIfFinished() {
+        synchronized (this) {
+            if (finishedReported || !session.isFinished()) {
+                return;
+            }
+            finishedReported = true;
+        }
+        if (listener != null) {
+            listener.onReplayFinished();
+        }
+    }
+}
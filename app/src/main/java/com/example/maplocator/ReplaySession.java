@@ -0,0 +1,159 @@
+package com.example.maplocator;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A recorded {@link TrafficRecorder} session. Exchanges are matched to incoming requests by
+ * the set of JSON keys in the request body (quote, confirmation, poll and cancel bodies all
+ * differ), consumed in recorded order within each kind.
+ */
+final class ReplaySession {
+
+    static final class Exchange {
+        final long offsetMs;
+        final long durationMs;
+        final String fingerprint;
+        final String requestBody;
+        final int code;
+        final String responseBody;
+        final String error;
+
+        Exchange(long offsetMs, long durationMs, String fingerprint, String requestBody,
+                 int code, String responseBody, String error) {
+            this.offsetMs = offsetMs;
+            this.durationMs = durationMs;
+            this.fingerprint = fingerprint;
+            this.requestBody = requestBody;
+            this.code = code;
+            this.responseBody = responseBody;
+            this.error = error;
+        }
+    }
+
+    private final String name;
+    private final List<Exchange> exchanges;
+    private final boolean[] consumed;
+    private int remaining;
+
+    private ReplaySession(String name, List<Exchange> exchanges) {
+        this.name = name;
+        this.exchanges = exchanges;
+        this.consumed = new boolean[exchanges.size()];
+        this.remaining = exchanges.size();
+    }
+
+    static ReplaySession load(File file) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JSONObject json = new JSONObject(line);
+                    String request = json.isNull("request") ? null : json.optString("request", null);
+                    exchanges.add(new Exchange(
+                        json.optLong("t", 0),
+                        json.optLong("d", 0),
+                        fingerprint(request),
+                        request,
+                        json.optInt("code", -1),
+                        json.isNull("response") ? null : json.optString("response", null),
+                        json.isNull("error") ? null : json.optString("error", null)
+                    ));
+                } catch (Exception e) {
+                    throw new IOException("Malformed replay line: " + line, e);
+                }
+            }
+        }
+        return new ReplaySession(file.getName(), exchanges);
+    }
+
+    static String fingerprint(String body) {
+        if (body == null || body.trim().isEmpty()) {
+            return "";
+        }
+
+        try {
+            JSONObject json = new JSONObject(body);
+            String[] keys = new String[json.length()];
+            int i = 0;
+            for (Iterator<String> it = json.keys(); it.hasNext(); ) {
+                keys[i++] = it.next();
+            }
+            Arrays.sort(keys);
+            StringBuilder builder = new StringBuilder();
+            for (String key : keys) {
+                if (builder.length() > 0) {
+                    builder.append(',');
+                }
+                builder.append(key);
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    synchronized Exchange next(String fingerprint) {
+        for (int i = 0; i < exchanges.size(); i++) {
+            if (!consumed[i] && exchanges.get(i).fingerprint.equals(fingerprint)) {
+                consumed[i] = true;
+                remaining--;
+                return exchanges.get(i);
+            }
+        }
+        return null;
+    }
+
+    synchronized Exchange last(String fingerprint) {
+        for (int i = exchanges.size() - 1; i >= 0; i--) {
+            if (consumed[i] && exchanges.get(i).fingerprint.equals(fingerprint)) {
+                return exchanges.get(i);
+            }
+        }
+        return null;
+    }
+
+    synchronized boolean isFinished() {
+        return remaining == 0;
+    }
+
+    double[] findRoute() {
+        for (Exchange exchange : exchanges) {
+            if (exchange.requestBody == null) {
+                continue;
+            }
+            try {
+                JSONObject json = new JSONObject(exchange.requestBody);
+                if (json.has("startLat") && json.has("destLat")) {
+                    return new double[] {
+                        json.getDouble("startLat"),
+                        json.getDouble("startLng"),
+                        json.getDouble("destLat"),
+                        json.getDouble("destLng")
+                    };
+                }
+            } catch (Exception ignored) {
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.maplocator;
+
+/**
+ * Relative urgency of a booking API call, most urgent first. When calls compete for a worker
+ * or for the transport, a waiting call is never started ahead of a more urgent one, and
+ * cancellations are never held back by the transport at all.
+ *
+ * <p>Background classes, quotes, and confirms and cancels each run on their own lane in
+ * {@link RequestScheduler}, so a booking call never waits for a worker behind a quote or a
+ * poll. Each class has a deadline, counted from submission; a call still queued or running
+ * when it passes is aborted.</p>
+ */
+public enum RequestPriority {
+    CANCEL(10_000, false),
+    CONFIRM(15_000, false),
+    QUOTE(15_000, false),
+    POLL(10_000, true),
+    PREFETCH(5_000, true);
+
+    final long deadlineMs;
+    final boolean background;
+
+    RequestPriority(long deadlineMs, boolean background) {
+        this.deadlineMs = deadlineMs;
+        this.background = background;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.maplocator;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link NetworkHelper} requests on three lanes: booking calls (cancel, confirm), quotes,
+ * and background traffic (polls, prefetches). Each lane has its own threads and a queue
+ * ordered by {@link RequestPriority}, then by submission, so a cancel never waits for a slow
+ * poll or quote to free a worker. The quote lane has a thread per class a {@link QuoteFanOut}
+ * sends, so a full fan-out runs in parallel within its deadline. Every request gets a deadline
+ * timer that aborts its {@link NetworkHelper.RequestCall} if it is still queued or running
+ * when the deadline passes.
+ */
+final class RequestScheduler {
+
+    private static final int BOOKING_THREADS = 2;
+    private static final int QUOTE_THREADS = QuoteFanOut.MAX_CLASSES;
+    private static final int BACKGROUND_THREADS = 3;
+    private static final long IDLE_KEEP_ALIVE_S = 30;
+
+    private static RequestScheduler instance;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadPoolExecutor bookingLane = newLane("request-booking", BOOKING_THREADS);
+    private final ThreadPoolExecutor quoteLane = newLane("request-quote", QUOTE_THREADS);
+    private final ThreadPoolExecutor backgroundLane = newLane("request-background", BACKGROUND_THREADS);
+    private final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, daemon("request-deadlines"));
+
+    private RequestScheduler() {
+        deadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    static synchronized RequestScheduler getInstance() {
+        if (instance == null) {
+            instance = new RequestScheduler();
+        }
+        return instance;
+    }
+
+    void submit(RequestPriority priority, NetworkHelper.RequestCall call, Runnable work) {
+        call.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(priority.deadlineMs));
+        ScheduledFuture<?> timer = deadlines.schedule(call::expire, priority.deadlineMs, TimeUnit.MILLISECONDS);
+        Task task = new Task(priority, sequence.getAndIncrement(), () -> {
+            try {
+                work.run();
+            } finally {
+                timer.cancel(false);
+            }
+        });
+        laneFor(priority).execute(task);
+    }
+
+    private ThreadPoolExecutor laneFor(RequestPriority priority) {
+        if (priority.background) {
+            return backgroundLane;
+        }
+        return priority == RequestPriority.QUOTE ? quoteLane : bookingLane;
+    }
+
+    private static ThreadPoolExecutor newLane(String name, int threads) {
+        ThreadPoolExecutor lane = new ThreadPoolExecutor(threads, threads, IDLE_KEEP_ALIVE_S, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(), daemon(name));
+        lane.allowCoreThreadTimeOut(true);
+        return lane;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Task implements Runnable, Comparable<Task> {
+        private final RequestPriority priority;
+        private final long sequence;
+        private final Runnable work;
+
+        Task(RequestPriority priority, long sequence, Runnable work) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            work.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.maplocator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link HttpTransport} decorator that protects the booking API and the user from each other.
+ * Per endpoint it keeps a {@link CircuitBreaker}, which refuses calls during an outage, and per
+ * endpoint and {@link RequestPriority} a {@link LatencyTracker}, from which it derives:
+ * <ul>
+ *     <li>an adaptive timeout of {@link #TIMEOUT_P99_FACTOR} times the observed p99, so a hung
+ *     call fails in seconds rather than after the fixed 15 s;</li>
+ *     <li>a hedge delay equal to the observed p95. Quotes and polls that have not been answered
+ *     by then get a second, identical request, and the first answer wins.</li>
+ * </ul>
+ * Hedges are paid for from a budget that grows by {@link #HEDGE_BUDGET_PER_CALL} per call, so
+ * they add at most about 10% load, and none are sent while the circuit is not closed or while
+ * all {@link #MAX_ATTEMPT_THREADS} attempt threads are busy.
+ * Cancellations always go out, even through an open circuit. Calls that are canceled, or that
+ * run out of deadline after waiting in {@link RequestScheduler}, say nothing about the endpoint
+ * and do not count against its circuit.
+ */
+final class ResilientTransport implements HttpTransport {
+
+    private static final int TIMEOUT_P99_FACTOR = 4;
+    private static final int MIN_TIMEOUT_MS = 3000;
+    private static final long MIN_HEDGE_DELAY_MS = 50;
+    private static final double HEDGE_BUDGET_PER_CALL = 0.1;
+    private static final double MAX_HEDGE_BUDGET = 10;
+    /** Two attempts for every request worker in {@link RequestScheduler}, with room to spare. */
+    private static final int MAX_ATTEMPT_THREADS = 12;
+    private static final long ATTEMPT_KEEP_ALIVE_S = 30;
+
+    /**
+     * Latency is tracked per priority because a poll, a quote and a confirmation to the same URL
+     * do different amounts of work on the server and wait in different queues on the client.
+     */
+    private static final class Endpoint {
+        final CircuitBreaker breaker = new CircuitBreaker();
+        final LatencyTracker[] latency = new LatencyTracker[RequestPriority.values().length];
+
+        Endpoint() {
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new LatencyTracker();
+            }
+        }
+
+        LatencyTracker latency(RequestPriority priority) {
+            return latency[priority.ordinal()];
+        }
+    }
+
+    private final HttpTransport delegate;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ThreadPoolExecutor attempts = new ThreadPoolExecutor(MAX_ATTEMPT_THREADS, MAX_ATTEMPT_THREADS,
+        ATTEMPT_KEEP_ALIVE_S, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "request-hedge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    private double hedgeBudget = MAX_HEDGE_BUDGET;
+
+    ResilientTransport(HttpTransport delegate) {
+        this.delegate = delegate;
+        attempts.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public Reply execute(String method, String url, String body, RequestPriority priority,
+                         NetworkHelper.RequestCall call, int maxResponseChars, int timeoutMs) throws IOException {
+        Endpoint endpoint = endpoint(url);
+        LatencyTracker latency = endpoint.latency(priority);
+        earnHedge();
+        if (priority != RequestPriority.CANCEL && !endpoint.breaker.allowRequest()) {
+            throw new IOException("Service unavailable (circuit open)");
+        }
+
+        long p99 = latency.percentile(0.99);
+        int ownTimeout = p99 < 0 ? NetworkHelper.TIMEOUT_MS
+            : (int) Math.min(NetworkHelper.TIMEOUT_MS, Math.max(MIN_TIMEOUT_MS, TIMEOUT_P99_FACTOR * p99));
+        int timeout = Math.min(timeoutMs, ownTimeout);
+        // Less time than the endpoint would get on its own means the rest went on waiting in the queue.
+        boolean queueLimited = timeoutMs < ownTimeout;
+        long p95 = latency.percentile(0.95);
+        boolean hedgeable = (priority == RequestPriority.QUOTE || priority == RequestPriority.POLL) && p95 >= 0;
+
+        long start = System.nanoTime();
+        try {
+            Reply reply = hedgeable
+                ? executeHedged(method, url, body, priority, call, maxResponseChars, timeout,
+                    Math.max(MIN_HEDGE_DELAY_MS, p95), endpoint)
+                : delegate.execute(method, url, body, priority, call, maxResponseChars, timeout);
+            if (isServerFailure(reply.code)) {
+                endpoint.breaker.onFailure();
+            } else {
+                endpoint.breaker.onSuccess();
+                latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            return reply;
+        } catch (IOException e) {
+            if ((call != null && call.isAborted()) || (queueLimited && e instanceof InterruptedIOException)) {
+                endpoint.breaker.onAbandoned();
+            } else {
+                endpoint.breaker.onFailure();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int head(String url, int timeoutMs) {
+        return delegate.head(url, timeoutMs);
+    }
+
+    private Reply executeHedged(String method, String url, String body, RequestPriority priority,
+                                NetworkHelper.RequestCall call, int maxResponseChars, int timeoutMs,
+                                long hedgeDelayMs, Endpoint endpoint) throws IOException {
+        BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+        NetworkHelper.RequestCall primary = new NetworkHelper.RequestCall();
+        NetworkHelper.RequestCall backup = new NetworkHelper.RequestCall();
+        if (call != null) {
+            call.attach(() -> {
+                primary.cancel();
+                backup.cancel();
+            });
+        }
+
+        try {
+            startAttempt(method, url, body, priority, primary, maxResponseChars, timeoutMs, outcomes);
+            int pending = 1;
+            Object outcome = outcomes.poll(hedgeDelayMs, TimeUnit.MILLISECONDS);
+            if (outcome == null && endpoint.breaker.getState() == CircuitBreaker.State.CLOSED
+                && attempts.getActiveCount() < MAX_ATTEMPT_THREADS && spendHedge()) {
+                startAttempt(method, url, body, priority, backup, maxResponseChars, timeoutMs, outcomes);
+                pending++;
+            }
+
+            IOException failure = null;
+            Reply fallbackReply = null;
+            while (pending > 0) {
+                if (outcome == null) {
+                    outcome = outcomes.take();
+                }
+                pending--;
+                if (outcome instanceof Reply) {
+                    Reply reply = (Reply) outcome;
+                    if (!isServerFailure(reply.code)) {
+                        return reply;
+                    }
+                    fallbackReply = reply;
+                } else {
+                    failure = (IOException) outcome;
+                }
+                outcome = null;
+            }
+            if (fallbackReply != null) {
+                return fallbackReply;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a reply");
+        } finally {
+            primary.cancel();
+            backup.cancel();
+            if (call != null) {
+                call.detach();
+            }
+        }
+    }
+
+    private void startAttempt(String method, String url, String body, RequestPriority priority,
+                              NetworkHelper.RequestCall attempt, int maxResponseChars, int timeoutMs,
+                              BlockingQueue<Object> outcomes) {
+        attempts.execute(() -> {
+            try {
+                outcomes.add(delegate.execute(method, url, body, priority, attempt, maxResponseChars, timeoutMs));
+            } catch (IOException e) {
+                outcomes.add(e);
+            } catch (RuntimeException e) {
+                outcomes.add(new IOException(e));
+            }
+        });
+    }
+
+    private synchronized void earnHedge() {
+        hedgeBudget = Math.min(MAX_HEDGE_BUDGET, hedgeBudget + HEDGE_BUDGET_PER_CALL);
+    }
+
+    private synchronized boolean spendHedge() {
+        if (hedgeBudget < 1) {
+            return false;
+        }
+        hedgeBudget -= 1;
+        return true;
+    }
+
+    private Endpoint endpoint(String url) {
+        int query = url.indexOf('?');
+        String key = query >= 0 ? url.substring(0, query) : url;
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = new Endpoint();
+            Endpoint existing = endpoints.putIfAbsent(key, endpoint);
+            if (existing != null) {
+                endpoint = existing;
+            }
+        }
+        return endpoint;
+    }
+
+    private static boolean isServerFailure(int code) {
+        return code >= 500 || code == 429;
+    }
+}
@@ -0,0 +1,500 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Road graph for the service area, memory-mapped from the {@link #ASSET_NAME} asset that
+ * {@code RoadGraphBuilder} writes, with A* routing guided by landmarks (ALT). Layout
+ * (big-endian):
+ * <pre>
+ *   header     magic, nodeCount, edgeCount, landmarkCount, flags    5 x int
+ *   nodes      latE6, lngE6                                         nodeCount x 8 bytes
+ *   firstEdge  index of each node's first outgoing edge             (nodeCount + 1) x int
+ *   edges      target, lengthM, cost (deciseconds)                  edgeCount x 12 bytes
+ *   landmarks  cost from landmark, cost to landmark, per node       landmarkCount x nodeCount x 8 bytes
+ * </pre>
+ * The edges form a compressed sparse row (CSR) table grouped by source node. For any landmark L,
+ * the triangle inequality bounds the remaining cost from v to t below by
+ * {@code d(L,t) - d(L,v)} and by {@code d(v,L) - d(t,L)}. The largest of these bounds is an
+ * admissible heuristic that is far tighter than straight-line distance on a street network.
+ * {@link #FLAG_SURVEYED} marks a graph built from a road extract rather than the synthetic
+ * development grid; only such a graph may be shown to the user or snapped to.
+ *
+ * <p>Search state is kept in arrays sized to the graph and reset by a generation stamp, so a
+ * query allocates only its result. {@link #route} is synchronized; run it off the main thread.</p>
+ *
+ * <p>For map matching, {@link #edgesNear} finds road segments around a point through a grid of
+ * {@link #CELL_METERS} cells built on first use; the cost per call depends on local road
+ * density, not on the size of the graph.</p>
+ */
+final class RoadGraph {
+
+    static final String ASSET_NAME = "roads.graph";
+    static final int MAGIC = 0x52475232;
+    static final int HEADER_BYTES = 20;
+    static final int FLAG_SURVEYED = 1;
+    static final int NODE_BYTES = 8;
+    static final int EDGE_BYTES = 12;
+    static final int LANDMARK_BYTES = 8;
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** Points further than this from the nearest node are outside the service area. */
+    private static final double MAX_SNAP_M = 1000;
+    /** Speed assumed for the straight legs between the chosen points and the graph. */
+    private static final double SNAP_SPEED_MPS = 30 / 3.6;
+    private static final double CELL_METERS = 150;
+    private static final int MAX_CELLS = 1 << 20;
+
+    static final class Route {
+        final double distanceMeters;
+        final double durationSeconds;
+        /** Latitude/longitude pairs from start to destination. */
+        final double[] path;
+        final int settledNodes;
+
+        Route(double distanceMeters, double durationSeconds, double[] path, int settledNodes) {
+            this.distanceMeters = distanceMeters;
+            this.durationSeconds = durationSeconds;
+            this.path = path;
+            this.settledNodes = settledNodes;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int landmarkCount;
+    private final boolean surveyed;
+    private final int nodesAt;
+    private final int firstEdgeAt;
+    private final int edgesAt;
+    private final int landmarksAt;
+
+    private final int[] cost;
+    private final int[] parent;
+    private final int[] parentEdge;
+    private final int[] seen;
+    private final int[] closed;
+    private int[] heapNodes = new int[64];
+    private int[] heapKeys = new int[64];
+    private int heapSize;
+    private int stamp;
+
+    private volatile EdgeGrid edgeGrid;
+
+    /** Edge ids bucketed by the grid cells their bounding boxes touch, plus each edge's source node. */
+    private static final class EdgeGrid {
+        final double south;
+        final double west;
+        final double cellLat;
+        final double cellLng;
+        final int rows;
+        final int cols;
+        final int[] cellStart;
+        final int[] cellEdges;
+        final int[] edgeSource;
+
+        EdgeGrid(double south, double west, double cellLat, double cellLng, int rows, int cols,
+                 int[] cellStart, int[] cellEdges, int[] edgeSource) {
+            this.south = south;
+            this.west = west;
+            this.cellLat = cellLat;
+            this.cellLng = cellLng;
+            this.rows = rows;
+            this.cols = cols;
+            this.cellStart = cellStart;
+            this.cellEdges = cellEdges;
+            this.edgeSource = edgeSource;
+        }
+    }
+
+    RoadGraph(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a road graph");
+        }
+        nodeCount = buffer.getInt(4);
+        int edgeCount = buffer.getInt(8);
+        landmarkCount = buffer.getInt(12);
+        surveyed = (buffer.getInt(16) & FLAG_SURVEYED) != 0;
+        nodesAt = HEADER_BYTES;
+        firstEdgeAt = nodesAt + nodeCount * NODE_BYTES;
+        edgesAt = firstEdgeAt + (nodeCount + 1) * 4;
+        landmarksAt = edgesAt + edgeCount * EDGE_BYTES;
+        if (landmarksAt + (long) landmarkCount * nodeCount * LANDMARK_BYTES > buffer.capacity()) {
+            throw new IOException("Truncated road graph");
+        }
+
+        cost = new int[nodeCount];
+        parent = new int[nodeCount];
+        parentEdge = new int[nodeCount];
+        seen = new int[nodeCount];
+        closed = new int[nodeCount];
+    }
+
+    static RoadGraph open(Context context) throws IOException {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(ASSET_NAME);
+             FileInputStream in = descriptor.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            return new RoadGraph(channel.map(FileChannel.MapMode.READ_ONLY,
+                descriptor.getStartOffset(), descriptor.getLength()));
+        }
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** True for a graph built from a road extract, false for the synthetic development grid. */
+    boolean isSurveyed() {
+        return surveyed;
+    }
+
+    /** Returns the fastest route between two points, or null if either is off the graph or no route exists. */
+    synchronized Route route(double fromLat, double fromLng, double toLat, double toLng) {
+        int source = nearestNode(fromLat, fromLng);
+        int target = nearestNode(toLat, toLng);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+
+        nextStamp();
+        heapSize = 0;
+        seen[source] = stamp;
+        cost[source] = 0;
+        parent[source] = -1;
+        push(source, heuristic(source, target));
+
+        int settled = 0;
+        boolean found = false;
+        while (heapSize > 0) {
+            int node = pop();
+            if (closed[node] == stamp) {
+                continue;
+            }
+            closed[node] = stamp;
+            settled++;
+            if (node == target) {
+                found = true;
+                break;
+            }
+
+            int base = cost[node];
+            int end = buffer.getInt(firstEdgeAt + (node + 1) * 4);
+            for (int edge = buffer.getInt(firstEdgeAt + node * 4); edge < end; edge++) {
+                int at = edgesAt + edge * EDGE_BYTES;
+                int next = buffer.getInt(at);
+                int nextCost = base + buffer.getInt(at + 8);
+                if (closed[next] == stamp || (seen[next] == stamp && nextCost >= cost[next])) {
+                    continue;
+                }
+                seen[next] = stamp;
+                cost[next] = nextCost;
+                parent[next] = node;
+                parentEdge[next] = edge;
+                push(next, nextCost + heuristic(next, target));
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        int hops = 0;
+        double meters = 0;
+        for (int node = target; parent[node] >= 0; node = parent[node]) {
+            meters += buffer.getInt(edgesAt + parentEdge[node] * EDGE_BYTES + 4);
+            hops++;
+        }
+
+        double[] path = new double[(hops + 3) * 2];
+        path[0] = fromLat;
+        path[1] = fromLng;
+        int index = hops;
+        for (int node = target; node >= 0; node = parent[node], index--) {
+            path[2 + index * 2] = latitude(node);
+            path[3 + index * 2] = longitude(node);
+        }
+        path[path.length - 2] = toLat;
+        path[path.length - 1] = toLng;
+
+        double snapMeters = GeoMath.equirectangularMeters(fromLat, fromLng, latitude(source), longitude(source))
+            + GeoMath.equirectangularMeters(toLat, toLng, latitude(target), longitude(target));
+        return new Route(meters + snapMeters, cost[target] / 10.0 + snapMeters / SNAP_SPEED_MPS, path, settled);
+    }
+
+    /**
+     * Writes up to {@code edges.length} distinct road segments within {@code radiusMeters} of
+     * the point into {@code edges}, nearest first, with their distances in {@code meters}, and
+     * returns how many were found. A two-way street counts once, by whichever direction is
+     * found first. Thread-safe and allocation-free after the first call.
+     */
+    int edgesNear(double lat, double lng, double radiusMeters, int[] edges, double[] meters) {
+        EdgeGrid grid = edgeGrid();
+        int row = (int) Math.floor((lat - grid.south) / grid.cellLat);
+        int col = (int) Math.floor((lng - grid.west) / grid.cellLng);
+        int reach = (int) Math.ceil(radiusMeters / CELL_METERS);
+        int found = 0;
+        for (int r = Math.max(0, row - reach); r <= Math.min(grid.rows - 1, row + reach); r++) {
+            for (int c = Math.max(0, col - reach); c <= Math.min(grid.cols - 1, col + reach); c++) {
+                int cell = r * grid.cols + c;
+                for (int i = grid.cellStart[cell]; i < grid.cellStart[cell + 1]; i++) {
+                    int edge = grid.cellEdges[i];
+                    double distance = distanceToEdge(edge, lat, lng);
+                    if (distance > radiusMeters || containsEdge(edges, found, edge, grid.edgeSource)) {
+                        continue;
+                    }
+                    if (found == edges.length) {
+                        if (distance >= meters[found - 1]) {
+                            continue;
+                        }
+                        found--;
+                    }
+                    int at = found++;
+                    while (at > 0 && meters[at - 1] > distance) {
+                        edges[at] = edges[at - 1];
+                        meters[at] = meters[at - 1];
+                        at--;
+                    }
+                    edges[at] = edge;
+                    meters[at] = distance;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Writes the point on {@code edge} nearest to the given one as latitude and longitude into {@code out}. */
+    void projectOntoEdge(int edge, double lat, double lng, double[] out) {
+        int from = edgeGrid().edgeSource[edge];
+        int to = edgeTarget(edge);
+        double t = projection(from, to, lat, lng);
+        out[0] = latitude(from) + t * (latitude(to) - latitude(from));
+        out[1] = longitude(from) + t * (longitude(to) - longitude(from));
+    }
+
+    int edgeSource(int edge) {
+        return edgeGrid().edgeSource[edge];
+    }
+
+    int edgeTarget(int edge) {
+        return buffer.getInt(edgesAt + edge * EDGE_BYTES);
+    }
+
+    private double distanceToEdge(int edge, double lat, double lng) {
+        int from = edgeGrid().edgeSource[edge];
+        int to = edgeTarget(edge);
+        double t = projection(from, to, lat, lng);
+        double pointLat = latitude(from) + t * (latitude(to) - latitude(from));
+        double pointLng = longitude(from) + t * (longitude(to) - longitude(from));
+        return GeoMath.equirectangularMeters(lat, lng, pointLat, pointLng);
+    }
+
+    /** Fraction along from-&gt;to of the projection of the point, clamped to the segment, in a local flat frame. */
+    private double projection(int from, int to, double lat, double lng) {
+        double scale = Math.cos(Math.toRadians(lat));
+        double ax = longitude(from) * scale;
+        double ay = latitude(from);
+        double dx = longitude(to) * scale - ax;
+        double dy = latitude(to) - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        double t = ((lng * scale - ax) * dx + (lat - ay) * dy) / lengthSquared;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    private boolean containsEdge(int[] edges, int count, int edge, int[] edgeSource) {
+        int from = edgeSource[edge];
+        int to = edgeTarget(edge);
+        for (int i = 0; i < count; i++) {
+            int other = edges[i];
+            int otherFrom = edgeSource[other];
+            int otherTo = edgeTarget(other);
+            if ((otherFrom == from && otherTo == to) || (otherFrom == to && otherTo == from)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private EdgeGrid edgeGrid() {
+        EdgeGrid grid = edgeGrid;
+        if (grid == null) {
+            synchronized (this) {
+                grid = edgeGrid;
+                if (grid == null) {
+                    grid = buildEdgeGrid();
+                    edgeGrid = grid;
+                }
+            }
+        }
+        return grid;
+    }
+
+    private EdgeGrid buildEdgeGrid() {
+        double south = Double.MAX_VALUE;
+        double west = Double.MAX_VALUE;
+        double north = -Double.MAX_VALUE;
+        double east = -Double.MAX_VALUE;
+        for (int node = 0; node < nodeCount; node++) {
+            south = Math.min(south, latitude(node));
+            north = Math.max(north, latitude(node));
+            west = Math.min(west, longitude(node));
+            east = Math.max(east, longitude(node));
+        }
+
+        double cellMeters = CELL_METERS;
+        double metersPerLat = GeoMath.EARTH_RADIUS_M * Math.PI / 180;
+        double metersPerLng = metersPerLat * Math.cos(Math.toRadians((south + north) / 2));
+        int rows;
+        int cols;
+        while (true) {
+            rows = (int) ((north - south) * metersPerLat / cellMeters) + 1;
+            cols = (int) ((east - west) * metersPerLng / cellMeters) + 1;
+            if ((long) rows * cols <= MAX_CELLS) {
+                break;
+            }
+            cellMeters *= 2;
+        }
+        double cellLat = cellMeters / metersPerLat;
+        double cellLng = cellMeters / metersPerLng;
+
+        int edgeCount = buffer.getInt(firstEdgeAt + nodeCount * 4);
+        int[] edgeSource = new int[edgeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int end = buffer.getInt(firstEdgeAt + (node + 1) * 4);
+            for (int edge = buffer.getInt(firstEdgeAt + node * 4); edge < end; edge++) {
+                edgeSource[edge] = node;
+            }
+        }
+
+        int[] cellStart = new int[rows * cols + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] cellEdges = pass == 0 ? null : new int[cellStart[rows * cols]];
+            int[] fill = pass == 0 ? null : Arrays.copyOf(cellStart, rows * cols);
+            for (int edge = 0; edge < edgeCount; edge++) {
+                int from = edgeSource[edge];
+                int to = edgeTarget(edge);
+                int r0 = (int) ((Math.min(latitude(from), latitude(to)) - south) / cellLat);
+                int r1 = (int) ((Math.max(latitude(from), latitude(to)) - south) / cellLat);
+                int c0 = (int) ((Math.min(longitude(from), longitude(to)) - west) / cellLng);
+                int c1 = (int) ((Math.max(longitude(from), longitude(to)) - west) / cellLng);
+                for (int r = r0; r <= r1; r++) {
+                    for (int c = c0; c <= c1; c++) {
+                        if (pass == 0) {
+                            cellStart[r * cols + c + 1]++;
+                        } else {
+                            cellEdges[fill[r * cols + c]++] = edge;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int i = 0; i < rows * cols; i++) {
+                    cellStart[i + 1] += cellStart[i];
+                }
+            } else {
+                return new EdgeGrid(south, west, cellLat, cellLng, rows, cols, cellStart, cellEdges, edgeSource);
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private int nearestNode(double lat, double lng) {
+        int best = -1;
+        double bestMeters = MAX_SNAP_M;
+        for (int node = 0; node < nodeCount; node++) {
+            double meters = GeoMath.equirectangularMeters(lat, lng, latitude(node), longitude(node));
+            if (meters < bestMeters) {
+                bestMeters = meters;
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private int heuristic(int node, int target) {
+        int best = 0;
+        for (int landmark = 0; landmark < landmarkCount; landmark++) {
+            int row = landmarksAt + landmark * nodeCount * LANDMARK_BYTES;
+            int fromNode = buffer.getInt(row + node * LANDMARK_BYTES);
+            int fromTarget = buffer.getInt(row + target * LANDMARK_BYTES);
+            if (fromNode != UNREACHABLE && fromTarget != UNREACHABLE) {
+                best = Math.max(best, fromTarget - fromNode);
+            }
+            int toNode = buffer.getInt(row + node * LANDMARK_BYTES + 4);
+            int toTarget = buffer.getInt(row + target * LANDMARK_BYTES + 4);
+            if (toNode != UNREACHABLE && toTarget != UNREACHABLE) {
+                best = Math.max(best, toNode - toTarget);
+            }
+        }
+        return best;
+    }
+
+    private double latitude(int node) {
+        return buffer.getInt(nodesAt + node * NODE_BYTES) / 1e6;
+    }
+
+    private double longitude(int node) {
+        return buffer.getInt(nodesAt + node * NODE_BYTES + 4) / 1e6;
+    }
+
+    private void nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            stamp = 1;
+        }
+    }
+
+    private void push(int node, int key) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int at = heapSize++;
+        while (at > 0) {
+            int up = (at - 1) >>> 1;
+            if (heapKeys[up] <= key) {
+                break;
+            }
+            heapNodes[at] = heapNodes[up];
+            heapKeys[at] = heapKeys[up];
+            at = up;
+        }
+        heapNodes[at] = node;
+        heapKeys[at] = key;
+    }
+
+    private int pop() {
+        int top = heapNodes[0];
+        int node = heapNodes[--heapSize];
+        int key = heapKeys[heapSize];
+        int at = 0;
+        while (true) {
+            int child = at * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (heapKeys[child] >= key) {
+                break;
+            }
+            heapNodes[at] = heapNodes[child];
+            heapKeys[at] = heapKeys[child];
+            at = child;
+        }
+        heapNodes[at] = node;
+        heapKeys[at] = key;
+        return top;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.maplocator;
+
+import android.content.Context;
+
+import org.osmdroid.tileprovider.IRegisterReceiver;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.MapTileProviderBase;
+import org.osmdroid.tileprovider.MapTileProviderBasic;
+import org.osmdroid.tileprovider.modules.IArchiveFile;
+import org.osmdroid.tileprovider.modules.MapTileDownloader;
+import org.osmdroid.tileprovider.modules.MapTileFileArchiveProvider;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.modules.MapTileSqlCacheProvider;
+import org.osmdroid.tileprovider.modules.NetworkAvailabliltyCheck;
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
+
+import java.io.File;
+
+/**
+ * Builds the map's tile provider for each {@link Mode}. Offline reads only the local
+ * {@link MbTilesArchive}; hybrid tries the archive first and falls back to the on-disk tile
+ * cache and then the network for tiles outside it; online is osmdroid's default provider.
+ */
+final class TileModes {
+
+    enum Mode {
+        ONLINE,
+        OFFLINE,
+        HYBRID
+    }
+
+    private TileModes() {
+    }
+
+    /**
+     * Where the service-area archive is expected. App-specific external storage needs no
+     * permission, so a fleet image or {@code adb push} can drop the file in place.
+     */
+    static File archiveFile(Context context) {
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+        return new File(new File(directory, "tiles"), MbTilesArchive.FILE_NAME);
+    }
+
+    static Mode parse(String name) {
+        if (name != null) {
+            for (Mode mode : Mode.values()) {
+                if (mode.name().equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return Mode.ONLINE;
+    }
+
+    /** {@code archive} may only be null for {@link Mode#ONLINE}. */
+    static MapTileProviderBase createProvider(Context context, Mode mode, MbTilesArchive archive) {
+        ITileSource source = TileSourceFactory.MAPNIK;
+        if (mode == Mode.ONLINE) {
+            return new MapTileProviderBasic(context.getApplicationContext(), source);
+        }
+
+        IRegisterReceiver receiver = new SimpleRegisterReceiver(context.getApplicationContext());
+        MapTileModuleProviderBase local = new MapTileFileArchiveProvider(receiver, source, new IArchiveFile[] {archive});
+        MapTileModuleProviderBase[] modules;
+        if (mode == Mode.OFFLINE) {
+            modules = new MapTileModuleProviderBase[] {local};
+        } else {
+            modules = new MapTileModuleProviderBase[] {
+                local,
+                new MapTileSqlCacheProvider(receiver, source),
+                new MapTileDownloader(source, new SqlTileWriter(), new NetworkAvailabliltyCheck(context.getApplicationContext()))
+            };
+        }
+        return new MapTileProviderArray(source, receiver, modules);
+    }
+}
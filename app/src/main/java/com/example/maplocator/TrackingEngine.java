@@ -0,0 +1,219 @@
+package com.example.maplocator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide driver polling loop.
+ *
+ * <p>Threading contract: session state (tracking id, error counter, scheduled poll) is owned
+ * by a single long-lived "tracking" thread and is only ever touched from it. The one
+ * exception is the in-flight request: it is set and cleared on the tracking thread, but
+ * {@link #stop()} cancels and clears it right away on the caller's thread, so it is
+ * volatile. The HTTP call itself runs on a {@link RequestScheduler} worker, which delivers
+ * its result back onto the tracking thread; a scheduled poll is skipped while the previous
+ * one is still in flight, so polls never overlap. Other public methods may be called from
+ * any thread and hand their work to the tracking thread. The listener is set and called
+ * back on the main thread only; in practice it is {@link TrackingService}, which owns the
+ * loop.</p>
+ */
+public final class TrackingEngine {
+
+    public interface Listener {
+        void onDriverResponse(String response);
+
+        void onPollError(String error, int consecutiveErrors);
+
+        void onPollingStateChanged(boolean active);
+    }
+
+    private static final long DEFAULT_INTERVAL_MS = 8000;
+
+    private static TrackingEngine instance;
+
+    private final ScheduledExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Listener listener;
+
+    private volatile String apiUrl;
+    private volatile String trackingId;
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+    private long batchWindowMs;
+    private long lastPollAt;
+    private int consecutiveErrors;
+    private ScheduledFuture<?> pollFuture;
+    private volatile NetworkHelper.Call inFlight;
+
+    private TrackingEngine() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tracking-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized TrackingEngine getInstance() {
+        if (instance == null) {
+            instance = new TrackingEngine();
+        }
+        return instance;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isTracking(String id) {
+        String current = trackingId;
+        return current != null && current.equals(id);
+    }
+
+    public void start(String apiUrl, String trackingId, boolean immediate) {
+        executor.execute(() -> {
+            if (trackingId.equals(this.trackingId) && apiUrl.equals(this.apiUrl)) {
+                return;
+            }
+
+            cancelScheduledPoll();
+            this.apiUrl = apiUrl;
+            this.trackingId = trackingId;
+            consecutiveErrors = 0;
+            lastPollAt = 0;
+
+            schedulePoll(immediate ? 0 : intervalMs);
+            notifyPollingState(true);
+        });
+    }
+
+    public void stop() {
+        cancelInFlight();
+        executor.execute(() -> {
+            boolean wasActive = trackingId != null;
+            cancelScheduledPoll();
+            apiUrl = null;
+            trackingId = null;
+            consecutiveErrors = 0;
+            if (wasActive) {
+                notifyPollingState(false);
+            }
+        });
+    }
+
+    public void setIntervalMs(long intervalMs) {
+        executor.execute(() -> {
+            if (this.intervalMs == intervalMs) {
+                return;
+            }
+
+            this.intervalMs = intervalMs;
+            if (trackingId == null || pollFuture == null) {
+                return;
+            }
+
+            pollFuture.cancel(false);
+            long sinceLastPoll = SystemClock.elapsedRealtime() - lastPollAt;
+            schedulePoll(Math.max(0, intervalMs - sinceLastPoll));
+        });
+    }
+
+    /**
+     * Lets {@link #onNetworkActive()} run a poll early if it is due within {@code windowMs},
+     * so it shares a radio wake-up with other traffic; 0 turns batching off.
+     */
+    public void setBatchWindowMs(long windowMs) {
+        executor.execute(() -> batchWindowMs = windowMs);
+    }
+
+    /** Called when the radio is already up; polls now if the next poll falls in the batch window. */
+    public void onNetworkActive() {
+        executor.execute(() -> {
+            if (batchWindowMs <= 0 || trackingId == null || pollFuture == null || inFlight != null) {
+                return;
+            }
+
+            long sinceLastPoll = SystemClock.elapsedRealtime() - lastPollAt;
+            if (intervalMs - sinceLastPoll > batchWindowMs) {
+                return;
+            }
+
+            pollFuture.cancel(false);
+            poll();
+            schedulePoll(intervalMs);
+        });
+    }
+
+    private void schedulePoll(long delayMs) {
+        pollFuture = executor.scheduleWithFixedDelay(this::poll, delayMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledPoll() {
+        if (pollFuture != null) {
+            pollFuture.cancel(false);
+            pollFuture = null;
+        }
+
+        cancelInFlight();
+    }
+
+    private void cancelInFlight() {
+        NetworkHelper.Call call = inFlight;
+        if (call != null) {
+            call.cancel();
+            inFlight = null;
+        }
+    }
+
+    private void poll() {
+        String url = apiUrl;
+        String id = trackingId;
+        if (url == null || id == null || inFlight != null) {
+            return;
+        }
+
+        lastPollAt = SystemClock.elapsedRealtime();
+        inFlight = NetworkHelper.pollDriverPosition(url, id, executor, new NetworkHelper.NetworkCallback() {
+            @Override
+            public void onSuccess(String response) {
+                if (!id.equals(trackingId)) {
+                    return;
+                }
+                inFlight = null;
+                consecutiveErrors = 0;
+                mainHandler.post(() -> {
+                    if (listener != null) {
+                        listener.onDriverResponse(response);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                if (!id.equals(trackingId)) {
+                    return;
+                }
+                inFlight = null;
+                int errors = ++consecutiveErrors;
+                mainHandler.post(() -> {
+                    if (listener != null) {
+                        listener.onPollError(error, errors);
+                    }
+                });
+            }
+        });
+    }
+
+    private void notifyPollingState(boolean active) {
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onPollingStateChanged(active);
+            }
+        });
+    }
+}
@@ -0,0 +1,523 @@
+package com.example.maplocator;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Foreground service that owns the {@link TrackingEngine} loop while a booking is tracked.
+ *
+ * <p>The activity binds to it and attaches a {@link Client} for rendering. While the client
+ * is started, polling runs at the foreground cadence and every update is forwarded. Once the
+ * client stops, polling drops to a background cadence, only the latest update is kept for
+ * the client, and notification refreshes inside the throttle window are coalesced into one
+ * posted at its end. Arrival and the end of the trip are handled here so neither is missed.</p>
+ *
+ * <p>On low battery or in power save mode the background work is also batched: the cadence
+ * stretches further, a poll due within half an interval runs early whenever the system
+ * reports the radio already up for other traffic, and notification refreshes wait for a
+ * longer window.</p>
+ *
+ * <p>The trip's {@link Trajectory} also lives here rather than in the activity, so fixes polled
+ * while the screen is off are kept and the track survives the activity being recreated. Each
+ * fix goes through a {@link DriverFixPipeline} without map matching first, which drops
+ * outliers; the activity takes the track with {@link #takeTrajectory()} when the trip ends.</p>
+ *
+ * <p>Each fix also goes through a {@link GeofenceEngine} around the pickup and destination.
+ * Reaching the pickup radius raises the arrival alert straight away instead of waiting for the
+ * server's status. The phase also sets the cadence: quicker polls near a stop, slower ones
+ * while the driver waits at the pickup.</p>
+ */
+public class TrackingService extends Service implements TrackingEngine.Listener {
+
+    public interface Client {
+        void onDriverUpdate(DriverUpdate update);
+
+        void onPollError(String error, int consecutiveErrors);
+
+        void onPollingStateChanged(boolean active);
+
+        void onGeofenceTransition(GeofenceEngine.Phase phase);
+    }
+
+    private static final String ACTION_START = "com.example.maplocator.action.START_TRACKING";
+    private static final String ACTION_STOP = "com.example.maplocator.action.STOP_TRACKING";
+
+    private static final String EXTRA_API_URL = "apiUrl";
+    private static final String EXTRA_TRACKING_ID = "trackingId";
+    private static final String EXTRA_IMMEDIATE = "immediate";
+    private static final String EXTRA_START_LAT = "startLat";
+    private static final String EXTRA_START_LNG = "startLng";
+    private static final String EXTRA_DEST_LAT = "destLat";
+    private static final String EXTRA_DEST_LNG = "destLng";
+
+    private static final String CHANNEL_TRACKING = "tracking";
+    private static final String CHANNEL_ALERTS = "tracking_alerts";
+    private static final int NOTIFICATION_ID_TRACKING = 1001;
+    private static final int NOTIFICATION_ID_ALERT = 1002;
+
+    private static final long FOREGROUND_INTERVAL_MS = 8000;
+    private static final long BACKGROUND_INTERVAL_MS = 20000;
+    private static final long LOW_BATTERY_INTERVAL_MS = 45000;
+    private static final int LOW_BATTERY_PERCENT = 15;
+    private static final float LITE_CADENCE_FACTOR = 1.5f;
+    private static final float APPROACH_CADENCE_FACTOR = 0.4f;
+    private static final float WAITING_CADENCE_FACTOR = 2f;
+    private static final float BATCH_WINDOW_FRACTION = 0.5f;
+    private static final long NOTIFICATION_MIN_INTERVAL_MS = 15000;
+    private static final long BATCHED_NOTIFICATION_INTERVAL_MS = 60000;
+
+    public class LocalBinder extends Binder {
+        public TrackingService getService() {
+            return TrackingService.this;
+        }
+    }
+
+    private static volatile float timeScale = 1f;
+
+    private final LocalBinder binder = new LocalBinder();
+    private final TrackingEngine engine = TrackingEngine.getInstance();
+    private final LiteMode.Listener liteModeListener = enabled -> updateCadence();
+    private final ConnectivityManager.OnNetworkActiveListener networkActiveListener = engine::onNetworkActive;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable postPendingNotification = this::postPendingNotification;
+    private LiteMode liteMode;
+
+    private Client client;
+    private boolean clientVisible;
+
+    private boolean foreground;
+    private double startLat = Double.NaN;
+    private double startLng = Double.NaN;
+    private GeofenceEngine geofence;
+    private boolean arrivalAlerted;
+    private final DriverFixPipeline trackFilter = new DriverFixPipeline();
+    private final double[] trackFix = new double[2];
+    private Trajectory trajectory;
+
+    private DriverUpdate latestUpdate;
+    private boolean latestUpdatePending;
+    private boolean pollingActive;
+    private boolean batching;
+
+    private String lastNotificationText;
+    private long lastNotificationAt;
+    private String pendingNotificationText;
+
+    public static void start(Context context, String apiUrl, String trackingId, boolean immediate,
+                             double startLat, double startLng, double destLat, double destLng) {
+        Intent intent = new Intent(context, TrackingService.class);
+        intent.setAction(ACTION_START);
+        intent.putExtra(EXTRA_API_URL, apiUrl);
+        intent.putExtra(EXTRA_TRACKING_ID, trackingId);
+        intent.putExtra(EXTRA_IMMEDIATE, immediate);
+        intent.putExtra(EXTRA_START_LAT, startLat);
+        intent.putExtra(EXTRA_START_LNG, startLng);
+        intent.putExtra(EXTRA_DEST_LAT, destLat);
+        intent.putExtra(EXTRA_DEST_LNG, destLng);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    /**
+     * Speeds up the polling cadence by {@code scale}; used by trip replays run faster than
+     * real time.
+     */
+    static void setTimeScale(float scale) {
+        timeScale = scale > 0 ? scale : 1f;
+    }
+
+    public static void stop(Context context) {
+        Intent intent = new Intent(context, TrackingService.class);
+        intent.setAction(ACTION_STOP);
+        context.startService(intent);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        createNotificationChannels();
+        engine.setListener(this);
+        liteMode = LiteMode.getInstance(this);
+        liteMode.addListener(liteModeListener);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+
+        if (ACTION_START.equals(action)) {
+            String apiUrl = intent.getStringExtra(EXTRA_API_URL);
+            String trackingId = intent.getStringExtra(EXTRA_TRACKING_ID);
+            if (apiUrl == null || trackingId == null) {
+                stopTracking();
+                return START_NOT_STICKY;
+            }
+
+            startLat = intent.getDoubleExtra(EXTRA_START_LAT, Double.NaN);
+            startLng = intent.getDoubleExtra(EXTRA_START_LNG, Double.NaN);
+            if (!engine.isTracking(trackingId)) {
+                geofence = Double.isNaN(startLat) || Double.isNaN(startLng) ? null : new GeofenceEngine(startLat, startLng,
+                    intent.getDoubleExtra(EXTRA_DEST_LAT, Double.NaN), intent.getDoubleExtra(EXTRA_DEST_LNG, Double.NaN));
+                arrivalAlerted = false;
+                trackFilter.reset();
+                trajectory = new Trajectory();
+            } else if (trajectory == null) {
+                trajectory = new Trajectory();
+            }
+
+            NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            manager.cancel(NOTIFICATION_ID_ALERT);
+
+            startForeground(NOTIFICATION_ID_TRACKING, buildTrackingNotification(getString(R.string.status_searching_driver)));
+            foreground = true;
+
+            updateCadence();
+            engine.start(apiUrl, trackingId, intent.getBooleanExtra(EXTRA_IMMEDIATE, true));
+            return START_REDELIVER_INTENT;
+        }
+
+        if (ACTION_STOP.equals(action)) {
+            stopTracking();
+        }
+
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        engine.setListener(null);
+        engine.stop();
+        liteMode.removeListener(liteModeListener);
+        setBatching(false);
+        cancelPendingNotification();
+        super.onDestroy();
+    }
+
+    public void attach(LifecycleOwner owner, Client client) {
+        this.client = client;
+        owner.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_START) {
+                    setClientVisible(true);
+                } else if (event == Lifecycle.Event.ON_STOP) {
+                    setClientVisible(false);
+                } else if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                    if (TrackingService.this.client == client) {
+                        TrackingService.this.client = null;
+                        setClientVisible(false);
+                    }
+                }
+            }
+        });
+    }
+
+    /** Hands over the track of the current trip, or null once it has been taken. */
+    Trajectory takeTrajectory() {
+        Trajectory taken = trajectory;
+        trajectory = null;
+        return taken;
+    }
+
+    private void setClientVisible(boolean visible) {
+        clientVisible = visible;
+        updateCadence();
+
+        if (visible && client != null) {
+            client.onPollingStateChanged(pollingActive);
+            if (latestUpdatePending && latestUpdate != null) {
+                latestUpdatePending = false;
+                client.onDriverUpdate(latestUpdate);
+            }
+        }
+    }
+
+    private void updateCadence() {
+        boolean batch = !clientVisible && isBatteryConstrained();
+        long intervalMs;
+        if (clientVisible) {
+            intervalMs = scaleInterval(FOREGROUND_INTERVAL_MS);
+        } else if (batch) {
+            intervalMs = scaleInterval(LOW_BATTERY_INTERVAL_MS);
+        } else {
+            intervalMs = scaleInterval(BACKGROUND_INTERVAL_MS);
+        }
+        engine.setIntervalMs(intervalMs);
+        engine.setBatchWindowMs(batch ? (long) (intervalMs * BATCH_WINDOW_FRACTION) : 0);
+        setBatching(batch);
+    }
+
+    private void setBatching(boolean batch) {
+        if (batching == batch) {
+            return;
+        }
+
+        batching = batch;
+        ConnectivityManager connectivity = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+        if (connectivity != null) {
+            if (batch) {
+                connectivity.addDefaultNetworkActiveListener(networkActiveListener);
+            } else {
+                connectivity.removeDefaultNetworkActiveListener(networkActiveListener);
+            }
+        }
+        if (pendingNotificationText != null) {
+            schedulePendingNotification();
+        }
+    }
+
+    private long scaleInterval(long intervalMs) {
+        float factor = liteMode.isEnabled() ? LITE_CADENCE_FACTOR : 1f;
+        if (geofence != null) {
+            switch (geofence.getPhase()) {
+                case NEAR_PICKUP:
+                case NEAR_DESTINATION:
+                    factor *= APPROACH_CADENCE_FACTOR;
+                    break;
+                case AT_PICKUP:
+                    factor *= WAITING_CADENCE_FACTOR;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return Math.max(1, (long) (intervalMs * factor / timeScale));
+    }
+
+    private boolean isBatteryConstrained() {
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        if (powerManager != null && powerManager.isPowerSaveMode()) {
+            return true;
+        }
+
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+
+        if (battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return false;
+        }
+
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT;
+    }
+
+    @Override
+    public void onDriverResponse(String response) {
+        DriverUpdate update = DriverUpdate.parse(response);
+        if (update == null) {
+            onPollError(getString(R.string.error_invalid_driver_location), 0);
+            return;
+        }
+
+        latestUpdate = update;
+        if (trajectory != null && trackFilter.process(null, update.driverLat, update.driverLng,
+            SystemClock.elapsedRealtime(), trackFix)) {
+            trajectory.add(trackFix[0], trackFix[1], System.currentTimeMillis());
+        }
+
+        GeofenceEngine.Phase transition = geofence != null ? geofence.onFix(update.driverLat, update.driverLng) : null;
+        if (transition == GeofenceEngine.Phase.AT_PICKUP) {
+            postArrivalAlert(getString(R.string.notification_driver_arrived_text));
+        }
+
+        if (update.isArrival()) {
+            postArrivalAlert((update.status != null && !update.status.trim().isEmpty())
+                ? update.status : getString(R.string.notification_driver_arrived_text));
+        }
+        if (update.endsTrip()) {
+            stopTracking();
+        } else {
+            refreshTrackingNotification(update);
+            if (transition != null || !clientVisible) {
+                updateCadence();
+            }
+        }
+
+        if (transition != null && clientVisible && client != null) {
+            client.onGeofenceTransition(transition);
+        }
+
+        if (clientVisible && client != null) {
+            latestUpdatePending = false;
+            client.onDriverUpdate(update);
+        } else {
+            latestUpdatePending = true;
+        }
+    }
+
+    @Override
+    public void onPollError(String error, int consecutiveErrors) {
+        if (clientVisible && client != null) {
+            client.onPollError(error, consecutiveErrors);
+        }
+    }
+
+    @Override
+    public void onPollingStateChanged(boolean active) {
+        pollingActive = active;
+        if (clientVisible && client != null) {
+            client.onPollingStateChanged(active);
+        }
+    }
+
+    private void stopTracking() {
+        engine.stop();
+        setBatching(false);
+        cancelPendingNotification();
+        if (foreground) {
+            stopForeground(true);
+            foreground = false;
+        }
+        lastNotificationText = null;
+        stopSelf();
+    }
+
+    private void refreshTrackingNotification(DriverUpdate update) {
+        if (!foreground) {
+            return;
+        }
+
+        String text = buildTrackingText(update);
+        if (text.equals(lastNotificationText)) {
+            cancelPendingNotification();
+            return;
+        }
+
+        boolean scheduled = pendingNotificationText != null;
+        pendingNotificationText = text;
+        if (!scheduled) {
+            schedulePendingNotification();
+        }
+    }
+
+    private void schedulePendingNotification() {
+        long minIntervalMs = batching ? BATCHED_NOTIFICATION_INTERVAL_MS : NOTIFICATION_MIN_INTERVAL_MS;
+        long waitMs = lastNotificationAt + minIntervalMs - SystemClock.elapsedRealtime();
+        mainHandler.removeCallbacks(postPendingNotification);
+        if (waitMs > 0) {
+            mainHandler.postDelayed(postPendingNotification, waitMs);
+        } else {
+            postPendingNotification();
+        }
+    }
+
+    private void postPendingNotification() {
+        String text = pendingNotificationText;
+        pendingNotificationText = null;
+        if (!foreground || text == null) {
+            return;
+        }
+
+        lastNotificationText = text;
+        lastNotificationAt = SystemClock.elapsedRealtime();
+
+        NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        manager.notify(NOTIFICATION_ID_TRACKING, buildTrackingNotification(text));
+    }
+
+    private void cancelPendingNotification() {
+        mainHandler.removeCallbacks(postPendingNotification);
+        pendingNotificationText = null;
+    }
+
+    private String buildTrackingText(DriverUpdate update) {
+        String eta = (update.eta != null && !update.eta.trim().isEmpty())
+            ? update.eta : getString(R.string.not_available);
+
+        String distance = getString(R.string.not_available);
+        if (!Double.isNaN(startLat) && !Double.isNaN(startLng)) {
+            double meters = GeoMath.haversineMeters(startLat, startLng, update.driverLat, update.driverLng);
+            distance = Formatters.distance(this, (float) meters);
+        }
+
+        return getString(R.string.notification_tracking_text, eta, distance);
+    }
+
+    private void postArrivalAlert(String text) {
+        if (arrivalAlerted) {
+            return;
+        }
+        arrivalAlerted = true;
+
+        NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        manager.notify(NOTIFICATION_ID_ALERT, new NotificationCompat.Builder(this, CHANNEL_ALERTS)
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentTitle(getString(R.string.notification_driver_arrived_title))
+            .setContentText(text)
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setCategory(NotificationCompat.CATEGORY_EVENT)
+            .setAutoCancel(true)
+            .setContentIntent(buildContentIntent())
+            .build());
+    }
+
+    private android.app.Notification buildTrackingNotification(String text) {
+        return new NotificationCompat.Builder(this, CHANNEL_TRACKING)
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentTitle(getString(R.string.tracking_panel_title))
+            .setContentText(text)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .setShowWhen(false)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .setCategory(NotificationCompat.CATEGORY_NAVIGATION)
+            .setContentIntent(buildContentIntent())
+            .build();
+    }
+
+    private PendingIntent buildContentIntent() {
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return PendingIntent.getActivity(this, 0, intent, flags);
+    }
+
+    private void createNotificationChannels() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+
+        NotificationChannel tracking = new NotificationChannel(CHANNEL_TRACKING,
+            getString(R.string.notification_channel_tracking), NotificationManager.IMPORTANCE_LOW);
+        tracking.setShowBadge(false);
+        manager.createNotificationChannel(tracking);
+
+        NotificationChannel alerts = new NotificationChannel(CHANNEL_ALERTS,
+            getString(R.string.notification_channel_alerts), NotificationManager.IMPORTANCE_HIGH);
+        manager.createNotificationChannel(alerts);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.maplocator;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Captures every {@link NetworkHelper} exchange into a JSON-lines session file that
+ * {@link ReplaySession} can play back. Serialisation and disk writes happen on a dedicated
+ * writer thread so request threads only pay for queueing a task. Exchanges that finish after
+ * {@link #close()} are dropped.
+ */
+public final class TrafficRecorder implements NetworkHelper.ExchangeRecorder, Closeable {
+
+    private static final String TAG = "TrafficRecorder";
+
+    private final File file;
+    private final Writer writer;
+    private final long sessionStart = System.currentTimeMillis();
+    private final ExecutorService writerThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "traffic-recorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    private TrafficRecorder(File file) throws IOException {
+        this.file = file;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    public static TrafficRecorder open(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return new TrafficRecorder(new File(directory, "session-" + System.currentTimeMillis() + ".jsonl"));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void onExchange(String method, String url, String requestBody, int responseCode,
+                           String responseBody, String error, long startedAtMs, long durationMs) {
+        if (closed) {
+            return;
+        }
+        try {
+            record(method, url, requestBody, responseCode, responseBody, error, startedAtMs, durationMs);
+        } catch (RejectedExecutionException e) {
+            // Closed while this request was in flight.
+        }
+    }
+
+    private void record(String method, String url, String requestBody, int responseCode,
+                        String responseBody, String error, long startedAtMs, long durationMs) {
+        writerThread.execute(() -> {
+            try {
+                JSONObject line = new JSONObject();
+                line.put("t", startedAtMs - sessionStart);
+                line.put("d", durationMs);
+                line.put("method", method);
+                line.put("url", url);
+                line.put("request", requestBody);
+                line.put("code", responseCode);
+                line.put("response", responseBody);
+                line.put("error", error);
+                writer.write(line.toString());
+                writer.write('\n');
+                writer.flush();
+            } catch (Exception e) {
+                Log.e(TAG, "Could not record exchange", e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writerThread.execute(() -> {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not close " + file, e);
+            }
+        });
+        writerThread.shutdown();
+    }
+}
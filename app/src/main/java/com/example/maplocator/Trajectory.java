@@ -0,0 +1,118 @@
+package com.example.maplocator;
+
+import java.util.Arrays;
+
+/**
+ * Driver track of one trip, kept in the compact form it is stored in. Each point is written as
+ * zigzag varint deltas of latitude and longitude in 1e-6 degrees and of time in seconds, so a
+ * point on a moving trip costs four to six bytes. Points closer than {@link #MIN_SPACING_M} to
+ * the previous one are skipped unless {@link #MIN_INTERVAL_MS} has passed, and recording stops at
+ * {@link #MAX_POINTS}, which keeps the blob for one trip within a few tens of kilobytes.
+ */
+final class Trajectory {
+
+    private static final double MIN_SPACING_M = 15;
+    private static final long MIN_INTERVAL_MS = 30000;
+    private static final int MAX_POINTS = 4096;
+
+    private byte[] bytes = new byte[256];
+    private int length;
+    private int pointCount;
+    private int lastLatE6;
+    private int lastLngE6;
+    private long lastSeconds;
+    private double lastLat;
+    private double lastLng;
+    private long lastTimeMs;
+    private double lengthMeters;
+
+    /** Appends a fix taken at {@code timeMs} wall-clock time; returns false when it was skipped. */
+    boolean add(double lat, double lng, long timeMs) {
+        if (pointCount == MAX_POINTS) {
+            return false;
+        }
+        if (pointCount > 0) {
+            double moved = GeoMath.equirectangularMeters(lastLat, lastLng, lat, lng);
+            if (moved < MIN_SPACING_M && timeMs - lastTimeMs < MIN_INTERVAL_MS) {
+                return false;
+            }
+            lengthMeters += moved;
+        }
+
+        int latE6 = (int) Math.round(lat * 1e6);
+        int lngE6 = (int) Math.round(lng * 1e6);
+        long seconds = timeMs / 1000;
+        writeVarint(latE6 - lastLatE6);
+        writeVarint(lngE6 - lastLngE6);
+        writeVarint(seconds - lastSeconds);
+        lastLatE6 = latE6;
+        lastLngE6 = lngE6;
+        lastSeconds = seconds;
+        lastLat = lat;
+        lastLng = lng;
+        lastTimeMs = timeMs;
+        pointCount++;
+        return true;
+    }
+
+    int getPointCount() {
+        return pointCount;
+    }
+
+    double getLengthMeters() {
+        return lengthMeters;
+    }
+
+    byte[] toBytes() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Expands an encoded track into {@code lat, lng} pairs, with the fix times in seconds in
+     * {@code times} when it is not null (it must then hold one entry per point).
+     */
+    static double[] decode(byte[] encoded, int pointCount, long[] times) {
+        double[] path = new double[pointCount * 2];
+        long latE6 = 0;
+        long lngE6 = 0;
+        long seconds = 0;
+        int[] position = {0};
+        for (int i = 0; i < pointCount && position[0] < encoded.length; i++) {
+            latE6 += readVarint(encoded, position);
+            lngE6 += readVarint(encoded, position);
+            seconds += readVarint(encoded, position);
+            path[i * 2] = latE6 / 1e6;
+            path[i * 2 + 1] = lngE6 / 1e6;
+            if (times != null) {
+                times[i] = seconds;
+            }
+        }
+        return path;
+    }
+
+    private void writeVarint(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        if (length + 10 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        while ((zigzag & ~0x7FL) != 0) {
+            bytes[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        bytes[length++] = (byte) zigzag;
+    }
+
+    private static long readVarint(byte[] encoded, int[] position) {
+        long zigzag = 0;
+        int shift = 0;
+        while (position[0] < encoded.length) {
+            byte b = encoded[position[0]++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.maplocator;
+
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Past trips, newest first. Pages come from {@link TripHistoryStore} as the list is scrolled
+ * towards its end, so only what has been scrolled past is ever in memory. The options menu
+ * narrows the list to one outcome.
+ */
+public class TripHistoryActivity extends AppCompatActivity {
+
+    private static final int MENU_ALL = 1;
+    private static final int MENU_COMPLETED = 2;
+    private static final int MENU_CANCELED = 3;
+    private static final int PREFETCH_ROWS = 10;
+
+    private TripHistoryStore store;
+    private final TripAdapter adapter = new TripAdapter();
+    private TextView tvEmpty;
+    private ProgressBar progressBar;
+
+    private TripHistoryStore.Outcome outcome;
+    private int generation;
+    private boolean loading;
+    private boolean exhausted;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_trip_history);
+        setTitle(R.string.trip_history_title);
+
+        store = TripHistoryStore.getInstance(this);
+        tvEmpty = findViewById(R.id.tvTripsEmpty);
+        progressBar = findViewById(R.id.pbTrips);
+        ListView list = findViewById(R.id.lvTrips);
+        list.setAdapter(adapter);
+        list.setOnItemClickListener((parent, view, position, id) -> showDetails(adapter.trips.get(position)));
+        list.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisible, int visibleCount, int totalCount) {
+                if (firstVisible + visibleCount >= totalCount - PREFETCH_ROWS) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        loadNextPage();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(1, MENU_ALL, Menu.NONE, R.string.trip_filter_all).setChecked(outcome == null);
+        menu.add(1, MENU_COMPLETED, Menu.NONE, R.string.trip_filter_completed)
+            .setChecked(outcome == TripHistoryStore.Outcome.COMPLETED);
+        menu.add(1, MENU_CANCELED, Menu.NONE, R.string.trip_filter_canceled)
+            .setChecked(outcome == TripHistoryStore.Outcome.CANCELED);
+        menu.setGroupCheckable(1, true, true);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case MENU_ALL:
+                setOutcome(null);
+                break;
+            case MENU_COMPLETED:
+                setOutcome(TripHistoryStore.Outcome.COMPLETED);
+                break;
+            case MENU_CANCELED:
+                setOutcome(TripHistoryStore.Outcome.CANCELED);
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        item.setChecked(true);
+        return true;
+    }
+
+    private void setOutcome(TripHistoryStore.Outcome outcome) {
+        if (outcome == this.outcome) {
+            return;
+        }
+        this.outcome = outcome;
+        generation++;
+        loading = false;
+        exhausted = false;
+        adapter.trips.clear();
+        adapter.notifyDataSetChanged();
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (loading || exhausted) {
+            return;
+        }
+
+        loading = true;
+        int requested = generation;
+        List<TripHistoryStore.Trip> trips = adapter.trips;
+        TripHistoryStore.Trip last = trips.isEmpty() ? null : trips.get(trips.size() - 1);
+        progressBar.setVisibility(trips.isEmpty() ? View.VISIBLE : View.GONE);
+        tvEmpty.setVisibility(View.GONE);
+        store.loadPage(outcome, last, page -> {
+            if (requested != generation || isFinishing()) {
+                return;
+            }
+
+            loading = false;
+            exhausted = page.size() < TripHistoryStore.PAGE_SIZE;
+            progressBar.setVisibility(View.GONE);
+            adapter.trips.addAll(page);
+            adapter.notifyDataSetChanged();
+            tvEmpty.setVisibility(adapter.trips.isEmpty() ? View.VISIBLE : View.GONE);
+        });
+    }
+
+    private void showDetails(TripHistoryStore.Trip trip) {
+        StringBuilder message = new StringBuilder(title(trip)).append('\n').append(subtitle(trip));
+        if (trip.driverName != null) {
+            message.append('\n').append(getString(R.string.trip_driver_line, trip.driverName,
+                trip.vehicle != null ? trip.vehicle : getString(R.string.not_available)));
+        }
+        if (trip.pointCount > 0) {
+            message.append('\n').append(getString(R.string.trip_track_line,
+                Formatters.distance(this, (float) trip.trackMeters), trip.pointCount));
+        }
+        String id = trip.bookingId != null ? trip.bookingId : trip.requestId;
+        if (id != null) {
+            message.append('\n').append(getString(R.string.request_id_line, id));
+        }
+
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.trip_details_title)
+            .setMessage(message.toString())
+            .setPositiveButton(R.string.close, (dialog, which) -> {
+            })
+            .show();
+    }
+
+    private String title(TripHistoryStore.Trip trip) {
+        String when = DateUtils.formatDateTime(this, trip.endedAt,
+            DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_MONTH);
+        String price = Double.isNaN(trip.price) ? getString(R.string.not_available) : Formatters.price(trip.price);
+        return getString(R.string.dot_separated_format, when, price);
+    }
+
+    private String subtitle(TripHistoryStore.Trip trip) {
+        int outcomeText;
+        switch (trip.outcome) {
+            case COMPLETED:
+                outcomeText = R.string.trip_outcome_completed;
+                break;
+            case CANCELED:
+                outcomeText = R.string.trip_outcome_canceled;
+                break;
+            default:
+                outcomeText = R.string.trip_outcome_unknown;
+                break;
+        }
+        String distance = Formatters.distance(this, (float) GeoMath.haversineMeters(
+            trip.startLat, trip.startLng, trip.destLat, trip.destLng));
+        String subtitle = getString(R.string.dot_separated_format, getString(outcomeText), distance);
+        return trip.vehicleClass != null ? getString(R.string.dot_separated_format, subtitle, trip.vehicleClass) : subtitle;
+    }
+
+    private final class TripAdapter extends BaseAdapter {
+        final List<TripHistoryStore.Trip> trips = new ArrayList<>();
+
+        @Override
+        public int getCount() {
+            return trips.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return trips.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return trips.get(position).id;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = convertView != null ? convertView
+                : LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_2, parent, false);
+            TripHistoryStore.Trip trip = trips.get(position);
+            ((TextView) view.findViewById(android.R.id.text1)).setText(title(trip));
+            ((TextView) view.findViewById(android.R.id.text2)).setText(subtitle(trip));
+            return view;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.maplocator;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finished trips in a local SQLite database. All database work runs on one background thread:
+ * {@link #record} only queues the trip, and queued trips are written together in a single
+ * transaction {@link #WRITE_DELAY_MS} later. Results of reads are posted to the main thread.
+ *
+ * <p>Pages are read with keyset pagination on {@code (ended_at, id)}, with an index for the
+ * unfiltered list and one per outcome, so fetching the next page costs the same on the tenth
+ * page as on the first and never scans the table. List rows leave out the trajectory blob,
+ * so a page stays small however long the trips were.</p>
+ */
+final class TripHistoryStore {
+
+    interface PageCallback {
+        /** {@code trips} is empty once there is nothing older to load. */
+        void onPage(List<Trip> trips);
+    }
+
+    enum Outcome {
+        COMPLETED,
+        CANCELED,
+        UNKNOWN
+    }
+
+    /**
+     * One history entry. Built by the booking screen when a trip ends and read back, without the
+     * trajectory, by the history screen.
+     */
+    static final class Trip {
+        long id;
+        String bookingId;
+        String requestId;
+        long startedAt;
+        long endedAt;
+        Outcome outcome = Outcome.UNKNOWN;
+        String finalStatus;
+        double price = Double.NaN;
+        String vehicleClass;
+        double startLat;
+        double startLng;
+        double destLat;
+        double destLng;
+        String driverName;
+        String vehicle;
+        double trackMeters;
+        int pointCount;
+        byte[] trajectory;
+    }
+
+    static final int PAGE_SIZE = 40;
+
+    private static final String TAG = "TripHistory";
+    private static final String DATABASE_NAME = "trips.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final long WRITE_DELAY_MS = 1000;
+
+    private static final String LIST_COLUMNS = "id, booking_id, request_id, started_at, ended_at, outcome, "
+        + "final_status, price, vehicle_class, start_lat, start_lng, dest_lat, dest_lng, driver_name, vehicle, "
+        + "track_meters, point_count";
+
+    private static TripHistoryStore instance;
+
+    private final Helper helper;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+    private List<Trip> pending = new ArrayList<>();
+    private boolean writeScheduled;
+
+    private TripHistoryStore(Context context) {
+        helper = new Helper(context);
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "trip-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static synchronized TripHistoryStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new TripHistoryStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Queues a finished trip; the caller must not touch it afterwards. */
+    void record(Trip trip) {
+        synchronized (lock) {
+            pending.add(trip);
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        executor.schedule(this::writePending, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes queued trips now instead of waiting for the batch delay, for example when the app goes away. */
+    void flush() {
+        executor.execute(this::writePending);
+    }
+
+    /**
+     * Loads the page of trips that ended before {@code after} (or the newest page when it is
+     * null), newest first; {@code outcome} null means all outcomes.
+     */
+    void loadPage(Outcome outcome, Trip after, PageCallback callback) {
+        long afterEndedAt = after != null ? after.endedAt : Long.MAX_VALUE;
+        long afterId = after != null ? after.id : Long.MAX_VALUE;
+        executor.execute(() -> {
+            List<Trip> trips = Collections.emptyList();
+            try {
+                trips = queryPage(outcome, afterEndedAt, afterId);
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Could not read trip history", e);
+            }
+            List<Trip> result = trips;
+            mainHandler.post(() -> callback.onPage(result));
+        });
+    }
+
+    private List<Trip> queryPage(Outcome outcome, long afterEndedAt, long afterId) {
+        // Same as (ended_at, id) < (?, ?), written so the index can range-scan on ended_at; row
+        // values need SQLite 3.15, which older devices lack.
+        String where = "ended_at <= ? AND (ended_at < ? OR id < ?)";
+        String[] args;
+        if (outcome != null) {
+            where = "outcome = ? AND " + where;
+            args = new String[] {String.valueOf(outcome.ordinal()), String.valueOf(afterEndedAt),
+                String.valueOf(afterEndedAt), String.valueOf(afterId)};
+        } else {
+            args = new String[] {String.valueOf(afterEndedAt), String.valueOf(afterEndedAt), String.valueOf(afterId)};
+        }
+
+        List<Trip> trips = new ArrayList<>(PAGE_SIZE);
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery("SELECT " + LIST_COLUMNS + " FROM trips WHERE "
+            + where + " ORDER BY ended_at DESC, id DESC LIMIT " + PAGE_SIZE, args)) {
+            Outcome[] outcomes = Outcome.values();
+            while (cursor.moveToNext()) {
+                Trip trip = new Trip();
+                trip.id = cursor.getLong(0);
+                trip.bookingId = cursor.getString(1);
+                trip.requestId = cursor.getString(2);
+                trip.startedAt = cursor.getLong(3);
+                trip.endedAt = cursor.getLong(4);
+                int ordinal = cursor.getInt(5);
+                trip.outcome = ordinal >= 0 && ordinal < outcomes.length ? outcomes[ordinal] : Outcome.UNKNOWN;
+                trip.finalStatus = cursor.getString(6);
+                trip.price = cursor.isNull(7) ? Double.NaN : cursor.getDouble(7);
+                trip.vehicleClass = cursor.getString(8);
+                trip.startLat = cursor.getDouble(9);
+                trip.startLng = cursor.getDouble(10);
+                trip.destLat = cursor.getDouble(11);
+                trip.destLng = cursor.getDouble(12);
+                trip.driverName = cursor.getString(13);
+                trip.vehicle = cursor.getString(14);
+                trip.trackMeters = cursor.getDouble(15);
+                trip.pointCount = cursor.getInt(16);
+                trips.add(trip);
+            }
+        }
+        return trips;
+    }
+
+    private void writePending() {
+        List<Trip> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            writeScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try (SQLiteStatement insert = db.compileStatement("INSERT INTO trips (booking_id, request_id, started_at, "
+                + "ended_at, outcome, final_status, price, vehicle_class, start_lat, start_lng, dest_lat, dest_lng, "
+                + "driver_name, vehicle, track_meters, point_count, trajectory) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Trip trip : batch) {
+                    insert.clearBindings();
+                    bindText(insert, 1, trip.bookingId);
+                    bindText(insert, 2, trip.requestId);
+                    insert.bindLong(3, trip.startedAt);
+                    insert.bindLong(4, trip.endedAt);
+                    insert.bindLong(5, trip.outcome.ordinal());
+                    bindText(insert, 6, trip.finalStatus);
+                    if (Double.isNaN(trip.price)) {
+                        insert.bindNull(7);
+                    } else {
+                        insert.bindDouble(7, trip.price);
+                    }
+                    bindText(insert, 8, trip.vehicleClass);
+                    insert.bindDouble(9, trip.startLat);
+                    insert.bindDouble(10, trip.startLng);
+                    insert.bindDouble(11, trip.destLat);
+                    insert.bindDouble(12, trip.destLng);
+                    bindText(insert, 13, trip.driverName);
+                    bindText(insert, 14, trip.vehicle);
+                    insert.bindDouble(15, trip.trackMeters);
+                    insert.bindLong(16, trip.pointCount);
+                    if (trip.trajectory != null) {
+                        insert.bindBlob(17, trip.trajectory);
+                    } else {
+                        insert.bindNull(17);
+                    }
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not write " + batch.size() + " trip(s)", e);
+        }
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static final class Helper extends SQLiteOpenHelper {
+
+        Helper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE trips ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "booking_id TEXT, "
+                + "request_id TEXT, "
+                + "started_at INTEGER NOT NULL, "
+                + "ended_at INTEGER NOT NULL, "
+                + "outcome INTEGER NOT NULL, "
+                + "final_status TEXT, "
+                + "price REAL, "
+                + "vehicle_class TEXT, "
+                + "start_lat REAL, "
+                + "start_lng REAL, "
+                + "dest_lat REAL, "
+                + "dest_lng REAL, "
+                + "driver_name TEXT, "
+                + "vehicle TEXT, "
+                + "track_meters REAL NOT NULL DEFAULT 0, "
+                + "point_count INTEGER NOT NULL DEFAULT 0, "
+                + "trajectory BLOB)");
+            db.execSQL("CREATE INDEX trips_by_end ON trips (ended_at DESC, id DESC)");
+            db.execSQL("CREATE INDEX trips_by_outcome_end ON trips (outcome, ended_at DESC, id DESC)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
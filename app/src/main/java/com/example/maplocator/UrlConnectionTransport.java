@@ -0,0 +1,105 @@
+package com.example.maplocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link HttpTransport} over {@link HttpURLConnection}: one request per connection at a time,
+ * HTTP/1.1 keep-alive between requests. Fully read responses are not disconnected so the
+ * socket goes back to the platform pool.
+ */
+final class UrlConnectionTransport implements HttpTransport {
+
+    @Override
+    public Reply execute(String method, String url, String body, RequestPriority priority,
+                         NetworkHelper.RequestCall call, int maxResponseChars, int timeoutMs) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        boolean reusable = false;
+        if (call != null) {
+            call.attach(connection::disconnect);
+        }
+
+        try {
+            connection.setRequestMethod(method);
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+
+            if (body != null) {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(bytes.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(bytes);
+                }
+            }
+
+            int code = connection.getResponseCode();
+            InputStream stream = code >= 200 && code < 300 ? connection.getInputStream() : connection.getErrorStream();
+            String text = stream != null
+                ? readBody(new InputStreamReader(stream, StandardCharsets.UTF_8), maxResponseChars)
+                : "";
+            reusable = true;
+            return new Reply(code, text, "http/1.1");
+        } finally {
+            if (call != null) {
+                call.detach();
+            }
+            if (!reusable || (call != null && call.isAborted())) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    @Override
+    public int head(String url, int timeoutMs) {
+        HttpURLConnection connection = null;
+        boolean reusable = false;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod("HEAD");
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+
+            int code = connection.getResponseCode();
+            InputStream stream = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (stream != null) {
+                readBody(new InputStreamReader(stream, StandardCharsets.UTF_8), Integer.MAX_VALUE);
+            }
+            reusable = true;
+            return code;
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            if (connection != null && !reusable) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /** Reads and closes {@code reader}, failing once more than {@code maxChars} arrive. */
+    static String readBody(Reader reader, int maxChars) throws IOException {
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[2048];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, n);
+                if (text.length() > maxChars) {
+                    throw new IOException("Response exceeds " + maxChars + " characters");
+                }
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.maplocator;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+
+/**
+ * Keeps the pickup, destination and driver in view without re-fitting the camera on every
+ * poll. Driver updates only mark the viewport dirty; a single pending evaluation runs at most
+ * once per {@link #MIN_FIT_INTERVAL_MS} and never while the user is touching the map.
+ *
+ * <p>A re-fit is triggered when the driver leaves the inner part of the viewport or the
+ * position extrapolated {@link #PREDICTION_HORIZON_MS} ahead leaves the viewport altogether.
+ * The new viewport covers the predicted position plus padding, so it stays valid for a while,
+ * and when the zoom level would not change much the camera pans instead of zooming, which
+ * keeps the already loaded tiles usable.</p>
+ */
+final class ViewportController implements View.OnTouchListener {
+
+    private static final long MIN_FIT_INTERVAL_MS = 3000;
+    private static final long USER_IDLE_MS = 5000;
+    private static final long PREDICTION_HORIZON_MS = 30000;
+    private static final long MIN_VELOCITY_SAMPLE_MS = 500;
+    private static final double MAX_PREDICTION_DEGREES = 0.02;
+    private static final double VELOCITY_SMOOTHING = 0.5;
+    private static final double INNER_MARGIN = 0.12;
+    private static final double FIT_PADDING = 0.2;
+    private static final double ZOOM_IN_RATIO = 0.35;
+
+    private final MapView mapView;
+    private final MutableBounds viewport = new MutableBounds();
+    private final MutableBounds target = new MutableBounds();
+    private final BoundingBox targetBox = new BoundingBox();
+    private final GeoPoint panPoint = new GeoPoint(0.0, 0.0);
+    private final Runnable evaluation = this::evaluate;
+
+    private double startLat = Double.NaN;
+    private double startLng = Double.NaN;
+    private double destLat = Double.NaN;
+    private double destLng = Double.NaN;
+
+    private boolean hasDriver;
+    private double driverLat;
+    private double driverLng;
+    private long driverAt;
+    private double velocityLat;
+    private double velocityLng;
+
+    private boolean animated = true;
+    private boolean pending;
+    private boolean touching;
+    private long lastTouchAt = -USER_IDLE_MS;
+    private long lastFitAt = -MIN_FIT_INTERVAL_MS;
+
+    ViewportController(MapView mapView) {
+        this.mapView = mapView;
+        mapView.setOnTouchListener(this);
+    }
+
+    void setAnchors(GeoPoint start, GeoPoint destination) {
+        startLat = start != null ? start.getLatitude() : Double.NaN;
+        startLng = start != null ? start.getLongitude() : Double.NaN;
+        destLat = destination != null ? destination.getLatitude() : Double.NaN;
+        destLng = destination != null ? destination.getLongitude() : Double.NaN;
+    }
+
+    void setAnimated(boolean animated) {
+        this.animated = animated;
+    }
+
+    void onDriverPosition(double lat, double lng) {
+        long now = SystemClock.uptimeMillis();
+        if (hasDriver) {
+            long elapsed = now - driverAt;
+            if (elapsed < MIN_VELOCITY_SAMPLE_MS) {
+                driverLat = lat;
+                driverLng = lng;
+                schedule();
+                return;
+            }
+            velocityLat += VELOCITY_SMOOTHING * ((lat - driverLat) / elapsed - velocityLat);
+            velocityLng += VELOCITY_SMOOTHING * ((lng - driverLng) / elapsed - velocityLng);
+        }
+
+        hasDriver = true;
+        driverLat = lat;
+        driverLng = lng;
+        driverAt = now;
+        schedule();
+    }
+
+    void reset() {
+        mapView.removeCallbacks(evaluation);
+        pending = false;
+        hasDriver = false;
+        velocityLat = 0;
+        velocityLng = 0;
+    }
+
+    @Override
+    public boolean onTouch(View view, MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            touching = true;
+        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            touching = false;
+        }
+        lastTouchAt = SystemClock.uptimeMillis();
+        return false;
+    }
+
+    private void schedule() {
+        if (pending) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long delay = Math.max(lastFitAt + MIN_FIT_INTERVAL_MS, lastTouchAt + USER_IDLE_MS) - now;
+        if (touching) {
+            delay = Math.max(delay, USER_IDLE_MS);
+        }
+        pending = true;
+        mapView.postDelayed(evaluation, Math.max(0, delay));
+    }
+
+    private void evaluate() {
+        pending = false;
+        if (!hasDriver || Double.isNaN(startLat) || Double.isNaN(destLat)) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (touching || now - lastTouchAt < USER_IDLE_MS || mapView.isAnimating()) {
+            schedule();
+            return;
+        }
+
+        BoundingBox current = mapView.getBoundingBox();
+        if (current == null) {
+            return;
+        }
+        viewport.set(current.getLatNorth(), current.getLonEast(), current.getLatSouth(), current.getLonWest());
+
+        double predictedLat = driverLat + clamp(velocityLat * PREDICTION_HORIZON_MS);
+        double predictedLng = driverLng + clamp(velocityLng * PREDICTION_HORIZON_MS);
+
+        target.reset()
+            .include(startLat, startLng)
+            .include(destLat, destLng)
+            .include(driverLat, driverLng)
+            .include(predictedLat, predictedLng)
+            .expandByFraction(FIT_PADDING);
+
+        double viewLatSpan = viewport.getNorth() - viewport.getSouth();
+        double viewLngSpan = viewport.getEast() - viewport.getWest();
+        double targetLatSpan = target.getNorth() - target.getSouth();
+        double targetLngSpan = target.getEast() - target.getWest();
+        boolean tooFarOut = targetLatSpan < viewLatSpan * ZOOM_IN_RATIO && targetLngSpan < viewLngSpan * ZOOM_IN_RATIO;
+
+        boolean predictedVisible = viewport.contains(predictedLat, predictedLng);
+        viewport.expandByFraction(-INNER_MARGIN);
+        boolean driverInside = viewport.contains(driverLat, driverLng);
+        if (driverInside && predictedVisible && !tooFarOut) {
+            return;
+        }
+
+        lastFitAt = now;
+        if (!tooFarOut && targetLatSpan <= viewLatSpan && targetLngSpan <= viewLngSpan) {
+            panPoint.setCoords(target.getCenterLat(), target.getCenterLng());
+            if (animated) {
+                mapView.getController().animateTo(panPoint);
+            } else {
+                mapView.getController().setCenter(panPoint);
+            }
+        } else {
+            targetBox.set(target.getNorth(), target.getEast(), target.getSouth(), target.getWest());
+            mapView.zoomToBoundingBox(targetBox, animated);
+        }
+    }
+
+    private static double clamp(double delta) {
+        return Math.max(-MAX_PREDICTION_DEGREES, Math.min(MAX_PREDICTION_DEGREES, delta));
+    }
+}
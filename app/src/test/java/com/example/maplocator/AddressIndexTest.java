@@ -0,0 +1,61 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/** Runs against the synthetic grid from {@code build_address_index.sh}, which the app never uses. */
+public class AddressIndexTest {
+
+    private static final String GRID = "src/test/resources/" + AddressIndex.ASSET_NAME;
+    /** South-west corner of the grid, where 1st Street meets 1st Avenue. */
+    private static final double SOUTH = 37.708;
+    private static final double WEST = -122.510;
+
+    private ByteBuffer buffer;
+    private AddressIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(GRID)));
+        index = new AddressIndex(buffer);
+    }
+
+    @Test
+    public void labelsPointsNearAnAddress() {
+        String label = index.label(SOUTH + 0.0001, WEST + 0.0003);
+        assertNotNull(label);
+        assertTrue(label, label.matches("\\d+ 1st (Street|Avenue)"));
+        assertEquals(label, index.label(SOUTH + 0.0001, WEST + 0.0003));
+    }
+
+    @Test
+    public void returnsNullFarFromEveryAddress() {
+        assertNull(index.label(SOUTH - 0.01, WEST));
+        assertNull(index.label(0, 0));
+    }
+
+    @Test
+    public void onlyIndexesOfRealAddressesAreSurveyed() throws IOException {
+        assertFalse(index.isSurveyed());
+
+        ByteBuffer surveyed = ByteBuffer.allocate(buffer.capacity());
+        surveyed.put(buffer.duplicate()).putInt(24, AddressIndex.FLAG_SURVEYED);
+        assertTrue(new AddressIndex(surveyed).isSurveyed());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new AddressIndex(ByteBuffer.wrap(new byte[AddressIndex.HEADER_BYTES]));
+    }
+}
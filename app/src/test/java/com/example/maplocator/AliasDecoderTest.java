@@ -0,0 +1,98 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AliasDecoderTest {
+
+    private static final int LAT = 0;
+    private static final int LNG = 1;
+    private static final int NAME = 2;
+
+    private final AliasDecoder decoder = new AliasDecoder(
+        AliasDecoder.number("driverLat", "lat"),
+        AliasDecoder.number("driverLng", "lng"),
+        AliasDecoder.text("driverName", "name"));
+
+    @Test
+    public void parsesShortNumbersOnTheFastPath() {
+        assertParsed("37.7749");
+        assertParsed("-122.4194");
+        assertParsed("0");
+        assertParsed("-0.000123");
+        assertParsed("12e3");
+        assertParsed("-4.5E-7");
+    }
+
+    @Test
+    public void keepsTheSignOfNegativeLongMantissas() {
+        assertParsed("-122.41941550000001");
+        assertParsed("-37.774929123456789");
+        assertParsed("-1234567890123456789");
+    }
+
+    @Test
+    public void keepsTheSignOfNegativeLargeExponents() {
+        assertParsed("-1e30");
+        assertParsed("-2.5e-30");
+        assertParsed("1e30");
+        assertParsed("-1.7976931348623157E308");
+    }
+
+    @Test
+    public void acceptsLeadingPlusAndWhitespaceOnlyWhenLenient() {
+        assertEquals(1e30, AliasDecoder.parseNumber(" +1e30 ", 0, -1, true), 0);
+        assertEquals(-1e30, AliasDecoder.parseNumber(" -1e30 ", 0, -1, true), 0);
+        assertTrue(Double.isNaN(AliasDecoder.parseNumber("+1", 0, -1, false)));
+        assertTrue(Double.isNaN(AliasDecoder.parseNumber(" 1", 0, -1, false)));
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() {
+        for (String text : new String[] {"", "-", ".", "1e", "1e+", "--1", "1.2.3", "abc", "1x"}) {
+            assertTrue(text, Double.isNaN(AliasDecoder.parseNumber(text, 0, -1, false)));
+        }
+    }
+
+    @Test
+    public void decodesNegativeCoordinatesFromAResponse() {
+        AliasDecoder.Values values = decoder.decode(
+            "{\"driverLat\":37.77492900000001,\"driverLng\":-122.41941550000001,\"driverName\":\"Ana\"}");
+        assertEquals(37.77492900000001, values.getDouble(LAT), 0);
+        assertEquals(-122.41941550000001, values.getDouble(LNG), 0);
+        assertEquals("Ana", values.getString(NAME));
+    }
+
+    @Test
+    public void prefersTheEarliestAliasWhateverTheKeyOrder() {
+        AliasDecoder.Values values = decoder.decode("{\"lng\":1.5,\"driverLng\":-2.5,\"lat\":3}");
+        assertEquals(-2.5, values.getDouble(LNG), 0);
+        assertEquals(3, values.getDouble(LAT), 0);
+        assertFalse(values.has(NAME));
+    }
+
+    @Test
+    public void decodesRepeatedShapesTheSameWay() {
+        for (int i = 0; i < 3; i++) {
+            AliasDecoder.Values values = decoder.decode("{\"driverLat\":1,\"driverLng\":-1e30,\"extra\":[1,{\"a\":2}]}");
+            assertEquals(1, values.getDouble(LAT), 0);
+            assertEquals(-1e30, values.getDouble(LNG), 0);
+        }
+    }
+
+    @Test
+    public void rejectsMalformedJson() {
+        assertNull(decoder.decode(null));
+        assertNull(decoder.decode("[]"));
+        assertNull(decoder.decode("{\"driverLat\":1"));
+        assertNull(decoder.decode("{\"driverLat\" 1}"));
+    }
+
+    private static void assertParsed(String text) {
+        assertEquals(text, Double.parseDouble(text), AliasDecoder.parseNumber(text, 0, -1, false), 0);
+    }
+}
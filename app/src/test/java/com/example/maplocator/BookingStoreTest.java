@@ -0,0 +1,139 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BookingStoreTest {
+
+    @Test
+    public void publishesTheSnapshotTheMutationBuilt() {
+        BookingStore store = new BookingStore();
+        BookingData[] built = new BookingData[1];
+
+        BookingData published = store.update(data -> built[0] = data.withQuote("r1", 12.5));
+
+        assertSame(built[0], published);
+        assertSame(published, store.get());
+        assertEquals(1, published.getVersion());
+        assertEquals("r1", published.getRequestId());
+    }
+
+    @Test
+    public void ignoresMutationsThatChangeNothing() {
+        BookingStore store = new BookingStore();
+        BookingData first = store.update(data -> data.withQuote("r1", 12.5));
+        List<Integer> calls = new ArrayList<>();
+        store.addListener(BookingData.FIELD_ALL, (snapshot, changed) -> calls.add(changed));
+
+        assertSame(first, store.update(data -> data.withQuote("r1", 12.5)));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void resetToEmptyStillRaisesTheVersion() {
+        BookingStore store = new BookingStore();
+        store.update(data -> data.withRequestId("r1").withBookingId("b1"));
+        long version = store.get().getVersion();
+
+        BookingData reset = store.update(data -> BookingData.EMPTY);
+
+        assertTrue(reset.getVersion() > version);
+        assertEquals(0, BookingData.EMPTY.getVersion());
+        assertEquals(0, reset.diff(BookingData.EMPTY));
+    }
+
+    @Test
+    public void listenersOnlyHearAboutFieldsInTheirMask() {
+        BookingStore store = new BookingStore();
+        List<Integer> driver = new ArrayList<>();
+        List<Integer> quote = new ArrayList<>();
+        BookingStore.Listener quoteListener = (snapshot, changed) -> quote.add(changed);
+        store.addListener(BookingData.FIELD_DRIVER_POSITION | BookingData.FIELD_STATUS,
+            (snapshot, changed) -> driver.add(changed));
+        store.addListener(BookingData.FIELD_REQUEST_ID | BookingData.FIELD_PRICE, quoteListener);
+
+        store.update(data -> data.withQuote("r1", 9.0));
+        store.update(data -> data.withDriver(37.77, -122.42, "Sam", null, null, "en_route"));
+        store.removeListener(quoteListener);
+        store.update(data -> data.withQuote("r2", 10.0));
+
+        assertEquals(Collections.singletonList(BookingData.FIELD_DRIVER_POSITION | BookingData.FIELD_STATUS), driver);
+        assertEquals(Collections.singletonList(BookingData.FIELD_REQUEST_ID | BookingData.FIELD_PRICE), quote);
+    }
+
+    @Test
+    public void publishesFromAListenerAreDeliveredAfterIt() {
+        BookingStore store = new BookingStore();
+        List<Long> versions = new ArrayList<>();
+        store.addListener(BookingData.FIELD_ALL, (snapshot, changed) -> {
+            if ((changed & BookingData.FIELD_REQUEST_ID) != 0) {
+                store.update(data -> data.withBookingId("b1"));
+            }
+            versions.add(snapshot.getVersion());
+        });
+        store.addListener(BookingData.FIELD_ALL, (snapshot, changed) -> versions.add(snapshot.getVersion()));
+
+        store.update(data -> data.withRequestId("r1"));
+
+        assertEquals(4, versions.size());
+        assertEquals(versions.get(0), versions.get(1));
+        assertEquals(versions.get(2), versions.get(3));
+        assertTrue(versions.get(0) < versions.get(2));
+        assertEquals("b1", store.get().getBookingId());
+    }
+
+    @Test
+    public void concurrentPublishesReachListenersOneAtATimeInVersionOrder() throws InterruptedException {
+        BookingStore store = new BookingStore();
+        AtomicBoolean inListener = new AtomicBoolean();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        List<Long> versions = Collections.synchronizedList(new ArrayList<>());
+        store.addListener(BookingData.FIELD_PRICE, (snapshot, changed) -> {
+            if (!inListener.compareAndSet(false, true)) {
+                overlapped.set(true);
+            }
+            versions.add(snapshot.getVersion());
+            inListener.set(false);
+        });
+
+        int threads = 4;
+        int updates = 2000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < updates; i++) {
+                    store.update(data -> data.withQuote("r", data.getPrice() + 1));
+                }
+            });
+            publishers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : publishers) {
+            thread.join();
+        }
+
+        assertFalse(overlapped.get());
+        assertEquals(threads * updates, store.get().getPrice(), 0);
+        for (int i = 1; i < versions.size(); i++) {
+            assertTrue(versions.get(i - 1) < versions.get(i));
+        }
+        assertEquals(store.get().getVersion(), (long) versions.get(versions.size() - 1));
+    }
+}
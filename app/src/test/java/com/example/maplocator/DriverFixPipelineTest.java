@@ -0,0 +1,139 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class DriverFixPipelineTest {
+
+    private static final long POLL_MS = 8000;
+    private static final double START_LAT = 37.7700;
+    private static final double START_LNG = -122.4300;
+    /** About 10 m/s north-east per poll. */
+    private static final double STEP = 0.0005;
+
+    @Test
+    public void dropsASingleJumpAndKeepsTheTrack() {
+        DriverFixPipeline pipeline = new DriverFixPipeline();
+        double[] out = new double[2];
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.process("d", START_LAT + i * STEP, START_LNG + i * STEP, i * POLL_MS, out));
+        }
+
+        out[0] = Double.NaN;
+        assertFalse(pipeline.process("d", START_LAT + 0.02, START_LNG, 10 * POLL_MS, out));
+        assertTrue(Double.isNaN(out[0]));
+
+        assertTrue(pipeline.process("d", START_LAT + 11 * STEP, START_LNG + 11 * STEP, 11 * POLL_MS, out));
+        assertTrue(GeoMath.haversineMeters(START_LAT + 11 * STEP, START_LNG + 11 * STEP, out[0], out[1]) < 20);
+    }
+
+    @Test
+    public void followsTheFixesAfterRepeatedJumps() {
+        DriverFixPipeline pipeline = new DriverFixPipeline();
+        double[] out = new double[2];
+        for (int i = 0; i < 5; i++) {
+            pipeline.process("d", START_LAT + i * STEP, START_LNG, i * POLL_MS, out);
+        }
+
+        double movedLat = START_LAT + 0.05;
+        assertFalse(pipeline.process("d", movedLat, START_LNG, 5 * POLL_MS, out));
+        assertFalse(pipeline.process("d", movedLat, START_LNG, 6 * POLL_MS, out));
+        assertTrue(pipeline.process("d", movedLat, START_LNG, 7 * POLL_MS, out));
+        assertEquals(movedLat, out[0], 1e-9);
+    }
+
+    @Test
+    public void keepsDriversApart() {
+        DriverFixPipeline pipeline = new DriverFixPipeline();
+        double[] out = new double[2];
+        assertTrue(pipeline.process("a", START_LAT, START_LNG, 0, out));
+        assertTrue(pipeline.process("b", START_LAT + 0.05, START_LNG, 0, out));
+        assertTrue(pipeline.process("a", START_LAT + STEP, START_LNG, POLL_MS, out));
+        assertEquals(START_LAT + STEP, out[0], 0.0002);
+    }
+
+    @Test
+    public void smoothsNoisyFixes() {
+        DriverFixPipeline pipeline = new DriverFixPipeline();
+        Random random = new Random(5);
+        double[] out = new double[2];
+        double rawError = 0;
+        double filteredError = 0;
+        // Fixes once a second, as from a phone's own GPS, rather than once per poll.
+        for (int i = 0; i < 200; i++) {
+            double lat = START_LAT + i * STEP / 8;
+            double lng = START_LNG + i * STEP / 8;
+            double noisyLat = lat + random.nextGaussian() * 0.0001;
+            double noisyLng = lng + random.nextGaussian() * 0.0001;
+            if (pipeline.process("d", noisyLat, noisyLng, i * 1000L, out) && i >= 20) {
+                rawError += GeoMath.haversineMeters(lat, lng, noisyLat, noisyLng);
+                filteredError += GeoMath.haversineMeters(lat, lng, out[0], out[1]);
+            }
+        }
+        assertTrue(filteredError + " vs " + rawError, filteredError < rawError * 0.7);
+    }
+
+    @Test
+    public void snapsOntoTheRoadWhenMatching() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get("src/test/resources/" + RoadGraph.ASSET_NAME)));
+        RoadGraph graph = new RoadGraph(buffer);
+        int nodeCount = buffer.getInt(4);
+        int edgesAt = RoadGraph.HEADER_BYTES + nodeCount * RoadGraph.NODE_BYTES + (nodeCount + 1) * 4;
+
+        int edge = 0;
+        while (buffer.getInt(edgesAt + edge * RoadGraph.EDGE_BYTES + 4) < 150) {
+            edge++;
+        }
+        double fromLat = lat(buffer, graph.edgeSource(edge));
+        double fromLng = lng(buffer, graph.edgeSource(edge));
+        double toLat = lat(buffer, graph.edgeTarget(edge));
+        double toLng = lng(buffer, graph.edgeTarget(edge));
+
+        // Drives along the edge about 8 m to one side of it.
+        double metersPerLng = Math.cos(Math.toRadians(fromLat));
+        double dLat = toLat - fromLat;
+        double dLng = (toLng - fromLng) * metersPerLng;
+        double length = Math.hypot(dLat, dLng);
+        double offsetLat = -dLng / length * 8 / 111195.0;
+        double offsetLng = dLat / length * 8 / 111195.0 / metersPerLng;
+
+        DriverFixPipeline matched = new DriverFixPipeline();
+        matched.setRoadGraph(graph);
+        DriverFixPipeline unmatched = new DriverFixPipeline();
+        unmatched.setRoadGraph(graph);
+        unmatched.setMapMatching(false);
+
+        int[] edges = new int[1];
+        double[] meters = new double[1];
+        double[] out = new double[2];
+        for (int i = 0; i <= 10; i++) {
+            double lat = fromLat + (toLat - fromLat) * i / 10 + offsetLat;
+            double lng = fromLng + (toLng - fromLng) * i / 10 + offsetLng;
+
+            assertTrue(matched.process("d", lat, lng, i * POLL_MS, out));
+            assertEquals(1, graph.edgesNear(out[0], out[1], 40, edges, meters));
+            assertTrue("Matched fix " + i + " is " + meters[0] + " m off", meters[0] < 0.5);
+
+            assertTrue(unmatched.process("d", lat, lng, i * POLL_MS, out));
+            assertEquals(1, graph.edgesNear(out[0], out[1], 40, edges, meters));
+            assertTrue("Unmatched fix " + i + " is " + meters[0] + " m off", meters[0] > 2);
+        }
+    }
+
+    private static double lat(ByteBuffer buffer, int node) {
+        return buffer.getInt(RoadGraph.HEADER_BYTES + node * RoadGraph.NODE_BYTES) / 1e6;
+    }
+
+    private static double lng(ByteBuffer buffer, int node) {
+        return buffer.getInt(RoadGraph.HEADER_BYTES + node * RoadGraph.NODE_BYTES + 4) / 1e6;
+    }
+}
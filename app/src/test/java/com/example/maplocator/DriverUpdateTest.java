@@ -0,0 +1,31 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DriverUpdateTest {
+
+    @Test
+    public void arrivalDoesNotEndTheTrip() {
+        DriverUpdate update = update("arrived");
+        assertTrue(update.isArrival());
+        assertFalse(update.endsTrip());
+        assertFalse(update("Driver has arrived").endsTrip());
+        assertFalse(update("in_progress").endsTrip());
+    }
+
+    @Test
+    public void completionAndCancellationEndTheTrip() {
+        assertTrue(update("completed").endsTrip());
+        assertTrue(update("Trip finished").endsTrip());
+        assertTrue(update("canceled").endsTrip());
+        assertEquals(DriverUpdate.Stage.CANCELLED, update("Cancelled by driver").stage);
+    }
+
+    private static DriverUpdate update(String status) {
+        return new DriverUpdate(37.77, -122.42, "Sam", "Prius", "3 min", status);
+    }
+}
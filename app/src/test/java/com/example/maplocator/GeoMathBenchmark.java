@@ -0,0 +1,161 @@
+package com.example.maplocator;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times the per-poll geometry against the calls it replaced: {@code Location.distanceBetween}
+ * into a fresh {@code float[1]} (Vincenty on the WGS84 ellipsoid, reimplemented here because the
+ * framework method is not available on the JVM) and a {@link BoundingBox} built from new
+ * {@link GeoPoint}s through varargs. {@link GeoMathTest} checks that the results agree.
+ *
+ * <p>Not part of the unit suite; run {@link #main} from the IDE, or with {@code java} on the
+ * unit test and osmdroid classpath.</p>
+ */
+public final class GeoMathBenchmark {
+
+    static final int FIXES = 4096;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    private GeoMathBenchmark() {
+    }
+
+    /** Fixes spread over the service area, the same on every run. */
+    static void fillFixes(double[] lats, double[] lngs) {
+        Random random = new Random(7);
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = 37.70 + random.nextDouble() * 0.12;
+            lngs[i] = -122.52 + random.nextDouble() * 0.14;
+        }
+    }
+
+    public static void main(String[] args) {
+        double[] lats = new double[FIXES];
+        double[] lngs = new double[FIXES];
+        fillFixes(lats, lngs);
+        MutableBounds bounds = new MutableBounds();
+        BoundingBox box = new BoundingBox();
+        double sink = 0;
+        long legacyDistance = 0;
+        long haversine = 0;
+        long legacyBounds = 0;
+        long mutableBounds = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            boolean measured = round >= WARMUP_ROUNDS;
+
+            long start = System.nanoTime();
+            for (int i = 1; i < FIXES; i++) {
+                float[] results = new float[1];
+                legacyDistanceBetween(lats[0], lngs[0], lats[i], lngs[i], results);
+                sink += results[0];
+            }
+            long afterLegacyDistance = System.nanoTime();
+            for (int i = 1; i < FIXES; i++) {
+                sink += GeoMath.haversineMeters(lats[0], lngs[0], lats[i], lngs[i]);
+            }
+            long afterHaversine = System.nanoTime();
+            for (int i = 2; i < FIXES; i++) {
+                BoundingBox legacy = legacyBoundingBox(new GeoPoint(lats[0], lngs[0]),
+                    new GeoPoint(lats[1], lngs[1]), new GeoPoint(lats[i], lngs[i]));
+                sink += legacy.getLatNorth();
+            }
+            long afterLegacyBounds = System.nanoTime();
+            for (int i = 2; i < FIXES; i++) {
+                bounds.reset().include(lats[0], lngs[0]).include(lats[1], lngs[1]).include(lats[i], lngs[i]);
+                box.set(bounds.getNorth(), bounds.getEast(), bounds.getSouth(), bounds.getWest());
+                sink += box.getLatNorth();
+            }
+            long afterMutableBounds = System.nanoTime();
+
+            if (measured) {
+                legacyDistance += afterLegacyDistance - start;
+                haversine += afterHaversine - afterLegacyDistance;
+                legacyBounds += afterLegacyBounds - afterHaversine;
+                mutableBounds += afterMutableBounds - afterLegacyBounds;
+            }
+        }
+
+        double calls = (double) ROUNDS * (FIXES - 1);
+        System.out.println(String.format(Locale.US,
+            "distance: distanceBetween %.1f ns, haversine %.1f ns; bounds: varargs %.1f ns, mutable %.1f ns",
+            legacyDistance / calls, haversine / calls, legacyBounds / calls, mutableBounds / calls));
+        // Keeps the loops from being optimised away.
+        if (sink == 0) {
+            System.out.println("no work done");
+        }
+    }
+
+    static BoundingBox legacyBoundingBox(GeoPoint... points) {
+        double minLat = Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double maxLng = -Double.MAX_VALUE;
+        for (GeoPoint p : points) {
+            minLat = Math.min(minLat, p.getLatitude());
+            minLng = Math.min(minLng, p.getLongitude());
+            maxLat = Math.max(maxLat, p.getLatitude());
+            maxLng = Math.max(maxLng, p.getLongitude());
+        }
+        return new BoundingBox(maxLat, maxLng, minLat, minLng);
+    }
+
+    /** Vincenty's inverse formula on WGS84, as {@code Location.distanceBetween} computes it. */
+    static void legacyDistanceBetween(double lat1, double lon1, double lat2, double lon2, float[] results) {
+        double a = 6378137.0;
+        double b = 6356752.3142;
+        double f = (a - b) / a;
+        double aSqMinusBSqOverBSq = (a * a - b * b) / (b * b);
+
+        double l = Math.toRadians(lon2 - lon1);
+        double u1 = Math.atan((1.0 - f) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1.0 - f) * Math.tan(Math.toRadians(lat2)));
+        double cosU1 = Math.cos(u1);
+        double cosU2 = Math.cos(u2);
+        double sinU1 = Math.sin(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU1cosU2 = cosU1 * cosU2;
+        double sinU1sinU2 = sinU1 * sinU2;
+
+        double sigma = 0.0;
+        double deltaSigma = 0.0;
+        double bigA = 1.0;
+        double cosSqAlpha;
+        double cos2SM;
+        double cosSigma;
+        double sinSigma;
+        double lambda = l;
+        for (int iter = 0; iter < 20; iter++) {
+            double lambdaOrig = lambda;
+            double cosLambda = Math.cos(lambda);
+            double sinLambda = Math.sin(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSqSigma = t1 * t1 + t2 * t2;
+            sinSigma = Math.sqrt(sinSqSigma);
+            cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = sinSigma == 0 ? 0.0 : cosU1cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SM = cosSqAlpha == 0 ? 0.0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha;
+
+            double uSquared = cosSqAlpha * aSqMinusBSqOverBSq;
+            bigA = 1 + (uSquared / 16384.0) * (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+            double bigB = (uSquared / 1024.0) * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+            double c = (f / 16.0) * cosSqAlpha * (4.0 + f * (4.0 - 3.0 * cosSqAlpha));
+            double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = bigB * sinSigma * (cos2SM + (bigB / 4.0) * (cosSigma * (-1.0 + 2.0 * cos2SMSq)
+                - (bigB / 6.0) * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SMSq)));
+            lambda = l + (1.0 - c) * f * sinAlpha
+                * (sigma + c * sinSigma * (cos2SM + c * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+
+            if (Math.abs((lambda - lambdaOrig) / lambda) < 1.0e-12) {
+                break;
+            }
+        }
+        results[0] = (float) (b * bigA * (sigma - deltaSigma));
+    }
+}
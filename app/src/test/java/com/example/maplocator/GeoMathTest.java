@@ -0,0 +1,44 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+/** Checks the per-poll geometry against the calls it replaced; {@link GeoMathBenchmark} times them. */
+public class GeoMathTest {
+
+    private final double[] lats = new double[GeoMathBenchmark.FIXES];
+    private final double[] lngs = new double[GeoMathBenchmark.FIXES];
+
+    public GeoMathTest() {
+        GeoMathBenchmark.fillFixes(lats, lngs);
+    }
+
+    @Test
+    public void haversineMatchesDistanceBetweenWithinHalfAPercent() {
+        for (int i = 1; i < lats.length; i++) {
+            float[] results = new float[1];
+            GeoMathBenchmark.legacyDistanceBetween(lats[0], lngs[0], lats[i], lngs[i], results);
+            double meters = GeoMath.haversineMeters(lats[0], lngs[0], lats[i], lngs[i]);
+            assertEquals(results[0], meters, Math.max(1.0, results[0] * 0.005));
+        }
+    }
+
+    @Test
+    public void mutableBoundsMatchVarargsBoundingBox() {
+        MutableBounds bounds = new MutableBounds();
+        BoundingBox box = new BoundingBox();
+        for (int i = 2; i < lats.length; i++) {
+            BoundingBox legacy = GeoMathBenchmark.legacyBoundingBox(new GeoPoint(lats[0], lngs[0]),
+                new GeoPoint(lats[1], lngs[1]), new GeoPoint(lats[i], lngs[i]));
+            bounds.reset().include(lats[0], lngs[0]).include(lats[1], lngs[1]).include(lats[i], lngs[i]);
+            box.set(bounds.getNorth(), bounds.getEast(), bounds.getSouth(), bounds.getWest());
+            assertEquals(legacy.getLatNorth(), box.getLatNorth(), 0);
+            assertEquals(legacy.getLatSouth(), box.getLatSouth(), 0);
+            assertEquals(legacy.getLonEast(), box.getLonEast(), 0);
+            assertEquals(legacy.getLonWest(), box.getLonWest(), 0);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+public class LiteModeTest {
+
+    /** Room left for views, the map's own buffers and the rest of the app. */
+    private static final double TILE_CACHE_SHARE = 0.5;
+
+    @Test
+    public void tileCacheFitsUnderEachCeiling() {
+        assertTrue(LiteMode.LITE_TILE_CACHE_TILES * (long) LiteMode.TILE_BYTES
+            <= LiteMode.LITE_HEAP_CEILING_BYTES * TILE_CACHE_SHARE);
+        assertTrue(LiteMode.DEFAULT_TILE_CACHE_TILES * (long) LiteMode.TILE_BYTES
+            <= LiteMode.DEFAULT_HEAP_CEILING_BYTES * TILE_CACHE_SHARE);
+        assertTrue(LiteMode.LITE_HEAP_CEILING_BYTES < LiteMode.DEFAULT_HEAP_CEILING_BYTES);
+    }
+
+    /**
+     * Replays a long trip's worth of driver polls through the per-update work of the tracking
+     * screen and fails if what it keeps alive afterwards takes a noticeable share of the lite
+     * mode heap ceiling.
+     */
+    @Test
+    public void tripStateStaysFarBelowTheLiteCeiling() {
+        long before = retainedHeap();
+
+        DriverFixPipeline pipeline = new DriverFixPipeline();
+        Trajectory trajectory = new Trajectory();
+        double[] fix = new double[2];
+        long timeMs = 0;
+        for (int i = 0; i < 20_000; i++) {
+            double lat = 37.70 + i * 0.00005;
+            double lng = -122.45 + (i % 200) * 0.00005;
+            DriverUpdate update = DriverUpdate.parse(String.format(Locale.US,
+                "{\"driverLat\":%.6f,\"driverLng\":%.6f,\"driverName\":\"Sam\",\"status\":\"en_route\"}", lat, lng));
+            assertNotNull(update);
+            timeMs += 8000;
+            if (pipeline.process("driver-" + (i % 8), update.driverLat, update.driverLng, timeMs, fix)) {
+                trajectory.add(fix[0], fix[1], timeMs);
+            }
+        }
+
+        long retained = retainedHeap() - before;
+        assertTrue("Trip state retains " + retained + " bytes",
+            retained < LiteMode.LITE_HEAP_CEILING_BYTES / 16);
+        // Keeps both reachable until after the measurement.
+        assertTrue(trajectory.getPointCount() > 0);
+        pipeline.reset();
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
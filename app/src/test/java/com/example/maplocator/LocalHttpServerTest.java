@@ -0,0 +1,80 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class LocalHttpServerTest {
+
+    private LocalHttpServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalHttpServer(request -> LocalHttpServer.Response.json(200, "{\"echo\":\"" + request.body + "\"}"));
+        port = server.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void readsContentLengthBody() throws IOException {
+        String response = exchange("POST / HTTP/1.1\r\nContent-Length: 2\r\nConnection: close\r\n\r\nhi");
+        assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        assertTrue(response, response.endsWith("{\"echo\":\"hi\"}"));
+    }
+
+    @Test
+    public void rejectsNegativeContentLength() throws IOException {
+        String response = exchange("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 400"));
+    }
+
+    @Test
+    public void rejectsUnparsableContentLength() throws IOException {
+        String response = exchange("POST / HTTP/1.1\r\nContent-Length: 12abc\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 400"));
+    }
+
+    @Test
+    public void refusesHugeContentLengthWithoutReadingIt() throws IOException {
+        String response = exchange("POST / HTTP/1.1\r\nContent-Length: 2147483647\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 413"));
+    }
+
+    @Test
+    public void treatsMissingContentLengthAsEmptyBody() throws IOException {
+        String response = exchange("GET / HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertEquals("{\"echo\":\"\"}", response.substring(response.indexOf("\r\n\r\n") + 4));
+    }
+
+    private String exchange(String request) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                response.write(buffer, 0, n);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
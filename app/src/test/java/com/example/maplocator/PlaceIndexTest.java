@@ -0,0 +1,99 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Runs against the bundled asset and the list it was built from. */
+public class PlaceIndexTest {
+
+    private static final String ASSET = "src/main/assets/" + PlaceIndex.ASSET_NAME;
+    private static final String SOURCE = "../scripts/places/places.tsv";
+
+    private PlaceIndex index;
+    private final List<String> names = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        index = new PlaceIndex(ByteBuffer.wrap(Files.readAllBytes(Paths.get(ASSET))));
+        for (String line : Files.readAllLines(Paths.get(SOURCE), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                names.add(line.split("\t")[0]);
+            }
+        }
+    }
+
+    @Test
+    public void holdsEveryPlaceFromTheSourceList() {
+        assertEquals(names.size(), index.size());
+    }
+
+    @Test
+    public void findsExactlyThePlacesWithAWordStartingWithTheQuery() {
+        Set<String> prefixes = new HashSet<>();
+        for (String name : names) {
+            for (String word : PlaceIndex.normalize(name).split(" ")) {
+                for (int length = 1; length <= word.length(); length++) {
+                    prefixes.add(word.substring(0, length));
+                }
+            }
+        }
+
+        for (String prefix : prefixes) {
+            Set<String> expected = new HashSet<>();
+            for (String name : names) {
+                if ((" " + PlaceIndex.normalize(name)).contains(" " + prefix)) {
+                    expected.add(name);
+                }
+            }
+            Set<String> found = new HashSet<>();
+            for (PlaceIndex.Place place : index.search(prefix, Double.NaN, Double.NaN, names.size())) {
+                found.add(place.name);
+            }
+            assertEquals(prefix, expected, found);
+        }
+    }
+
+    @Test
+    public void ranksNameStartsAndWeightFirst() {
+        List<PlaceIndex.Place> golden = index.search("golden", Double.NaN, Double.NaN, 5);
+        assertEquals("Golden Gate Bridge", golden.get(0).name);
+
+        List<PlaceIndex.Place> gate = index.search("gate", Double.NaN, Double.NaN, 3);
+        assertEquals(3, gate.size());
+        assertTrue(gate.get(0).name, gate.get(0).name.startsWith("Golden Gate"));
+    }
+
+    @Test
+    public void biasFavoursNearbyPlaces() {
+        String query = "international airport";
+        assertEquals("San Francisco International Airport",
+            index.search(query, Double.NaN, Double.NaN, 2).get(0).name);
+        assertEquals("Oakland International Airport", index.search(query, 37.7126, -122.2197, 2).get(0).name);
+    }
+
+    @Test
+    public void ignoresCaseAccentsAndPunctuation() {
+        assertEquals("cafe deja vu", PlaceIndex.normalize("  Café, Déjà-Vu! "));
+        assertEquals("Fisherman's Wharf", index.search("FISHERMAN'S", Double.NaN, Double.NaN, 1).get(0).name);
+        assertTrue(index.search("  ", Double.NaN, Double.NaN, 5).isEmpty());
+        assertTrue(index.search("gate", Double.NaN, Double.NaN, 0).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new PlaceIndex(ByteBuffer.wrap(new byte[] {'P', 'K', 3, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+    }
+}
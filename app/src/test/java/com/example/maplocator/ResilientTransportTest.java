@@ -0,0 +1,101 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+public class ResilientTransportTest {
+
+    private static final String URL = "http://127.0.0.1:8080/driver";
+
+    /** Times out every call until told to answer. */
+    private static final class FlakyTransport implements HttpTransport {
+        volatile boolean healthy;
+        volatile int calls;
+        volatile int lastTimeoutMs;
+
+        @Override
+        public Reply execute(String method, String url, String body, RequestPriority priority,
+                             NetworkHelper.RequestCall call, int maxResponseChars, int timeoutMs) throws IOException {
+            calls++;
+            lastTimeoutMs = timeoutMs;
+            if (!healthy) {
+                throw new SocketTimeoutException("timeout");
+            }
+            return new Reply(200, "{}", "h2");
+        }
+
+        @Override
+        public int head(String url, int timeoutMs) {
+            return 200;
+        }
+    }
+
+    @Test
+    public void timeoutsAtFullBudgetOpenTheCircuit() {
+        FlakyTransport delegate = new FlakyTransport();
+        ResilientTransport transport = new ResilientTransport(delegate);
+        for (int i = 0; i < 5; i++) {
+            expectFailure(transport, NetworkHelper.TIMEOUT_MS, "timeout");
+        }
+        expectFailure(transport, NetworkHelper.TIMEOUT_MS, "circuit open");
+        assertEquals(5, delegate.calls);
+    }
+
+    @Test
+    public void timeoutsAfterWaitingInTheQueueAreAbandoned() {
+        FlakyTransport delegate = new FlakyTransport();
+        ResilientTransport transport = new ResilientTransport(delegate);
+        for (int i = 0; i < 20; i++) {
+            expectFailure(transport, 50, "timeout");
+        }
+        assertEquals(20, delegate.calls);
+    }
+
+    @Test
+    public void expiredCallsAreAbandoned() {
+        FlakyTransport delegate = new FlakyTransport();
+        ResilientTransport transport = new ResilientTransport(delegate);
+        for (int i = 0; i < 20; i++) {
+            NetworkHelper.RequestCall call = new NetworkHelper.RequestCall();
+            call.expire();
+            try {
+                transport.execute("POST", URL, "{}", RequestPriority.POLL, call, 1024, NetworkHelper.TIMEOUT_MS);
+                fail("Expected a timeout");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("timeout"));
+            }
+        }
+        assertEquals(20, delegate.calls);
+    }
+
+    @Test
+    public void latencyIsTrackedPerPriority() throws IOException {
+        FlakyTransport delegate = new FlakyTransport();
+        delegate.healthy = true;
+        ResilientTransport transport = new ResilientTransport(delegate);
+        for (int i = 0; i < 50; i++) {
+            transport.execute("POST", URL, "{}", RequestPriority.CONFIRM, null, 1024, NetworkHelper.TIMEOUT_MS);
+        }
+        assertEquals(3000, delegate.lastTimeoutMs);
+
+        // Fast confirmations say nothing about how long a poll to the same URL takes.
+        transport.execute("POST", URL, "{}", RequestPriority.POLL, null, 1024, NetworkHelper.TIMEOUT_MS);
+        assertEquals(NetworkHelper.TIMEOUT_MS, delegate.lastTimeoutMs);
+    }
+
+    private static void expectFailure(ResilientTransport transport, int timeoutMs, String message) {
+        try {
+            transport.execute("POST", URL, "{}", RequestPriority.CONFIRM, new NetworkHelper.RequestCall(), 1024,
+                timeoutMs);
+            fail("Expected " + message);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.maplocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/** Checks A* with landmarks against a plain Dijkstra over the synthetic test grid. */
+public class RoadGraphTest {
+
+    private static final String ASSET = "src/test/resources/" + RoadGraph.ASSET_NAME;
+
+    private ByteBuffer buffer;
+    private RoadGraph graph;
+    private int nodeCount;
+    private int firstEdgeAt;
+    private int edgesAt;
+
+    @Before
+    public void setUp() throws IOException {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(ASSET)));
+        graph = new RoadGraph(buffer);
+        nodeCount = buffer.getInt(4);
+        firstEdgeAt = RoadGraph.HEADER_BYTES + nodeCount * RoadGraph.NODE_BYTES;
+        edgesAt = firstEdgeAt + (nodeCount + 1) * 4;
+    }
+
+    @Test
+    public void findsTheSameCostAsDijkstraWhileSettlingFewerNodes() {
+        Random random = new Random(11);
+        long aStarSettled = 0;
+        long dijkstraSettled = 0;
+        for (int i = 0; i < 100; i++) {
+            int from = random.nextInt(nodeCount);
+            int to = random.nextInt(nodeCount);
+            long[] dijkstra = dijkstra(from, to);
+
+            RoadGraph.Route route = graph.route(lat(from), lng(from), lat(to), lng(to));
+            assertNotNull(route);
+            assertEquals(dijkstra[0], Math.round(route.durationSeconds * 10));
+            assertPathFollowsEdges(route.path);
+            aStarSettled += route.settledNodes;
+            dijkstraSettled += dijkstra[1];
+        }
+        assertTrue(aStarSettled + " vs " + dijkstraSettled, aStarSettled * 2 < dijkstraSettled);
+    }
+
+    @Test
+    public void addsTheLegsToAndFromTheGraph() {
+        RoadGraph.Route onNodes = graph.route(lat(0), lng(0), lat(nodeCount - 1), lng(nodeCount - 1));
+        RoadGraph.Route offNodes = graph.route(lat(0) + 0.0003, lng(0), lat(nodeCount - 1), lng(nodeCount - 1));
+        assertNotNull(onNodes);
+        assertNotNull(offNodes);
+        assertEquals(lat(0) + 0.0003, offNodes.path[0], 1e-9);
+        assertTrue(offNodes.distanceMeters > onNodes.distanceMeters + 30);
+        assertTrue(offNodes.durationSeconds > onNodes.durationSeconds);
+    }
+
+    @Test
+    public void returnsNullOutsideTheServiceArea() {
+        assertNull(graph.route(0, 0, lat(0), lng(0)));
+        assertNull(graph.route(lat(0), lng(0), 40.0, -74.0));
+    }
+
+    @Test
+    public void edgesNearAreSortedAndWithinRadius() {
+        int[] edges = new int[8];
+        double[] meters = new double[8];
+        int found = graph.edgesNear(lat(nodeCount / 2) + 0.0002, lng(nodeCount / 2) + 0.0002, 80, edges, meters);
+        assertTrue(found > 0);
+        for (int i = 0; i < found; i++) {
+            assertTrue(meters[i] <= 80);
+            if (i > 0) {
+                assertTrue(meters[i - 1] <= meters[i]);
+            }
+        }
+    }
+
+    @Test
+    public void onlyGraphsFromAnExtractAreSurveyed() throws IOException {
+        assertFalse(graph.isSurveyed());
+
+        ByteBuffer surveyed = ByteBuffer.allocate(buffer.capacity());
+        surveyed.put(buffer.duplicate()).putInt(16, RoadGraph.FLAG_SURVEYED);
+        assertTrue(new RoadGraph(surveyed).isSurveyed());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new RoadGraph(ByteBuffer.wrap(new byte[RoadGraph.HEADER_BYTES]));
+    }
+
+    private void assertPathFollowsEdges(double[] path) {
+        // path holds the start point, the graph nodes, then the destination point.
+        int previous = -1;
+        for (int i = 2; i < path.length - 2; i += 2) {
+            int node = nodeAt(path[i], path[i + 1]);
+            if (previous >= 0) {
+                assertTrue("No edge " + previous + " -> " + node, hasEdge(previous, node));
+            }
+            previous = node;
+        }
+    }
+
+    /** Returns {total cost, settled nodes}. */
+    private long[] dijkstra(int from, int to) {
+        long[] cost = new long[nodeCount];
+        Arrays.fill(cost, Long.MAX_VALUE);
+        boolean[] settled = new boolean[nodeCount];
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        cost[from] = 0;
+        queue.add(new long[] {0, from});
+        int settledCount = 0;
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int node = (int) entry[1];
+            if (settled[node]) {
+                continue;
+            }
+            settled[node] = true;
+            settledCount++;
+            if (node == to) {
+                return new long[] {cost[node], settledCount};
+            }
+            for (int edge = firstEdge(node); edge < firstEdge(node + 1); edge++) {
+                int next = buffer.getInt(edgesAt + edge * RoadGraph.EDGE_BYTES);
+                long nextCost = cost[node] + buffer.getInt(edgesAt + edge * RoadGraph.EDGE_BYTES + 8);
+                if (nextCost < cost[next]) {
+                    cost[next] = nextCost;
+                    queue.add(new long[] {nextCost, next});
+                }
+            }
+        }
+        return new long[] {Long.MAX_VALUE, settledCount};
+    }
+
+    private boolean hasEdge(int from, int to) {
+        for (int edge = firstEdge(from); edge < firstEdge(from + 1); edge++) {
+            if (buffer.getInt(edgesAt + edge * RoadGraph.EDGE_BYTES) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int nodeAt(double lat, double lng) {
+        for (int node = 0; node < nodeCount; node++) {
+            if (lat(node) == lat && lng(node) == lng) {
+                return node;
+            }
+        }
+        throw new AssertionError("No node at " + lat + "," + lng);
+    }
+
+    private int firstEdge(int node) {
+        return buffer.getInt(firstEdgeAt + node * 4);
+    }
+
+    private double lat(int node) {
+        return buffer.getInt(RoadGraph.HEADER_BYTES + node * RoadGraph.NODE_BYTES) / 1e6;
+    }
+
+    private double lng(int node) {
+        return buffer.getInt(RoadGraph.HEADER_BYTES + node * RoadGraph.NODE_BYTES + 4) / 1e6;
+    }
+}
@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+SCRIPT_DIR=$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)
+ROOT_DIR=$(cd "${SCRIPT_DIR}/.." && pwd)
+SRC_DIR="${ROOT_DIR}/app/src/main/java/com/example/maplocator"
+TOOLS_DIR="${ROOT_DIR}/tools/src/main/java/com/example/maplocator"
+INPUT=${1:-"${SCRIPT_DIR}/places/places.tsv"}
+OUTPUT=${OUTPUT:-"${ROOT_DIR}/app/src/main/assets/places.idx"}
+CLASSES=$(mktemp -d)
+trap 'rm -rf "${CLASSES}"' EXIT
+
+# PlaceIndex only needs android.content for PlaceIndex.open(), which the builder never calls.
+mkdir -p "${CLASSES}/stubs/android/content/res"
+echo 'package android.content; public abstract class Context { public abstract android.content.res.AssetManager getAssets(); }' \
+  > "${CLASSES}/stubs/android/content/Context.java"
+echo 'package android.content.res; public abstract class AssetManager { public abstract AssetFileDescriptor openFd(String n) throws java.io.IOException; }' \
+  > "${CLASSES}/stubs/android/content/res/AssetManager.java"
+echo 'package android.content.res; public abstract class AssetFileDescriptor implements java.io.Closeable { public abstract long getStartOffset(); public abstract long getLength(); public abstract java.io.FileInputStream createInputStream() throws java.io.IOException; }' \
+  > "${CLASSES}/stubs/android/content/res/AssetFileDescriptor.java"
+
+javac -encoding UTF-8 -d "${CLASSES}" \
+  "${CLASSES}"/stubs/android/content/Context.java "${CLASSES}"/stubs/android/content/res/*.java \
+  "${TOOLS_DIR}/PlaceIndexBuilder.java" "${SRC_DIR}/PlaceIndex.java" "${SRC_DIR}/GeoMath.java"
+mkdir -p "$(dirname "${OUTPUT}")"
+java -cp "${CLASSES}" com.example.maplocator.PlaceIndexBuilder "${INPUT}" "${OUTPUT}"
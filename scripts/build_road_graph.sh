@@ -0,0 +1,32 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+SCRIPT_DIR=$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)
+ROOT_DIR=$(cd "${SCRIPT_DIR}/.." && pwd)
+SRC_DIR="${ROOT_DIR}/app/src/main/java/com/example/maplocator"
+TOOLS_DIR="${ROOT_DIR}/tools/src/main/java/com/example/maplocator"
+# Pass nodes.tsv edges.tsv for a real extract, which goes into the app's assets. With no arguments
+# this rebuilds the synthetic street grid the unit tests use; the app ignores that grid.
+INPUTS=("$@")
+if [[ ${#INPUTS[@]} -eq 0 ]]; then
+  INPUTS=(--grid 37.708,-122.510,37.808,-122.385,250)
+  OUTPUT=${OUTPUT:-"${ROOT_DIR}/app/src/test/resources/roads.graph"}
+fi
+OUTPUT=${OUTPUT:-"${ROOT_DIR}/app/src/main/assets/roads.graph"}
+CLASSES=$(mktemp -d)
+trap 'rm -rf "${CLASSES}"' EXIT
+
+# RoadGraph only needs android.content for RoadGraph.open(), which the builder never calls.
+mkdir -p "${CLASSES}/stubs/android/content/res"
+echo 'package android.content; public abstract class Context { public abstract android.content.res.AssetManager getAssets(); }' \
+  > "${CLASSES}/stubs/android/content/Context.java"
+echo 'package android.content.res; public abstract class AssetManager { public abstract AssetFileDescriptor openFd(String n) throws java.io.IOException; }' \
+  > "${CLASSES}/stubs/android/content/res/AssetManager.java"
+echo 'package android.content.res; public abstract class AssetFileDescriptor implements java.io.Closeable { public abstract long getStartOffset(); public abstract long getLength(); public abstract java.io.FileInputStream createInputStream() throws java.io.IOException; }' \
+  > "${CLASSES}/stubs/android/content/res/AssetFileDescriptor.java"
+
+javac -encoding UTF-8 -d "${CLASSES}" \
+  "${CLASSES}"/stubs/android/content/Context.java "${CLASSES}"/stubs/android/content/res/*.java \
+  "${TOOLS_DIR}/RoadGraphBuilder.java" "${SRC_DIR}/RoadGraph.java" "${SRC_DIR}/GeoMath.java"
+mkdir -p "$(dirname "${OUTPUT}")"
+java -cp "${CLASSES}" com.example.maplocator.RoadGraphBuilder "${INPUTS[@]}" "${OUTPUT}"
@@ -0,0 +1,224 @@
+package com.example.maplocator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Offline tool that writes the {@link AddressIndex} asset. Input is either a tab-separated
+ * address list ({@code number, street, lat, lng}, the column order of an OpenAddresses export
+ * trimmed to those fields; lines starting with {@code #} are ignored), or addresses along a
+ * synthetic street grid for the unit tests, laid out like the one {@link RoadGraphBuilder} makes:
+ * <pre>
+ *   java -cp out com.example.maplocator.AddressIndexBuilder addresses.tsv addresses.idx
+ *   java -cp out com.example.maplocator.AddressIndexBuilder --grid 37.708,-122.510,37.808,-122.385,250 addresses.idx
+ * </pre>
+ * House numbers keep their leading digits only and must fit in 16 bits, as must the number
+ * of distinct streets. Only an index read from an address list gets
+ * {@link AddressIndex#FLAG_SURVEYED}; the app never labels points from the made-up grid.
+ */
+public final class AddressIndexBuilder {
+
+    private static final int CELL_E6 = 2000;
+    private static final double GRID_ADDRESS_SPACING_M = 50;
+
+    private static final class Address {
+        final int number;
+        final String street;
+        final int latE6;
+        final int lngE6;
+        final int row;
+        final int col;
+
+        Address(int number, String street, double lat, double lng) {
+            this.number = number;
+            this.street = street;
+            this.latE6 = (int) Math.round(lat * 1e6);
+            this.lngE6 = (int) Math.round(lng * 1e6);
+            this.row = Math.floorDiv(latE6, CELL_E6);
+            this.col = Math.floorDiv(lngE6, CELL_E6);
+        }
+    }
+
+    private AddressIndexBuilder() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Address> addresses;
+        String output;
+        boolean surveyed = !"--grid".equals(args.length > 0 ? args[0] : null);
+        if (args.length == 3 && !surveyed) {
+            String[] box = args[1].split(",");
+            addresses = grid(Double.parseDouble(box[0]), Double.parseDouble(box[1]), Double.parseDouble(box[2]),
+                Double.parseDouble(box[3]), Double.parseDouble(box[4]));
+            output = args[2];
+        } else if (args.length == 2) {
+            addresses = read(args[0]);
+            output = args[1];
+        } else {
+            System.err.println("Usage: AddressIndexBuilder <addresses.tsv> <out> | --grid s,w,n,e,spacingM <out>");
+            System.exit(2);
+            return;
+        }
+
+        write(addresses, output, surveyed);
+
+        AddressIndex check = new AddressIndex(ByteBuffer.wrap(Files.readAllBytes(Paths.get(output))));
+        Random random = new Random(42);
+        int queries = 100_000;
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            Address a = addresses.get(random.nextInt(addresses.size()));
+            int latE6 = a.latE6 + random.nextInt(401) - 200;
+            int lngE6 = a.lngE6 + random.nextInt(401) - 200;
+            if (check.nearest(latE6, lngE6, AddressIndex.MAX_DISTANCE_M) >= 0) {
+                found++;
+            }
+        }
+        System.out.println(String.format(Locale.US, "%d addresses, %d bytes, %.2f us per lookup, %d%% found",
+            check.size(), Files.size(Paths.get(output)), (System.nanoTime() - start) / 1e3 / queries,
+            found * 100 / queries));
+    }
+
+    /**
+     * East-west streets are numbered from the south, north-south avenues from the west; numbers
+     * run 100 per block along each, odd and even alternating like the two sides of a street.
+     */
+    private static List<Address> grid(double south, double west, double north, double east, double spacingMeters) {
+        List<Address> addresses = new ArrayList<>();
+        double latStep = spacingMeters / 111_320.0;
+        double lngStep = latStep / Math.cos(Math.toRadians((south + north) / 2));
+        int rows = (int) Math.floor((north - south) / latStep) + 1;
+        int cols = (int) Math.floor((east - west) / lngStep) + 1;
+        int perBlock = (int) Math.max(1, Math.round(spacingMeters / GRID_ADDRESS_SPACING_M));
+        for (int r = 0; r < rows; r++) {
+            String street = ordinal(r + 1) + " Street";
+            for (int c = 0; c + 1 < cols; c++) {
+                for (int k = 0; k < perBlock; k++) {
+                    double lng = west + (c + (k + 0.5) / perBlock) * lngStep;
+                    addresses.add(new Address(houseNumber(c, k, perBlock), street, south + r * latStep, lng));
+                }
+            }
+        }
+        for (int c = 0; c < cols; c++) {
+            String street = ordinal(c + 1) + " Avenue";
+            for (int r = 0; r + 1 < rows; r++) {
+                for (int k = 0; k < perBlock; k++) {
+                    double lat = south + (r + (k + 0.5) / perBlock) * latStep;
+                    addresses.add(new Address(houseNumber(r, k, perBlock), street, lat, west + c * lngStep));
+                }
+            }
+        }
+        return addresses;
+    }
+
+    private static int houseNumber(int block, int step, int perBlock) {
+        return 100 * (block + 1) + step * 98 / perBlock + (step & 1);
+    }
+
+    private static String ordinal(int n) {
+        int lastTwo = n % 100;
+        String suffix = lastTwo >= 11 && lastTwo <= 13 ? "th"
+            : n % 10 == 1 ? "st" : n % 10 == 2 ? "nd" : n % 10 == 3 ? "rd" : "th";
+        return n + suffix;
+    }
+
+    private static List<Address> read(String path) throws IOException {
+        List<Address> addresses = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 4) {
+                    throw new IOException(path + ": expected number, street, lat, lng: " + line);
+                }
+                int digits = 0;
+                String number = fields[0].trim();
+                while (digits < number.length() && Character.isDigit(number.charAt(digits))) {
+                    digits++;
+                }
+                if (digits == 0 || digits > 5 || Integer.parseInt(number.substring(0, digits)) > 0xFFFF) {
+                    continue;
+                }
+                addresses.add(new Address(Integer.parseInt(number.substring(0, digits)), fields[1].trim(),
+                    Double.parseDouble(fields[2].trim()), Double.parseDouble(fields[3].trim())));
+            }
+        }
+        return addresses;
+    }
+
+    private static void write(List<Address> addresses, String output, boolean surveyed) throws IOException {
+        addresses.sort((a, b) -> a.row != b.row ? Integer.compare(a.row, b.row) : Integer.compare(a.col, b.col));
+
+        Map<String, Integer> streetIds = new HashMap<>();
+        List<Integer> streetOffsets = new ArrayList<>();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(strings);
+        for (Address address : addresses) {
+            if (!streetIds.containsKey(address.street)) {
+                if (streetIds.size() > 0xFFFF) {
+                    throw new IOException("More than 65536 streets");
+                }
+                streetIds.put(address.street, streetIds.size());
+                streetOffsets.add(strings.size());
+                byte[] bytes = address.street.getBytes(StandardCharsets.UTF_8);
+                stringsOut.writeShort(bytes.length);
+                stringsOut.write(bytes);
+            }
+        }
+
+        List<int[]> cells = new ArrayList<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            Address address = addresses.get(i);
+            int[] last = cells.isEmpty() ? null : cells.get(cells.size() - 1);
+            if (last == null || last[0] != address.row || last[1] != address.col) {
+                cells.add(new int[] {address.row, address.col, i});
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(AddressIndex.MAGIC);
+            out.writeInt(CELL_E6);
+            out.writeInt(cells.size());
+            out.writeInt(addresses.size());
+            out.writeInt(streetOffsets.size());
+            out.writeInt(strings.size());
+            out.writeInt(surveyed ? AddressIndex.FLAG_SURVEYED : 0);
+            for (int[] cell : cells) {
+                out.writeInt(cell[0]);
+                out.writeInt(cell[1]);
+                out.writeInt(cell[2]);
+            }
+            for (Address address : addresses) {
+                out.writeShort(address.latE6 - address.row * CELL_E6);
+                out.writeShort(address.lngE6 - address.col * CELL_E6);
+                out.writeShort(streetIds.get(address.street));
+                out.writeShort(address.number);
+            }
+            for (int offset : streetOffsets) {
+                out.writeInt(offset);
+            }
+            strings.writeTo(out);
+        }
+    }
+}
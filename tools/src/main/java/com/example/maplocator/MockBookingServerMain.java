@@ -0,0 +1,71 @@
+package com.example.maplocator;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs {@link MockBookingServer} on a plain JVM until interrupted, then prints its counters.
+ * Desktop only; the app starts the server itself from a debug launch extra.
+ * <pre>
+ *   javac -d out app/src/main/java/com/example/maplocator/{LocalHttpServer,GeoMath,MockBookingServer}.java \
+ *       tools/src/main/java/com/example/maplocator/MockBookingServerMain.java
+ *   java -cp out com.example.maplocator.MockBookingServerMain --port 8080 --latency 50-300 --errors 0.05 --aliases rotate
+ * </pre>
+ */
+public final class MockBookingServerMain {
+
+    private MockBookingServerMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        MockBookingServer.Scenario scenario = new MockBookingServer.Scenario();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--latency":
+                    String[] range = value.split("-");
+                    scenario.latency(Long.parseLong(range[0]), Long.parseLong(range[range.length - 1]));
+                    break;
+                case "--errors":
+                    scenario.errorRate(Double.parseDouble(value));
+                    break;
+                case "--drops":
+                    scenario.dropRate(Double.parseDouble(value));
+                    break;
+                case "--aliases":
+                    scenario.aliases(MockBookingServer.AliasStyle.valueOf(value.toUpperCase(Locale.US)));
+                    break;
+                case "--speed":
+                    scenario.driverSpeed(Double.parseDouble(value));
+                    break;
+                case "--approach":
+                    scenario.approachDistance(Double.parseDouble(value));
+                    break;
+                case "--time-scale":
+                    scenario.timeScale(Double.parseDouble(value));
+                    break;
+                case "--ride":
+                    scenario.rideToDestination(Boolean.parseBoolean(value));
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        MockBookingServer server = new MockBookingServer(scenario);
+        System.out.println("Mock booking API listening on " + server.start(port));
+
+        CountDownLatch shutdown = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(server.getStats());
+            server.close();
+            shutdown.countDown();
+        }));
+        shutdown.await();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.maplocator;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Offline tool that turns a tab-separated place list ({@code name, lat, lng, weight}; lines
+ * starting with {@code #} are ignored) into the binary {@link PlaceIndex} asset. Runs on a
+ * plain JVM:
+ * <pre>
+ *   java -cp out com.example.maplocator.PlaceIndexBuilder scripts/places/places.tsv app/src/main/assets/places.idx
+ * </pre>
+ */
+public final class PlaceIndexBuilder {
+
+    private static final int GEOHASH_BITS = 30;
+
+    private static final class Entry {
+        final String name;
+        final int latE6;
+        final int lngE6;
+        final int weight;
+        final long geohash;
+
+        Entry(String name, double lat, double lng, int weight) {
+            this.name = name;
+            this.latE6 = (int) Math.round(lat * 1e6);
+            this.lngE6 = (int) Math.round(lng * 1e6);
+            this.weight = weight;
+            this.geohash = geohash(lat, lng);
+        }
+    }
+
+    private static final class Key {
+        final byte[] bytes;
+        final int ref;
+
+        Key(byte[] bytes, int ref) {
+            this.bytes = bytes;
+            this.ref = ref;
+        }
+    }
+
+    private PlaceIndexBuilder() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: PlaceIndexBuilder <places.tsv> <places.idx>");
+            System.exit(2);
+        }
+
+        List<Entry> entries = read(args[0]);
+        entries.sort((a, b) -> Long.compare(a.geohash, b.geohash));
+        byte[] index = build(entries);
+        try (OutputStream out = new FileOutputStream(args[1])) {
+            out.write(index);
+        }
+
+        PlaceIndex check = new PlaceIndex(ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[1]))));
+        long start = System.nanoTime();
+        int queries = 0;
+        for (Entry entry : entries) {
+            String name = PlaceIndex.normalize(entry.name);
+            for (int length = 1; length <= name.length(); length++) {
+                check.search(name.substring(0, length), 37.7749, -122.4194, 8);
+                queries++;
+            }
+        }
+        System.out.println(String.format(Locale.US, "%d places, %d bytes, %.1f us per query over %d prefixes",
+            check.size(), index.length, (System.nanoTime() - start) / 1000.0 / queries, queries));
+    }
+
+    private static List<Entry> read(String path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    throw new IOException("Expected name, lat, lng[, weight]: " + line);
+                }
+                int weight = fields.length > 3 ? Integer.parseInt(fields[3].trim()) : 0;
+                entries.add(new Entry(fields[0].trim(), Double.parseDouble(fields[1].trim()),
+                    Double.parseDouble(fields[2].trim()), weight));
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] build(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringOut = new DataOutputStream(strings);
+        Map<String, Integer> offsets = new HashMap<>();
+        int[] nameOffsets = new int[entries.size()];
+        List<Key> keys = new ArrayList<>();
+
+        for (int i = 0; i < entries.size(); i++) {
+            nameOffsets[i] = intern(entries.get(i).name, offsets, stringOut, strings);
+            String normalized = PlaceIndex.normalize(entries.get(i).name);
+            for (int at = 0; at < normalized.length(); at++) {
+                if (at == 0 || normalized.charAt(at - 1) == ' ') {
+                    byte[] bytes = normalized.substring(at).getBytes(StandardCharsets.UTF_8);
+                    keys.add(new Key(bytes, at == 0 ? (i | PlaceIndex.FULL_NAME) : i));
+                }
+            }
+        }
+        keys.sort((a, b) -> compare(a.bytes, b.bytes));
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(file);
+        int[] keyOffsets = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            keyOffsets[i] = intern(new String(keys.get(i).bytes, StandardCharsets.UTF_8), offsets, stringOut, strings);
+        }
+
+        out.writeInt(PlaceIndex.MAGIC);
+        out.writeInt(entries.size());
+        out.writeInt(keys.size());
+        out.writeInt(strings.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            out.writeInt(entry.latE6);
+            out.writeInt(entry.lngE6);
+            out.writeInt(nameOffsets[i]);
+            out.writeInt(entry.weight);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeInt(keyOffsets[i]);
+            out.writeInt(keys.get(i).ref);
+        }
+        strings.writeTo(out);
+        out.flush();
+        return file.toByteArray();
+    }
+
+    private static int intern(String text, Map<String, Integer> offsets, DataOutputStream out,
+                              ByteArrayOutputStream strings) throws IOException {
+        Integer existing = offsets.get(text);
+        if (existing != null) {
+            return existing;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Name too long: " + text);
+        }
+        int offset = strings.size();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        offsets.put(text, offset);
+        return offset;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /** Interleaves longitude and latitude bits, longitude first, as in a geohash. */
+    private static long geohash(double lat, double lng) {
+        double latLo = -90;
+        double latHi = 90;
+        double lngLo = -180;
+        double lngHi = 180;
+        long hash = 0;
+        for (int bit = 0; bit < GEOHASH_BITS; bit++) {
+            hash <<= 1;
+            if (bit % 2 == 0) {
+                double mid = (lngLo + lngHi) / 2;
+                if (lng >= mid) {
+                    hash |= 1;
+                    lngLo = mid;
+                } else {
+                    lngHi = mid;
+                }
+            } else {
+                double mid = (latLo + latHi) / 2;
+                if (lat >= mid) {
+                    hash |= 1;
+                    latLo = mid;
+                } else {
+                    latHi = mid;
+                }
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.maplocator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Offline tool that writes the {@link RoadGraph} asset. Input is either a road extract as two
+ * tab-separated files, {@code nodes.tsv} ({@code id, lat, lng}) and {@code edges.tsv}
+ * ({@code from, to, speedKmh[, oneway]}), or a synthetic street grid for the unit tests:
+ * <pre>
+ *   java -cp out com.example.maplocator.RoadGraphBuilder nodes.tsv edges.tsv roads.graph
+ *   java -cp out com.example.maplocator.RoadGraphBuilder --grid 37.708,-122.510,37.808,-122.385,250 roads.graph
+ * </pre>
+ * Landmarks are chosen by farthest-point selection and their costs to and from every node are
+ * precomputed with Dijkstra on the graph and on its reverse. Only a graph read from an extract
+ * gets {@link RoadGraph#FLAG_SURVEYED}; the app does not show routes or snap positions on a grid.
+ */
+public final class RoadGraphBuilder {
+
+    private static final int LANDMARKS = 8;
+    private static final double ARTERIAL_KMH = 50;
+    private static final double STREET_KMH = 30;
+    private static final int ARTERIAL_EVERY = 5;
+
+    private static final class Graph {
+        final List<double[]> nodes = new ArrayList<>();
+        final List<int[]> edges = new ArrayList<>();
+        final boolean surveyed;
+
+        Graph(boolean surveyed) {
+            this.surveyed = surveyed;
+        }
+
+        void addEdge(int from, int to, double speedKmh) {
+            double[] a = nodes.get(from);
+            double[] b = nodes.get(to);
+            int meters = (int) Math.max(1, Math.round(GeoMath.haversineMeters(a[0], a[1], b[0], b[1])));
+            int deciseconds = (int) Math.max(1, Math.round(meters / (speedKmh / 3.6) * 10));
+            edges.add(new int[] {from, to, meters, deciseconds});
+        }
+    }
+
+    private RoadGraphBuilder() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Graph graph;
+        String output;
+        if (args.length == 3 && "--grid".equals(args[0])) {
+            String[] box = args[1].split(",");
+            graph = grid(Double.parseDouble(box[0]), Double.parseDouble(box[1]), Double.parseDouble(box[2]),
+                Double.parseDouble(box[3]), Double.parseDouble(box[4]));
+            output = args[2];
+        } else if (args.length == 3) {
+            graph = read(args[0], args[1]);
+            output = args[2];
+        } else {
+            System.err.println("Usage: RoadGraphBuilder <nodes.tsv> <edges.tsv> <out> | --grid s,w,n,e,spacingM <out>");
+            System.exit(2);
+            return;
+        }
+
+        write(graph, output);
+
+        RoadGraph check = new RoadGraph(ByteBuffer.wrap(Files.readAllBytes(Paths.get(output))));
+        Random random = new Random(42);
+        int queries = 200;
+        long settled = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            double[] a = graph.nodes.get(random.nextInt(graph.nodes.size()));
+            double[] b = graph.nodes.get(random.nextInt(graph.nodes.size()));
+            RoadGraph.Route route = check.route(a[0], a[1], b[0], b[1]);
+            if (route != null) {
+                settled += route.settledNodes;
+            }
+        }
+        System.out.println(String.format(Locale.US,
+            "%d nodes, %d edges, %d bytes, %.2f ms and %d settled nodes per route",
+            graph.nodes.size(), graph.edges.size(), Files.size(Paths.get(output)),
+            (System.nanoTime() - start) / 1e6 / queries, settled / queries));
+    }
+
+    private static Graph grid(double south, double west, double north, double east, double spacingMeters) {
+        Graph graph = new Graph(false);
+        double latStep = spacingMeters / 111_320.0;
+        double lngStep = latStep / Math.cos(Math.toRadians((south + north) / 2));
+        int rows = (int) Math.floor((north - south) / latStep) + 1;
+        int cols = (int) Math.floor((east - west) / lngStep) + 1;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                graph.nodes.add(new double[] {south + r * latStep, west + c * lngStep});
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int node = r * cols + c;
+                if (c + 1 < cols) {
+                    double speed = r % ARTERIAL_EVERY == 0 ? ARTERIAL_KMH : STREET_KMH;
+                    graph.addEdge(node, node + 1, speed);
+                    graph.addEdge(node + 1, node, speed);
+                }
+                if (r + 1 < rows) {
+                    double speed = c % ARTERIAL_EVERY == 0 ? ARTERIAL_KMH : STREET_KMH;
+                    graph.addEdge(node, node + cols, speed);
+                    graph.addEdge(node + cols, node, speed);
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static Graph read(String nodesPath, String edgesPath) throws IOException {
+        Graph graph = new Graph(true);
+        Map<String, Integer> ids = new HashMap<>();
+        for (String[] fields : rows(nodesPath, 3)) {
+            ids.put(fields[0], graph.nodes.size());
+            graph.nodes.add(new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+        }
+        for (String[] fields : rows(edgesPath, 3)) {
+            Integer from = ids.get(fields[0]);
+            Integer to = ids.get(fields[1]);
+            if (from == null || to == null) {
+                throw new IOException("Edge references unknown node: " + String.join("\t", fields));
+            }
+            double speed = Double.parseDouble(fields[2]);
+            graph.addEdge(from, to, speed);
+            if (fields.length < 4 || !"1".equals(fields[3])) {
+                graph.addEdge(to, from, speed);
+            }
+        }
+        return graph;
+    }
+
+    private static List<String[]> rows(String path, int minFields) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < minFields) {
+                    throw new IOException(path + ": expected " + minFields + " fields: " + line);
+                }
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = fields[i].trim();
+                }
+                rows.add(fields);
+            }
+        }
+        return rows;
+    }
+
+    private static void write(Graph graph, String output) throws IOException {
+        int n = graph.nodes.size();
+        List<int[]> edges = graph.edges;
+        edges.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+
+        int[] firstEdge = new int[n + 1];
+        for (int[] edge : edges) {
+            firstEdge[edge[0] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            firstEdge[i + 1] += firstEdge[i];
+        }
+
+        int[] reverseFirst = new int[n + 1];
+        int[][] reverse = new int[edges.size()][];
+        for (int[] edge : edges) {
+            reverseFirst[edge[1] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            reverseFirst[i + 1] += reverseFirst[i];
+        }
+        int[] fill = Arrays.copyOf(reverseFirst, n);
+        for (int[] edge : edges) {
+            reverse[fill[edge[1]]++] = new int[] {edge[1], edge[0], edge[2], edge[3]};
+        }
+
+        int landmarkCount = Math.min(LANDMARKS, n);
+        int[][] from = new int[landmarkCount][];
+        int[][] to = new int[landmarkCount][];
+        int[] nearest = new int[n];
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        int[][] forward = edges.toArray(new int[0][]);
+        int landmark = farthest(dijkstra(0, firstEdge, forward));
+        for (int i = 0; i < landmarkCount; i++) {
+            from[i] = dijkstra(landmark, firstEdge, forward);
+            to[i] = dijkstra(landmark, reverseFirst, reverse);
+            for (int node = 0; node < n; node++) {
+                nearest[node] = Math.min(nearest[node], from[i][node]);
+            }
+            landmark = farthest(nearest);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(RoadGraph.MAGIC);
+            out.writeInt(n);
+            out.writeInt(edges.size());
+            out.writeInt(landmarkCount);
+            out.writeInt(graph.surveyed ? RoadGraph.FLAG_SURVEYED : 0);
+            for (double[] node : graph.nodes) {
+                out.writeInt((int) Math.round(node[0] * 1e6));
+                out.writeInt((int) Math.round(node[1] * 1e6));
+            }
+            for (int value : firstEdge) {
+                out.writeInt(value);
+            }
+            for (int[] edge : edges) {
+                out.writeInt(edge[1]);
+                out.writeInt(edge[2]);
+                out.writeInt(edge[3]);
+            }
+            for (int i = 0; i < landmarkCount; i++) {
+                for (int node = 0; node < n; node++) {
+                    out.writeInt(from[i][node]);
+                    out.writeInt(to[i][node]);
+                }
+            }
+        }
+    }
+
+    /** Picks the reachable node with the largest value, i.e. the one furthest from what was chosen so far. */
+    private static int farthest(int[] distances) {
+        int best = 0;
+        for (int node = 1; node < distances.length; node++) {
+            int value = distances[node];
+            if (value != RoadGraph.UNREACHABLE && (distances[best] == RoadGraph.UNREACHABLE || value > distances[best])) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private static int[] dijkstra(int source, int[] first, int[][] edges) {
+        int[] dist = new int[first.length - 1];
+        Arrays.fill(dist, RoadGraph.UNREACHABLE);
+        dist[source] = 0;
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        queue.add(new long[] {0, source});
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int node = (int) top[1];
+            if (top[0] > dist[node]) {
+                continue;
+            }
+            for (int e = first[node]; e < first[node + 1]; e++) {
+                int next = edges[e][1];
+                int cost = dist[node] + edges[e][3];
+                if (cost < dist[next]) {
+                    dist[next] = cost;
+                    queue.add(new long[] {cost, next});
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.maplocator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Command-line load generator for the {@link HttpTransport} implementations. Each round fires
+ * a burst of quote prefetches, driver polls, a confirmation and a cancellation at the same
+ * time against a booking API (normally {@link MockBookingServer}, optionally behind an h2c
+ * front end) and reports per-priority latency and the protocols that were negotiated.
+ */
+public final class TransportHarness {
+
+    private TransportHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:8080/";
+        String mode = "h2c";
+        int rounds = 20;
+        int polls = 8;
+        int prefetches = 8;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--url":
+                    url = value;
+                    break;
+                case "--transport":
+                    mode = value.toLowerCase(Locale.US);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(value);
+                    break;
+                case "--polls":
+                    polls = Integer.parseInt(value);
+                    break;
+                case "--prefetches":
+                    prefetches = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        HttpTransport transport = "urlconnection".equals(mode)
+            ? new UrlConnectionTransport()
+            : new OkHttpTransport("h2c".equals(mode), new UrlConnectionTransport());
+        String quote = "{\"startLat\":52.52,\"startLng\":13.405,\"destLat\":52.50,\"destLng\":13.45}";
+
+        HttpTransport.Reply quoted = transport.execute("POST", url, quote, RequestPriority.QUOTE, null,
+            Integer.MAX_VALUE, 15000);
+        String requestId = MockBookingServer.parseFlatObject(quoted.body).get("requestId");
+        String confirm = "{\"requestId\":\"" + requestId + "\",\"confirmation\":\"yes\"}";
+        HttpTransport.Reply confirmed = transport.execute("POST", url, confirm, RequestPriority.CONFIRM, null,
+            Integer.MAX_VALUE, 15000);
+        String bookingId = MockBookingServer.parseFlatObject(confirmed.body).get("bookingId");
+        String poll = "{\"bookingId\":\"" + bookingId + "\"}";
+        String cancel = "{\"bookingId\":\"" + bookingId + "\",\"cancel\":true}";
+
+        Map<RequestPriority, List<Long>> latencies = new EnumMap<>(RequestPriority.class);
+        for (RequestPriority priority : RequestPriority.values()) {
+            latencies.put(priority, Collections.synchronizedList(new ArrayList<>()));
+        }
+        Set<String> protocols = Collections.synchronizedSet(new TreeSet<>());
+        int[] failures = new int[1];
+
+        int burst = prefetches + polls + 2;
+        ExecutorService pool = Executors.newFixedThreadPool(burst);
+        for (int round = 0; round < rounds; round++) {
+            CountDownLatch done = new CountDownLatch(burst);
+            for (int i = 0; i < burst; i++) {
+                RequestPriority priority;
+                String body;
+                if (i < prefetches) {
+                    priority = RequestPriority.PREFETCH;
+                    body = quote;
+                } else if (i < prefetches + polls) {
+                    priority = RequestPriority.POLL;
+                    body = poll;
+                } else if (i == burst - 2) {
+                    priority = RequestPriority.CONFIRM;
+                    body = confirm;
+                } else {
+                    priority = RequestPriority.CANCEL;
+                    body = cancel;
+                }
+
+                String target = url;
+                pool.execute(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        HttpTransport.Reply reply = transport.execute("POST", target, body, priority, null,
+                            Integer.MAX_VALUE, 15000);
+                        latencies.get(priority).add((System.nanoTime() - start) / 1_000_000L);
+                        protocols.add(reply.protocol);
+                    } catch (Exception e) {
+                        synchronized (failures) {
+                            failures[0]++;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        }
+        pool.shutdown();
+
+        System.out.println("transport=" + mode + " protocols=" + protocols + " failures=" + failures[0]);
+        for (Map.Entry<RequestPriority, List<Long>> entry : latencies.entrySet()) {
+            List<Long> samples = new ArrayList<>(entry.getValue());
+            if (samples.isEmpty()) {
+                continue;
+            }
+            Collections.sort(samples);
+            System.out.println(String.format(Locale.US, "%-8s n=%-4d p50=%dms p95=%dms max=%dms",
+                entry.getKey(), samples.size(), percentile(samples, 0.5), percentile(samples, 0.95),
+                samples.get(samples.size() - 1)));
+        }
+        System.exit(0);
+    }
+
+    private static long percentile(List<Long> sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+}